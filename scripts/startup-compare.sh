@@ -0,0 +1,95 @@
+#!/usr/bin/env bash
+#
+# Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+#
+# 	This program is free software: you can redistribute it and/or modify
+# 	it under the terms of the GNU Affero General Public License as
+# 	published by the Free Software Foundation, either version 3 of the
+# 	License, or (at your option) any later version.
+#
+# 	This program is distributed in the hope that it will be useful,
+# 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+# 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# 	GNU Affero General Public License for more details.
+#
+# 	You should have received a copy of the GNU Affero General Public License
+# 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+#
+
+# Confronta i tempi di avvio delle immagini del servizio.
+# Ogni variante viene avviata RUNS volte e viene letto il tempo riportato da Spring Boot
+# ("Started RuleApplication in X seconds (process running for Y)").
+#
+# Uso: scripts/startup-compare.sh [immagine ...]
+#   senza argomenti confronta rule-service:<versione> e rule-service:<versione>-faststart
+#   NATIVE_BINARY=build/native/nativeCompile/rule-service aggiunge l'eseguibile nativo
+#   RUNS=5 numero di avvii per variante, TIMEOUT=180 secondi massimi di attesa per avvio
+
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+RUNS=${RUNS:-5}
+TIMEOUT=${TIMEOUT:-180}
+VERSION=$(sed -n 's/^version=//p' gradle.properties)
+STARTED='s/.*Started RuleApplication in \([0-9.]*\) seconds (process running for \([0-9.]*\)).*/\1 \2/p'
+
+if [ $# -gt 0 ]; then
+  IMAGES=("$@")
+else
+  IMAGES=("rule-service:${VERSION}" "rule-service:${VERSION}-faststart")
+fi
+
+# Attende la riga di avvio nel file di log, stampa "<started> <process>" in secondi
+wait_started() {
+  local log=$1 attempts=0 line
+  while [ "$attempts" -lt $((TIMEOUT * 5)) ]; do
+    line=$(sed -n "$STARTED" "$log" | head -1)
+    if [ -n "$line" ]; then
+      echo "$line"
+      return 0
+    fi
+    sleep 0.2
+    attempts=$((attempts + 1))
+  done
+  echo "Startup not completed within ${TIMEOUT}s, see $log" >&2
+  return 1
+}
+
+run_image() {
+  local image=$1 log container
+  log=$(mktemp)
+  container=$(docker run --detach "$image")
+  docker logs --follow "$container" > "$log" 2>&1 &
+  wait_started "$log" || true
+  docker rm --force "$container" > /dev/null
+  rm -f "$log"
+}
+
+run_native() {
+  local binary=$1 log pid
+  log=$(mktemp)
+  SPRING_PROFILES_ACTIVE=${SPRING_PROFILES_ACTIVE:-fast-start} "$binary" --server.port=0 > "$log" 2>&1 &
+  pid=$!
+  wait_started "$log" || true
+  kill "$pid" && wait "$pid" 2> /dev/null || true
+  rm -f "$log"
+}
+
+# Stampa media e minimo dei tempi letti
+summary() {
+  awk -v variant="$1" '
+    NF == 2 { n++; started += $1; process += $2; if (min == "" || $2 < min) min = $2 }
+    END {
+      if (n == 0) { printf "%-45s %5s\n", variant, "n/d"; exit }
+      printf "%-45s %5d %12.3f %12.3f %12.3f\n", variant, n, started / n, process / n, min
+    }'
+}
+
+printf "%-45s %5s %12s %12s %12s\n" "variante" "avvii" "started (s)" "processo (s)" "min (s)"
+for image in "${IMAGES[@]}"; do
+  for _ in $(seq "$RUNS"); do run_image "$image"; done | summary "$image"
+done
+if [ -n "${NATIVE_BINARY:-}" ]; then
+  for _ in $(seq "$RUNS"); do run_native "$NATIVE_BINARY"; done | summary "$NATIVE_BINARY"
+fi
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.benchmark;
+
+import it.cnr.anac.transparency.rules.RuleApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Contesto Spring e pagine condivisi dai benchmark. Il contesto viene avviato una sola volta per fork,
+ * su porta casuale e senza servizio gRPC, e i benchmark ne usano direttamente i bean.
+ * Le pagine sintetiche sono ottenute replicando {@code scale} volte il body di una pagina reale,
+ * così da misurare il comportamento al crescere della dimensione a parità di struttura.
+ */
+public final class BenchmarkSupport {
+    private static final Pattern BODY = Pattern.compile("(?is)(<body[^>]*>)(.*)(</body>)");
+    private static ConfigurableApplicationContext context;
+
+    private BenchmarkSupport() {
+    }
+
+    public static synchronized ConfigurableApplicationContext context() {
+        if (context == null) {
+            context = new SpringApplicationBuilder(RuleApplication.class)
+                    .properties(
+                            "server.port=0",
+                            "grpc.enabled=false",
+                            "spring.main.banner-mode=off",
+                            "logging.level.root=WARN")
+                    .run();
+        }
+        return context;
+    }
+
+    public static synchronized void close() {
+        if (context != null) {
+            context.close();
+            context = null;
+        }
+    }
+
+    public static String page(String name, int scale) {
+        try (InputStream inputStream = BenchmarkSupport.class.getResourceAsStream("/" + name)) {
+            if (inputStream == null) {
+                throw new IllegalArgumentException("Page not found: " + name);
+            }
+            final String content = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+            return scale <= 1 ? content : scale(content, scale);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String scale(String content, int scale) {
+        final Matcher matcher = BODY.matcher(content);
+        if (!matcher.find()) {
+            return content.repeat(scale);
+        }
+        return content.substring(0, matcher.start()) +
+                matcher.group(1) +
+                matcher.group(2).repeat(scale) +
+                matcher.group(3) +
+                content.substring(matcher.end());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.cnr.anac.transparency.rules.configuration.EncodingConfiguration;
+import it.cnr.anac.transparency.rules.service.RuleService;
+import it.cnr.anac.transparency.rules.v1.dto.RuleMapper;
+import it.cnr.anac.transparency.rules.v1.dto.RuleResponseDto;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializzazione e deserializzazione della risposta di {@code POST /v1/rules/child} in JSON, CBOR e Smile,
+ * con gli stessi {@link ObjectMapper} usati dai converter HTTP ({@link EncodingConfiguration}).
+ * Il profiler {@code gc} riporta anche i byte allocati per operazione.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EncodingBenchmark {
+    private static final TypeReference<List<RuleResponseDto>> RESPONSES = new TypeReference<>() {};
+
+    @Param({"amministrazione_child1.html", "amministrazione_child6.html"})
+    public String page;
+    @Param({"json", "cbor", "smile"})
+    public String encoding;
+
+    private ObjectMapper objectMapper;
+    private List<RuleResponseDto> ruleResponseDtos;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final ConfigurableApplicationContext context = BenchmarkSupport.context();
+        final EncodingConfiguration encodingConfiguration = context.getBean(EncodingConfiguration.class);
+        objectMapper = switch (encoding) {
+            case "cbor" -> encodingConfiguration.getCborHttpMessageConverter().getObjectMapper();
+            case "smile" -> encodingConfiguration.getSmileHttpMessageConverter().getObjectMapper();
+            default -> context.getBean(ObjectMapper.class);
+        };
+        final RuleMapper ruleMapper = context.getBean(RuleMapper.class);
+        ruleResponseDtos = context.getBean(RuleService.class)
+                .executeChildRule(BenchmarkSupport.page(page, 1), Optional.empty(), Optional.empty())
+                .stream()
+                .map(ruleMapper::convert)
+                .toList();
+        encoded = objectMapper.writeValueAsBytes(ruleResponseDtos);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.close();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectMapper.writeValueAsBytes(ruleResponseDtos);
+    }
+
+    @Benchmark
+    public List<RuleResponseDto> deserialize() throws IOException {
+        return objectMapper.readValue(encoded, RESPONSES);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.benchmark;
+
+import it.cnr.anac.transparency.rules.domain.Anchor;
+import it.cnr.anac.transparency.rules.service.JsoupAnchorService;
+import it.cnr.anac.transparency.rules.service.RegularExpressionAnchorService;
+import it.cnr.anac.transparency.rules.service.RuleService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodifica ed estrazione degli anchor: regex, jsoup anchors e jsoup allTags.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExtractionBenchmark {
+    @Param({"amministrazione_child1.html", "amministrazione_child6.html", "amministrazione_child7.html"})
+    public String page;
+    @Param({"1", "4", "16"})
+    public int scale;
+
+    private RuleService ruleService;
+    private RegularExpressionAnchorService regularExpressionAnchorService;
+    private JsoupAnchorService jsoupAnchorService;
+    private String content;
+    private String encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final ConfigurableApplicationContext context = BenchmarkSupport.context();
+        ruleService = context.getBean(RuleService.class);
+        regularExpressionAnchorService = context.getBean(RegularExpressionAnchorService.class);
+        jsoupAnchorService = context.getBean(JsoupAnchorService.class);
+        content = BenchmarkSupport.page(page, scale);
+        encoded = Base64.getEncoder().encodeToString(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.close();
+    }
+
+    @Benchmark
+    public String base64Decode() {
+        return ruleService.base64Decode(encoded);
+    }
+
+    @Benchmark
+    public List<Anchor> regularExpression() {
+        return regularExpressionAnchorService.find(content, Boolean.FALSE);
+    }
+
+    @Benchmark
+    public List<Anchor> jsoupAnchors() {
+        return jsoupAnchorService.find(content, Boolean.FALSE);
+    }
+
+    @Benchmark
+    public List<Anchor> jsoupAllTags() {
+        return jsoupAnchorService.find(content, Boolean.TRUE);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.benchmark;
+
+import it.cnr.anac.transparency.rules.domain.Anchor;
+import it.cnr.anac.transparency.rules.domain.CompiledRuleTree;
+import it.cnr.anac.transparency.rules.domain.RuleResponse;
+import it.cnr.anac.transparency.rules.domain.Term;
+import it.cnr.anac.transparency.rules.search.LuceneSearch;
+import it.cnr.anac.transparency.rules.service.RegularExpressionAnchorService;
+import it.cnr.anac.transparency.rules.service.RuleService;
+import it.cnr.anac.transparency.rules.service.RuleSnapshot;
+import it.cnr.anac.transparency.rules.service.RuleSnapshotManager;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Costruzione dell'indice Lucene, ricerca dei termini delle regole figlie della root
+ * e valutazione completa delle regole figlie ({@link RuleService#executeChildRule(CharSequence, Optional, Optional)}).
+ * La costruzione dell'indice viene misurata anche a partizioni, con un thread per core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBenchmark {
+    @Param({"amministrazione_child1.html", "amministrazione_child6.html", "amministrazione_child7.html"})
+    public String page;
+    @Param({"1", "4", "16"})
+    public int scale;
+
+    private RuleService ruleService;
+    private RuleSnapshot snapshot;
+    private String content;
+    private List<Anchor> anchors;
+    private List<String> keywords;
+    private LuceneSearch luceneSearch;
+    private ExecutorService indexingPool;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final ConfigurableApplicationContext context = BenchmarkSupport.context();
+        ruleService = context.getBean(RuleService.class);
+        snapshot = context.getBean(RuleSnapshotManager.class).latest();
+        content = BenchmarkSupport.page(page, scale);
+        anchors = context.getBean(RegularExpressionAnchorService.class).find(content, Boolean.FALSE);
+        final CompiledRuleTree ruleTree = snapshot.getRuleTree();
+        final int root = ruleTree.getDefaultRootId();
+        keywords = IntStream.range(0, ruleTree.childCount(root))
+                .mapToObj(index -> ruleTree.rule(ruleTree.child(root, index)))
+                .flatMap(rule -> rule.getTerm().stream())
+                .map(Term::getKey)
+                .toList();
+        luceneSearch = new LuceneSearch(anchors, snapshot.getAnalyzer(), snapshot.getConfiguration().getMaxLengthContent());
+        indexingPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        luceneSearch.close();
+        indexingPool.shutdownNow();
+        BenchmarkSupport.close();
+    }
+
+    @Benchmark
+    public int luceneSearchBuild() throws IOException {
+        try (LuceneSearch search = new LuceneSearch(anchors, snapshot.getAnalyzer(), snapshot.getConfiguration().getMaxLengthContent())) {
+            return search.hashCode();
+        }
+    }
+
+    @Benchmark
+    public int luceneSearchBuildParallel() throws IOException {
+        try (LuceneSearch search = new LuceneSearch(anchors, snapshot.getAnalyzer(), snapshot.getConfiguration().getMaxLengthContent(),
+                false, indexingPool, Runtime.getRuntime().availableProcessors())) {
+            return search.hashCode();
+        }
+    }
+
+    @Benchmark
+    public void luceneSearch(Blackhole blackhole) throws IOException, ParseException {
+        for (String keyword : keywords) {
+            blackhole.consume(luceneSearch.search(keyword));
+        }
+    }
+
+    @Benchmark
+    public void luceneSearchPrepared(Blackhole blackhole) throws IOException, ParseException {
+        for (String keyword : keywords) {
+            final Optional<Query> query = snapshot.query(keyword);
+            blackhole.consume(query.isPresent() ? luceneSearch.search(keyword, query.get()) : luceneSearch.search(keyword));
+        }
+    }
+
+    @Benchmark
+    public List<RuleResponse> executeChildRule() throws IOException {
+        return ruleService.executeChildRule(content, Optional.empty(), Optional.empty());
+    }
+}
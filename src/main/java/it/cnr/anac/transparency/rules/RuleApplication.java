@@ -17,10 +17,13 @@
 
 package it.cnr.anac.transparency.rules;
 
+import it.cnr.anac.transparency.rules.configuration.RuleRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
+@ImportRuntimeHints(RuleRuntimeHints.class)
 public class RuleApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.actuator;
+
+import it.cnr.anac.transparency.rules.service.MemoryAdmissionController;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Espone tramite actuator lo stato del budget di memoria e le prenotazioni in corso.
+ */
+@Component
+@Endpoint(id = "admission")
+@RequiredArgsConstructor
+public class AdmissionEndpoint {
+    private final MemoryAdmissionController memoryAdmissionController;
+
+    public record AdmissionReservation(long id, Instant since, long bytes) {}
+
+    public record AdmissionStatus(boolean enabled, long budgetBytes, long availableBytes, long reservedBytes,
+                                  List<AdmissionReservation> reservations) {}
+
+    @ReadOperation
+    public AdmissionStatus admission() {
+        final List<AdmissionReservation> reservations = memoryAdmissionController.getReservations()
+                .stream()
+                .map(reservation -> new AdmissionReservation(reservation.getId(), reservation.getSince(), reservation.getBytes()))
+                .sorted(Comparator.comparing(AdmissionReservation::since))
+                .toList();
+        return new AdmissionStatus(
+                memoryAdmissionController.isEnabled(),
+                memoryAdmissionController.getBudgetBytes(),
+                memoryAdmissionController.getAvailableBytes(),
+                memoryAdmissionController.getBudgetBytes() - memoryAdmissionController.getAvailableBytes(),
+                reservations
+        );
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.actuator;
+
+import it.cnr.anac.transparency.rules.service.ExtractorStatistics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Espone tramite actuator le statistiche apprese sui passaggi di estrazione per host o fingerprint,
+ * permettendo di azzerarle completamente o per singola chiave.
+ */
+@Component
+@Endpoint(id = "extractors")
+@RequiredArgsConstructor
+public class ExtractorsEndpoint {
+    private final ExtractorStatistics extractorStatistics;
+
+    public record ExtractorsStatus(boolean enabled, Map<String, ExtractorStatistics.KeyStatistics> statistics) {}
+
+    @ReadOperation
+    public ExtractorsStatus extractors() {
+        return new ExtractorsStatus(extractorStatistics.isEnabled(), extractorStatistics.getStatistics());
+    }
+
+    @DeleteOperation
+    public void reset() {
+        extractorStatistics.reset();
+    }
+
+    @DeleteOperation
+    public boolean resetKey(@Selector String key) {
+        return extractorStatistics.reset(key);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.actuator;
+
+import it.cnr.anac.transparency.rules.configuration.JfrProperties;
+import it.cnr.anac.transparency.rules.monitoring.RuleEvents;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gestisce una registrazione Java Flight Recorder a tempo con gli eventi di {@link RuleEvents} abilitati.
+ * La registrazione viene avviata con una POST, che ritorna subito, e il file .jfr viene scaricato con una GET
+ * al termine della registrazione. Con {@code profile=true} vengono abilitati anche gli eventi della
+ * configurazione "profile" della JVM (campionamento CPU, allocazioni, lock), esclusi quelli che riportano
+ * variabili d'ambiente e proprietà di sistema. È consentita una sola registrazione alla volta.
+ */
+@Slf4j
+@Component
+@WebEndpoint(id = "jfr")
+@RequiredArgsConstructor
+public class JfrEndpoint {
+    /**
+     * Eventi della configurazione "profile" che non vengono registrati perché possono contenere credenziali.
+     */
+    public static final String[] SENSITIVE_EVENTS = {
+            "jdk.InitialEnvironmentVariable", "jdk.InitialSystemProperty", "jdk.JVMInformation"
+    };
+
+    private final JfrProperties jfrProperties;
+    private Recording recording;
+    private Path file;
+    private boolean dumped;
+
+    @WriteOperation
+    public synchronized WebEndpointResponse<Map<String, Object>> start(@Nullable Duration duration, @Nullable Boolean profile) {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            return new WebEndpointResponse<>(status(), WebEndpointResponse.STATUS_TOO_MANY_REQUESTS);
+        }
+        close();
+        try {
+            file = Files.createTempFile("rule-service-", ".jfr");
+            recording = profile(Boolean.TRUE.equals(profile));
+            recording.setName("rule-service");
+            RuleEvents.names().forEach(name -> recording.enable(name).withoutThreshold());
+            recording.setDuration(duration(duration));
+            log.info("Starting JFR recording for {}", recording.getDuration());
+            recording.start();
+            return new WebEndpointResponse<>(status(), WebEndpointResponse.STATUS_OK);
+        } catch (IOException | ParseException e) {
+            log.error("Cannot start JFR recording", e);
+            close();
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @ReadOperation(produces = "application/octet-stream")
+    public synchronized WebEndpointResponse<Resource> dump() {
+        if (recording == null) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        if (recording.getState() != RecordingState.STOPPED) {
+            return new WebEndpointResponse<>(HttpStatus.CONFLICT.value());
+        }
+        try {
+            if (!dumped) {
+                recording.dump(file);
+                dumped = true;
+            }
+            return new WebEndpointResponse<>(new FileSystemResource(file));
+        } catch (IOException e) {
+            log.error("Cannot dump JFR recording", e);
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Cannot delete JFR recording {}", file, e);
+            }
+            file = null;
+        }
+        dumped = false;
+    }
+
+    private Map<String, Object> status() {
+        final Map<String, Object> status = new HashMap<>();
+        status.put("state", recording.getState().name());
+        status.put("duration", recording.getDuration());
+        status.put("startTime", recording.getStartTime());
+        return status;
+    }
+
+    private Recording profile(boolean profile) throws IOException, ParseException {
+        if (!profile) {
+            return new Recording();
+        }
+        final Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("profile").getSettings());
+        for (String event : SENSITIVE_EVENTS) {
+            settings.put(event + "#enabled", "false");
+        }
+        return new Recording(settings);
+    }
+
+    private Duration duration(Duration duration) {
+        if (duration == null || duration.isNegative() || duration.isZero()) {
+            return jfrProperties.getDefaultDuration();
+        }
+        return duration.compareTo(jfrProperties.getMaxDuration()) > 0 ? jfrProperties.getMaxDuration() : duration;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.actuator;
+
+import it.cnr.anac.transparency.rules.configuration.ShadowProperties;
+import it.cnr.anac.transparency.rules.service.ShadowExecutionService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Espone tramite actuator lo stato della valutazione ombra e gli esempi più recenti di differenze
+ * rispetto alla valutazione primaria, permettendo di azzerarli.
+ */
+@Component
+@Endpoint(id = "shadow")
+@RequiredArgsConstructor
+public class ShadowEndpoint {
+    private final ShadowExecutionService shadowExecutionService;
+
+    public record ShadowStatus(boolean enabled, double sampleRate, ShadowProperties.Engine engine, long matches,
+                               long mismatches, long discarded, List<ShadowExecutionService.Mismatch> samples) {}
+
+    @ReadOperation
+    public ShadowStatus shadow() {
+        final ShadowProperties shadowProperties = shadowExecutionService.getShadowProperties();
+        return new ShadowStatus(shadowExecutionService.isEnabled(), shadowProperties.getSampleRate(),
+                shadowProperties.getEngine(), shadowExecutionService.getMatches(),
+                shadowExecutionService.getMismatches(), shadowExecutionService.getDiscarded(),
+                shadowExecutionService.getSamples());
+    }
+
+    @DeleteOperation
+    public void clear() {
+        shadowExecutionService.clearSamples();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties("adaptive")
+public class AdaptiveProperties {
+    /**
+     * Abilita la scelta del primo passaggio di estrazione in base agli esiti precedenti per host o fingerprint
+     */
+    private boolean enabled = false;
+    /**
+     * Numero massimo di coppie host (o fingerprint) e regola padre di cui vengono mantenute le statistiche
+     */
+    private int maxEntries = 10000;
+    /**
+     * Numero minimo di tentativi di un passaggio prima di poterlo saltare
+     */
+    private int minSamples = 20;
+    /**
+     * Percentuale di successo sotto la quale un passaggio viene saltato
+     */
+    private double minSuccessRate = 0.05;
+    /**
+     * Frazione delle richieste che saltano dei passaggi per cui la catena completa viene eseguita
+     * in una valutazione ombra, per aggiornare le statistiche
+     */
+    private double exploreRate = 0.05;
+}
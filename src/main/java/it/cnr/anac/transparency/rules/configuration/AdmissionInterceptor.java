@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import it.cnr.anac.transparency.rules.exception.RuleOverloadException;
+import it.cnr.anac.transparency.rules.service.MemoryAdmissionController;
+import it.cnr.anac.transparency.rules.v1.controller.RuleExceptionHandler;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.Optional;
+
+/**
+ * Prenota la memoria stimata per le richieste di applicazione delle regole prima della lettura del body,
+ * rilasciandola al termine della richiesta (anche asincrona).
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class AdmissionInterceptor implements AsyncHandlerInterceptor {
+    private final MemoryAdmissionController memoryAdmissionController;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!memoryAdmissionController.isEnabled() ||
+                !HttpMethod.POST.matches(request.getMethod()) ||
+                request.getDispatcherType() == DispatcherType.ASYNC ||
+                request.getAttribute(MemoryAdmissionController.RESERVATION_ATTRIBUTE) != null) {
+            return true;
+        }
+        try {
+            // Senza Content-Length viene prenotata una dimensione iniziale, estesa durante la lettura del body
+            request.setAttribute(
+                    MemoryAdmissionController.RESERVATION_ATTRIBUTE,
+                    request.getContentLengthLong() >= 0 ?
+                            memoryAdmissionController.reserve(request.getContentLengthLong()) :
+                            memoryAdmissionController.reserveChunked()
+            );
+            return true;
+        } catch (RuleOverloadException e) {
+            final ResponseEntity<Object> tooManyRequests = RuleExceptionHandler.tooManyRequests(e);
+            response.setStatus(tooManyRequests.getStatusCode().value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, tooManyRequests.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+            return false;
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Optional.ofNullable(request.getAttribute(MemoryAdmissionController.RESERVATION_ATTRIBUTE))
+                .filter(MemoryAdmissionController.Reservation.class::isInstance)
+                .map(MemoryAdmissionController.Reservation.class::cast)
+                .ifPresent(MemoryAdmissionController.Reservation::close);
+    }
+}
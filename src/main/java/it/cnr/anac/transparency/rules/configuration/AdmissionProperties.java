@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("admission")
+public class AdmissionProperties {
+    /**
+     * Abilita il controllo di ammissione basato sul budget di memoria
+     */
+    private boolean enabled = false;
+    /**
+     * Memoria complessiva riservabile dalle richieste in corso, di default metà dell'heap massimo
+     */
+    private DataSize budget;
+    /**
+     * Numero di copie del contenuto decodificato stimate per ogni richiesta
+     * (stringa decodificata, DOM jsoup, liste di anchor, buffer Lucene)
+     */
+    private double expansionFactor = 6;
+    /**
+     * Content-Length presunto per le richieste che non lo dichiarano (chunked): la prenotazione
+     * viene estesa man mano che il body viene letto
+     */
+    private DataSize chunkedContentLength = DataSize.ofMegabytes(1);
+    /**
+     * Tempo massimo di attesa in coda prima di rifiutare la richiesta
+     */
+    private Duration maxWait = Duration.ofSeconds(10);
+    /**
+     * Valore dell'header Retry-After restituito quando il budget è esaurito
+     */
+    private Duration retryAfter = Duration.ofSeconds(5);
+
+    public long getBudgetBytes() {
+        return budget != null ? budget.toBytes() : Runtime.getRuntime().maxMemory() / 2;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import it.cnr.anac.transparency.rules.service.MemoryAdmissionController;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.Optional;
+
+/**
+ * Per le richieste senza Content-Length conta i byte letti dal body e li comunica alla prenotazione
+ * di memoria della richiesta, che viene estesa man mano che il contenuto supera la stima iniziale.
+ */
+@ControllerAdvice
+@RequiredArgsConstructor
+public class AdmissionRequestBodyAdvice extends RequestBodyAdviceAdapter {
+    private final MemoryAdmissionController memoryAdmissionController;
+
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return memoryAdmissionController.isEnabled();
+    }
+
+    @Override
+    public HttpInputMessage beforeBodyRead(HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                           Class<? extends HttpMessageConverter<?>> converterType) throws IOException {
+        final Optional<MemoryAdmissionController.Reservation> reservation = memoryAdmissionController.current();
+        if (reservation.isEmpty() || inputMessage.getHeaders().getContentLength() >= 0) {
+            return inputMessage;
+        }
+        final InputStream body = new CountingInputStream(inputMessage.getBody(), reservation.get());
+        return new HttpInputMessage() {
+            @Override
+            public InputStream getBody() {
+                return body;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return inputMessage.getHeaders();
+            }
+        };
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final MemoryAdmissionController.Reservation reservation;
+
+        CountingInputStream(InputStream in, MemoryAdmissionController.Reservation reservation) {
+            super(in);
+            this.reservation = reservation;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                reservation.onRead(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                reservation.onRead(read);
+            }
+            return read;
+        }
+    }
+}
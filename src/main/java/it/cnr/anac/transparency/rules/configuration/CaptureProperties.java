@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("capture")
+public class CaptureProperties {
+    /**
+     * Abilita la cattura delle pagine lente: le richieste che superano una delle soglie vengono salvate,
+     * compresse, nella directory indicata insieme ai parametri e ai tempi delle fasi
+     */
+    private boolean enabled;
+    /**
+     * Directory delle catture, gestita come buffer circolare
+     */
+    private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "rule-service-captures");
+    /**
+     * Durata della valutazione oltre la quale la richiesta viene catturata
+     */
+    private Duration latencyThreshold = Duration.ofSeconds(2);
+    /**
+     * Memoria allocata dalle fasi della valutazione oltre la quale la richiesta viene catturata
+     */
+    private DataSize memoryThreshold = DataSize.ofMegabytes(512);
+    /**
+     * Numero massimo di catture conservate, oltre il quale vengono eliminate le più vecchie
+     */
+    private int maxFiles = 200;
+    /**
+     * Dimensione massima complessiva delle catture conservate
+     */
+    private DataSize maxSize = DataSize.ofMegabytes(500);
+    /**
+     * Numero massimo di catture in attesa di scrittura, le eccedenti vengono scartate
+     */
+    private int queueCapacity = 4;
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import lombok.Getter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Formati binari compatti (CBOR e Smile) negoziati tramite l'header Accept in alternativa al JSON.
+ * Entrambi i formati sono configurati per riutilizzare tramite riferimenti le stringhe ripetute
+ * (nomi delle regole, termini, contenuti), molto frequenti nelle risposte delle regole figlie.
+ * I converter vengono aggiunti dopo quello JSON, che resta il formato predefinito quando il client
+ * accetta qualsiasi formato.
+ */
+@Getter
+@Configuration
+public class EncodingConfiguration implements WebMvcConfigurer {
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    private final MappingJackson2CborHttpMessageConverter cborHttpMessageConverter;
+    private final MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter;
+
+    public EncodingConfiguration(ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder) {
+        this.cborHttpMessageConverter = new MappingJackson2CborHttpMessageConverter(objectMapperBuilder.getObject()
+                .factory(CBORFactory.builder()
+                        .enable(CBORGenerator.Feature.STRINGREF)
+                        .build())
+                .build());
+        this.smileHttpMessageConverter = new MappingJackson2SmileHttpMessageConverter(objectMapperBuilder.getObject()
+                .factory(SmileFactory.builder()
+                        .enable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+                        .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                        .build())
+                .build());
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter ||
+                converter instanceof MappingJackson2SmileHttpMessageConverter);
+        converters.add(cborHttpMessageConverter);
+        converters.add(smileHttpMessageConverter);
+    }
+}
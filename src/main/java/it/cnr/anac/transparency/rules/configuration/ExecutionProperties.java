@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("execution")
+public class ExecutionProperties {
+    /**
+     * Abilita l'esecuzione delle fasi CPU-bound su un pool dedicato
+     */
+    private boolean enabled;
+    /**
+     * Numero di thread del pool, di default pari al numero di core
+     */
+    private int poolSize = Runtime.getRuntime().availableProcessors();
+    /**
+     * Numero massimo di valutazioni in attesa, oltre il quale le richieste vengono rifiutate
+     */
+    private int queueCapacity = 64;
+    /**
+     * Valore dell'header Retry-After restituito quando il servizio è sovraccarico
+     */
+    private Duration retryAfter = Duration.ofSeconds(5);
+    /**
+     * Tempo massimo di valutazione di una richiesta, sovrascrivibile con l'header X-Rule-Deadline (millisecondi).
+     * Se non impostato la valutazione non ha scadenza.
+     */
+    private Duration deadline;
+    /**
+     * Estrazione con espressione regolare in parallelo, a blocchi, per le pagine più grandi
+     */
+    private ParallelExtraction parallelExtraction = new ParallelExtraction();
+    /**
+     * Costruzione dell'indice Lucene in parallelo, a partizioni, per gli elenchi di anchor più grandi
+     */
+    private ParallelIndexing parallelIndexing = new ParallelIndexing();
+
+    @Getter
+    @Setter
+    public static class ParallelExtraction {
+        /**
+         * Abilita l'estrazione in parallelo su un pool fork-join dedicato
+         */
+        private boolean enabled;
+        /**
+         * Numero di caratteri della pagina oltre il quale l'estrazione avviene in parallelo
+         */
+        private DataSize threshold = DataSize.ofMegabytes(2);
+        /**
+         * Dimensione indicativa, in caratteri, dei blocchi in cui viene divisa la pagina
+         */
+        private DataSize chunkSize = DataSize.ofKilobytes(256);
+        /**
+         * Numero di thread del pool fork-join, di default pari al numero di core
+         */
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    @Getter
+    @Setter
+    public static class ParallelIndexing {
+        /**
+         * Abilita la costruzione dell'indice in parallelo su un pool dedicato
+         */
+        private boolean enabled;
+        /**
+         * Numero di anchor oltre il quale l'indice viene costruito in parallelo
+         */
+        private int threshold = 50_000;
+        /**
+         * Numero di partizioni, e di thread del pool, di default pari al numero di core
+         */
+        private int partitions = Runtime.getRuntime().availableProcessors();
+    }
+}
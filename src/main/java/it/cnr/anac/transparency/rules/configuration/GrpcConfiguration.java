@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import io.grpc.BindableService;
+import io.grpc.ServerInterceptor;
+import it.cnr.anac.transparency.rules.grpc.GrpcAuthenticationInterceptor;
+import it.cnr.anac.transparency.rules.grpc.GrpcServerLifecycle;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+
+import java.util.List;
+import java.util.Optional;
+
+@Configuration
+@EnableConfigurationProperties(GrpcProperties.class)
+public class GrpcConfiguration {
+
+    /**
+     * Con OAuth2 abilitato le chiamate gRPC vengono autenticate con il {@link JwtDecoder} del resource server,
+     * se non è disponibile il server gRPC non viene avviato (vedi {@link GrpcServerLifecycle}).
+     */
+    @Bean
+    public GrpcServerLifecycle grpcServerLifecycle(GrpcProperties grpcProperties, List<BindableService> services,
+                                                   Oauth2Properties oauth2Properties, ObjectProvider<JwtDecoder> jwtDecoder) {
+        final List<ServerInterceptor> interceptors = oauth2Properties.isEnabled() ?
+                Optional.ofNullable(jwtDecoder.getIfAvailable())
+                        .<ServerInterceptor>map(decoder -> new GrpcAuthenticationInterceptor(decoder,
+                                new Oauth2Configuration.RolesClaimConverter(new JwtGrantedAuthoritiesConverter()),
+                                Optional.ofNullable(oauth2Properties.getRoles()).map(roles -> roles.get("POST")).orElse(null)))
+                        .stream()
+                        .toList() :
+                List.of();
+        return new GrpcServerLifecycle(grpcProperties, services, interceptors, oauth2Properties.isEnabled());
+    }
+}
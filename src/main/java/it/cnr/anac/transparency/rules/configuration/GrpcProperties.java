@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.core.io.Resource;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("grpc")
+public class GrpcProperties {
+    /**
+     * Abilita il server gRPC
+     */
+    private boolean enabled = false;
+    /**
+     * Porta su cui è in ascolto il server gRPC
+     */
+    private int port = 9090;
+    /**
+     * Dimensione massima di un singolo messaggio ricevuto, per lo streaming corrisponde alla dimensione di un chunk
+     */
+    private DataSize maxInboundMessageSize = DataSize.ofMegabytes(4);
+    /**
+     * Numero massimo di pagine in ricezione o in valutazione contemporaneamente su un singolo stream
+     */
+    private int maxPendingPages = 4;
+    /**
+     * Tempo concesso alle chiamate in corso per terminare durante lo spegnimento
+     */
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+    /**
+     * Configurazione TLS del server gRPC
+     */
+    private Tls tls = new Tls();
+
+    @Getter
+    @Setter
+    public static class Tls {
+        /**
+         * Abilita TLS sul server gRPC
+         */
+        private boolean enabled;
+        /**
+         * Catena dei certificati del server in formato PEM
+         */
+        private Resource certificateChain;
+        /**
+         * Chiave privata del server in formato PEM (PKCS#8)
+         */
+        private Resource privateKey;
+    }
+}
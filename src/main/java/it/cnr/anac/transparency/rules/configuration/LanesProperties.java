@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("lanes")
+public class LanesProperties {
+    /**
+     * Abilita la suddivisione delle richieste in corsie veloci e lente
+     */
+    private boolean enabled;
+    /**
+     * Dimensione del contenuto decodificato oltre la quale la richiesta viene assegnata alla corsia lenta
+     */
+    private DataSize slowThreshold = DataSize.ofMegabytes(1);
+    /**
+     * Numero di anchor oltre il quale la richiesta, riclassificata dopo l'estrazione, passa alla corsia lenta
+     */
+    private int slowAnchorThreshold = 20000;
+    /**
+     * Numero massimo di valutazioni concorrenti nella corsia veloce
+     */
+    private int fastConcurrency = Runtime.getRuntime().availableProcessors() * 4;
+    /**
+     * Numero massimo di valutazioni concorrenti nella corsia lenta
+     */
+    private int slowConcurrency = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    /**
+     * Tempo massimo di attesa per l'accesso a una corsia prima di rifiutare la richiesta
+     */
+    private Duration maxWait = Duration.ofSeconds(30);
+    /**
+     * Valore dell'header Retry-After restituito quando la corsia è satura
+     */
+    private Duration retryAfter = Duration.ofSeconds(5);
+}
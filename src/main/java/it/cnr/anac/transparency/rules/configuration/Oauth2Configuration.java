@@ -37,12 +37,18 @@ import org.springframework.security.web.SecurityFilterChain;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Configuration
 @EnableWebSecurity
 @EnableConfigurationProperties(Oauth2Properties.class)
 public class Oauth2Configuration {
+    /**
+     * Endpoint actuator che espongono dati sensibili anche in lettura: richiedono gli stessi ruoli delle POST.
+     */
+    static final String[] PROTECTED_ACTUATORS = {"/actuator/jfr", "/actuator/shadow"};
+
     private final Oauth2Properties oauth2Properties;
 
     public Oauth2Configuration(Oauth2Properties properties) {
@@ -54,7 +60,15 @@ public class Oauth2Configuration {
         if (oauth2Properties.isEnabled()) {
             http.authorizeHttpRequests(expressionInterceptUrlRegistry -> {
                 expressionInterceptUrlRegistry
-                        .requestMatchers(HttpMethod.OPTIONS).permitAll()
+                        .requestMatchers(HttpMethod.OPTIONS).permitAll();
+                Optional.ofNullable(oauth2Properties.getRoles().get(HttpMethod.POST.name()))
+                        .ifPresentOrElse(
+                                roles -> expressionInterceptUrlRegistry
+                                        .requestMatchers(HttpMethod.GET, PROTECTED_ACTUATORS).hasAnyRole(roles),
+                                () -> expressionInterceptUrlRegistry
+                                        .requestMatchers(HttpMethod.GET, PROTECTED_ACTUATORS).authenticated()
+                        );
+                expressionInterceptUrlRegistry
                         .requestMatchers(HttpMethod.GET, "/actuator/*").permitAll()
                         .requestMatchers(HttpMethod.GET,"/api-docs/**","/swagger-ui/**").permitAll();
                 oauth2Properties
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import it.cnr.anac.transparency.rules.service.RuleExecutor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Configuration
+@EnableConfigurationProperties({ReactiveProperties.class, ExecutionProperties.class, LanesProperties.class, AdaptiveProperties.class,
+        CaptureProperties.class, ShadowProperties.class, SpillProperties.class})
+public class ReactiveConfiguration {
+    public static final String RULE_SCHEDULER = "ruleScheduler";
+
+    /**
+     * Scheduler limitato su cui vengono eseguite le fasi CPU-bound (estrazione, indicizzazione e ricerca)
+     * degli endpoint reattivi. Se abilitato viene condiviso il pool di {@link RuleExecutor}.
+     */
+    @Bean(name = RULE_SCHEDULER, destroyMethod = "dispose")
+    public Scheduler ruleScheduler(ReactiveProperties reactiveProperties, RuleExecutor ruleExecutor) {
+        return ruleExecutor.getExecutorService()
+                .map(executorService -> Schedulers.fromExecutorService(executorService, "rule-engine"))
+                .orElseGet(() -> Schedulers.newBoundedElastic(
+                        reactiveProperties.getSchedulerThreads(),
+                        reactiveProperties.getSchedulerQueueCapacity(),
+                        "rule-engine"
+                ));
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties("reactive")
+public class ReactiveProperties {
+    /**
+     * Dimensione dei buffer letti dal body della richiesta
+     */
+    private int bufferSize = 8192;
+    /**
+     * Numero massimo di thread dello scheduler dedicato all'estrazione e alla ricerca
+     */
+    private int schedulerThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * Numero massimo di valutazioni in attesa sullo scheduler
+     */
+    private int schedulerQueueCapacity = 100;
+}
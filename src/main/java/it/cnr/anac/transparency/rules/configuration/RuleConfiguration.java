@@ -20,9 +20,11 @@ package it.cnr.anac.transparency.rules.configuration;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import it.cnr.anac.transparency.rules.domain.CompiledRuleTree;
 import it.cnr.anac.transparency.rules.domain.Rule;
 import it.cnr.anac.transparency.rules.exception.RuleNotFoundException;
 import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -42,6 +44,7 @@ public class RuleConfiguration {
     protected Integer maxLengthContent;
     protected Integer maxLengthPageByte;
     protected Integer maxLengthContentRegularExpression;
+    protected Boolean incrementalIndex = Boolean.FALSE;
     protected List<String> tagAttributes;
     private List<Character> searchTokens;
     protected List<String> stopWordsInbox;
@@ -50,6 +53,8 @@ public class RuleConfiguration {
 
     protected Map<String, Rule> rules;
     protected Map<String, Map<String, Rule>> flattenRules;
+    @Setter(AccessLevel.NONE)
+    protected volatile CompiledRuleTree compiledRuleTree;
 
     @PostConstruct
     public void postConstruct() {
@@ -68,6 +73,7 @@ public class RuleConfiguration {
                 .forEach(entry -> {
                     addToFlattenRules(entry.getKey(), entry.getValue());
                 });
+        compiledRuleTree = CompiledRuleTree.compile(rules, defaultRule);
     }
 
     private void addToFlattenRules(String key, Rule rule) {
@@ -94,18 +100,8 @@ public class RuleConfiguration {
     }
 
     public Rule getRule(Optional<String> rootRule, Optional<String> ruleName) {
-        if(!ruleName.isPresent()) {
-            return Optional.ofNullable(flattenRules.get(rootRule.orElse(defaultRule)))
-                    .orElseGet(() -> flattenRules.get(defaultRule))
-                    .get(rootRule.orElse(defaultRule));
-        } else {
-            Map<String, Rule> stringRuleMap = Optional.ofNullable(flattenRules.get(rootRule.orElse(defaultRule)))
-                    .orElseGet(() -> flattenRules.get(defaultRule));
-            return Optional.ofNullable(
-                        stringRuleMap.get(ruleName.orElseGet(() -> rootRule.orElseThrow(RuleNotFoundException::new)))
-                    )
-                    .orElseGet(() -> stringRuleMap.get(rootRule.orElseThrow(RuleNotFoundException::new)));
-        }
+        final int id = compiledRuleTree.resolve(rootRule, ruleName);
+        return id == CompiledRuleTree.NO_RULE ? null : compiledRuleTree.rule(id);
     }
 
     public Rule getRootRule() {
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import it.cnr.anac.transparency.rules.domain.Rule;
+import it.cnr.anac.transparency.rules.grpc.v1.ChildRuleOptions;
+import it.cnr.anac.transparency.rules.grpc.v1.ChildRuleResults;
+import it.cnr.anac.transparency.rules.grpc.v1.EvaluateRequest;
+import it.cnr.anac.transparency.rules.grpc.v1.Operation;
+import it.cnr.anac.transparency.rules.grpc.v1.PageChunk;
+import it.cnr.anac.transparency.rules.grpc.v1.PageResult;
+import it.cnr.anac.transparency.rules.grpc.v1.RuleResult;
+import it.cnr.anac.transparency.rules.monitoring.SlowPageCapture;
+import it.cnr.anac.transparency.rules.search.CustomTokenizerAnalyzer;
+import org.apache.lucene.analysis.snowball.SnowballFilter;
+import org.apache.lucene.analysis.tokenattributes.BytesTermAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.FlagsAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.PackedTokenAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.SentenceAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.TermFrequencyAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.TypeAttributeImpl;
+import org.apache.lucene.search.BoostAttributeImpl;
+import org.apache.lucene.search.MaxNonCompetitiveBoostAttributeImpl;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.List;
+
+/**
+ * Hint per l'elaborazione AOT di Spring e per l'immagine nativa GraalVM: risorse e classi che le librerie
+ * caricano per nome o via reflection e che l'analisi statica non è in grado di individuare.
+ */
+public class RuleRuntimeHints implements RuntimeHintsRegistrar {
+
+    /**
+     * Implementazioni degli attributi dei token: l'{@code AttributeFactory} di default di Lucene le cerca per nome
+     * (interfaccia + {@code Impl}) e le istanzia tramite il costruttore pubblico.
+     */
+    static final List<Class<?>> LUCENE_ATTRIBUTES = List.of(
+            PackedTokenAttributeImpl.class, CharTermAttributeImpl.class, OffsetAttributeImpl.class,
+            PositionIncrementAttributeImpl.class, PositionLengthAttributeImpl.class, TypeAttributeImpl.class,
+            TermFrequencyAttributeImpl.class, FlagsAttributeImpl.class, KeywordAttributeImpl.class,
+            PayloadAttributeImpl.class, BytesTermAttributeImpl.class, SentenceAttributeImpl.class,
+            BoostAttributeImpl.class, MaxNonCompetitiveBoostAttributeImpl.class
+    );
+
+    /**
+     * Messaggi gRPC generati: gli accessor di protobuf risolvono getter e setter via reflection.
+     */
+    static final List<Class<?>> PROTOBUF_MESSAGES = List.of(
+            ChildRuleOptions.class, ChildRuleOptions.Builder.class, EvaluateRequest.class, EvaluateRequest.Builder.class,
+            PageChunk.class, PageChunk.Builder.class, RuleResult.class, RuleResult.Builder.class,
+            ChildRuleResults.class, ChildRuleResults.Builder.class, PageResult.class, PageResult.Builder.class,
+            Operation.class
+    );
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        // Stopword italiane lette da CustomTokenizerAnalyzer accanto a SnowballFilter
+        hints.resources().registerResource(
+                new ClassPathResource(CustomTokenizerAnalyzer.DEFAULT_STOPWORD_FILE, SnowballFilter.class));
+        // Codec, formati e factory di analisi di Lucene sono caricati tramite SPI
+        hints.resources().registerPattern("META-INF/services/org.apache.lucene.*");
+
+        LUCENE_ATTRIBUTES.forEach(type ->
+                hints.reflection().registerType(type, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS));
+
+        PROTOBUF_MESSAGES.forEach(type ->
+                hints.reflection().registerType(type, MemberCategory.INVOKE_PUBLIC_METHODS));
+
+        // Regole lette dal json di configurazione e pagine lente serializzate su disco
+        new BindingReflectionHintsRegistrar().registerReflectionHints(
+                hints.reflection(), Rule.class, SlowPageCapture.CapturedPage.class);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("shadow")
+public class ShadowProperties {
+    /**
+     * Abilita la valutazione ombra di un campione delle richieste con una configurazione alternativa del motore
+     */
+    private boolean enabled;
+    /**
+     * Frazione delle valutazioni delle regole figlie rieseguite in ombra
+     */
+    private double sampleRate = 0.01;
+    /**
+     * Numero di thread, a bassa priorità, dedicati alle valutazioni ombra
+     */
+    private int threads = 1;
+    /**
+     * Numero massimo di valutazioni ombra in attesa, le eccedenti vengono scartate
+     */
+    private int queueCapacity = 16;
+    /**
+     * Tempo massimo di una valutazione ombra
+     */
+    private Duration timeout = Duration.ofSeconds(30);
+    /**
+     * Differenza di score oltre la quale due esiti sono considerati diversi
+     */
+    private float scoreTolerance = 0.001f;
+    /**
+     * Numero di differenze più recenti conservate come esempio
+     */
+    private int mismatchSamples = 50;
+    /**
+     * Configurazione alternativa del motore: i valori non impostati restano quelli della richiesta
+     */
+    private Engine engine = new Engine();
+
+    @Getter
+    @Setter
+    public static class Engine {
+        /**
+         * Usa jsoup al posto dell'espressione regolare per il primo passaggio
+         */
+        private Boolean forceJsoup;
+        /**
+         * Esegue il passaggio jsoup anchors prima di jsoup allTags
+         */
+        private Boolean evaluateAnchorsFirst;
+        /**
+         * Aggiunge gli anchor dei passaggi successivi all'indice esistente invece di ricostruirlo
+         */
+        private Boolean incrementalIndex;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+@Getter
+@Setter
+@ConfigurationProperties("spill")
+public class SpillProperties {
+    /**
+     * Abilita il riversamento su file delle pagine più grandi della soglia: il contenuto decodificato viene
+     * scritto in un file temporaneo mappato in memoria e l'estrazione lavora sul file invece che sullo heap
+     */
+    private boolean enabled;
+    /**
+     * Dimensione della pagina decodificata oltre la quale viene riversata su file
+     */
+    private DataSize threshold = DataSize.ofMegabytes(16);
+    /**
+     * Directory dei file temporanei
+     */
+    private Path directory = Path.of(System.getProperty("java.io.tmpdir"));
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.domain;
+
+import it.cnr.anac.transparency.rules.exception.RuleNotFoundException;
+import org.springframework.http.HttpStatus;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Albero delle regole compilato al caricamento della configurazione in una struttura immutabile.
+ * Ogni regola ha un identificativo intero, con il padre, i figli (nello stesso ordine della configurazione),
+ * il flag di foglia e i termini già concatenati precalcolati, così che la valutazione non debba più attraversare
+ * le mappe della configurazione.
+ * La risoluzione dei nomi segue le stesse regole di {@code RuleConfiguration.getRule}: i nomi sono unici
+ * all'interno dell'albero di ogni regola radice e, in caso di duplicati, vale l'ultimo in ordine di visita.
+ */
+public final class CompiledRuleTree {
+    public static final int NO_RULE = -1;
+    private static final int[] NO_CHILDS = new int[0];
+
+    private final String defaultRule;
+    private final String[] names;
+    private final String[] roots;
+    private final Rule[] rules;
+    private final int[] parents;
+    private final int[][] childs;
+    private final boolean[] leaves;
+    private final String[] joinedTerms;
+    private final List<Map<String, Rule>> childRules;
+    private final Map<String, Map<String, Integer>> idsByRoot;
+    private final int defaultRootId;
+
+    private CompiledRuleTree(String defaultRule, List<String> names, List<String> roots, List<Rule> rules, List<Integer> parents,
+                             List<int[]> childs, Map<String, Map<String, Integer>> idsByRoot) {
+        this.defaultRule = defaultRule;
+        this.names = names.toArray(String[]::new);
+        this.roots = roots.toArray(String[]::new);
+        this.rules = rules.toArray(Rule[]::new);
+        this.parents = parents.stream().mapToInt(Integer::intValue).toArray();
+        this.childs = childs.toArray(int[][]::new);
+        this.idsByRoot = Collections.unmodifiableMap(idsByRoot);
+        this.leaves = new boolean[this.names.length];
+        this.joinedTerms = new String[this.names.length];
+        final List<Map<String, Rule>> childRules = new ArrayList<>(this.names.length);
+        for (int id = 0; id < this.names.length; id++) {
+            final Map<String, Rule> ruleChilds = Optional.ofNullable(this.rules[id].getChilds()).orElse(Collections.emptyMap());
+            leaves[id] = ruleChilds.isEmpty();
+            childRules.add(Collections.unmodifiableMap(ruleChilds));
+            final Rule namedRule = this.rules[idsByRoot.get(this.roots[id]).get(this.names[id])];
+            joinedTerms[id] = Optional.ofNullable(namedRule.getTerm())
+                    .orElse(Collections.emptyList())
+                    .stream()
+                    .map(Term::getKey)
+                    .collect(Collectors.joining(","));
+        }
+        this.childRules = Collections.unmodifiableList(childRules);
+        this.defaultRootId = Optional.ofNullable(idsByRoot.get(defaultRule))
+                .map(ids -> ids.get(defaultRule))
+                .orElse(NO_RULE);
+    }
+
+    public static CompiledRuleTree compile(Map<String, Rule> rules, String defaultRule) {
+        final List<String> names = new ArrayList<>();
+        final List<String> roots = new ArrayList<>();
+        final List<Rule> compiledRules = new ArrayList<>();
+        final List<Integer> parents = new ArrayList<>();
+        final List<int[]> childs = new ArrayList<>();
+        final Map<String, Map<String, Integer>> idsByRoot = new HashMap<>();
+        rules.forEach((key, rule) -> {
+            if (idsByRoot.containsKey(key))
+                throw new RuntimeException("There is rule alredy registered: " + key);
+            final Map<String, Integer> ids = new HashMap<>();
+            idsByRoot.put(key, ids);
+            add(key, key, rule, NO_RULE, ids, names, roots, compiledRules, parents, childs);
+        });
+        idsByRoot.replaceAll((key, ids) -> Collections.unmodifiableMap(ids));
+        return new CompiledRuleTree(defaultRule, names, roots, compiledRules, parents, childs, idsByRoot);
+    }
+
+    private static int add(String root, String name, Rule rule, int parent, Map<String, Integer> ids, List<String> names,
+                           List<String> roots, List<Rule> rules, List<Integer> parents, List<int[]> childs) {
+        final int id = names.size();
+        names.add(name);
+        roots.add(root);
+        rules.add(rule);
+        parents.add(parent);
+        childs.add(NO_CHILDS);
+        ids.put(name, id);
+        final Map<String, Rule> ruleChilds = Optional.ofNullable(rule.getChilds()).orElse(Collections.emptyMap());
+        if (!ruleChilds.isEmpty()) {
+            childs.set(id, ruleChilds.entrySet()
+                    .stream()
+                    .mapToInt(entry -> add(root, entry.getKey(), entry.getValue(), id, ids, names, roots, rules, parents, childs))
+                    .toArray());
+        }
+        return id;
+    }
+
+    /**
+     * L'identificativo della regola, con la stessa semantica di {@code RuleConfiguration.getRule}.
+     *
+     * @return l'identificativo o {@link #NO_RULE} se la regola non esiste
+     * @throws RuleNotFoundException se la regola non esiste e non è indicata la regola radice
+     */
+    public int resolve(Optional<String> rootRule, Optional<String> ruleName) throws RuleNotFoundException {
+        final String root = rootRule.orElse(defaultRule);
+        final Map<String, Integer> ids = Optional.ofNullable(idsByRoot.get(root))
+                .orElseGet(() -> idsByRoot.get(defaultRule));
+        if (ruleName.isEmpty()) {
+            return ids.getOrDefault(root, NO_RULE);
+        }
+        final Integer id = ids.get(ruleName.get());
+        if (id != null) {
+            return id;
+        }
+        return ids.getOrDefault(rootRule.orElseThrow(RuleNotFoundException::new), NO_RULE);
+    }
+
+    /**
+     * Come {@link #resolve(Optional, Optional)}, restituendo la regola radice predefinita se la regola non esiste.
+     */
+    public int resolveOrDefault(Optional<String> rootRule, Optional<String> ruleName) throws RuleNotFoundException {
+        final int id = resolve(rootRule, ruleName);
+        return id == NO_RULE ? defaultRootId : id;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public int getDefaultRootId() {
+        return defaultRootId;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public Rule rule(int id) {
+        return rules[id];
+    }
+
+    public int parent(int id) {
+        return parents[id];
+    }
+
+    public int childCount(int id) {
+        return childs[id].length;
+    }
+
+    public int child(int id, int index) {
+        return childs[id][index];
+    }
+
+    public boolean isLeaf(int id) {
+        return leaves[id];
+    }
+
+    public String joinedTerms(int id) {
+        return joinedTerms[id];
+    }
+
+    /**
+     * Una nuova risposta NOT_FOUND della regola, costruita dai valori precalcolati: il chiamante può modificarla.
+     */
+    public RuleResponse notFound(int id) {
+        return new RuleResponse(null, names[id], joinedTerms[id], null, null, leaves[id], HttpStatus.NOT_FOUND, null);
+    }
+
+    public Map<String, Rule> childRules(int id) {
+        return childRules.get(id);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.domain;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Optional;
+
+/**
+ * Opzioni di valutazione delle regole figlie, condivise dai diversi endpoint
+ * che applicano la catena regex -> jsoup anchors -> jsoup allTags.
+ */
+@Getter
+@ToString
+@Builder(toBuilder = true)
+public class EvaluationOptions {
+    private final boolean allRuleMustBePresent;
+    private final boolean atLeastHalf;
+    private final boolean forceJsoup;
+    private final boolean evaluateAnchorsFirst;
+    /**
+     * Esegue in parallelo il passaggio regex e il primo passaggio jsoup, annullando il più lento
+     */
+    private final boolean hedged;
+    /**
+     * Url della pagina, utilizzato per scegliere il primo passaggio di estrazione in base all'host
+     */
+    @Builder.Default
+    private final Optional<String> url = Optional.empty();
+    /**
+     * Sovrascrive per questa valutazione l'impostazione incremental_index, usato dalle valutazioni ombra
+     */
+    @Builder.Default
+    private final Optional<Boolean> incrementalIndex = Optional.empty();
+}
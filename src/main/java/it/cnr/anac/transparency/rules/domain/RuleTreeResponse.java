@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.domain;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Esito della valutazione di una regola e, con la stessa struttura dei {@code childs} di {@link Rule},
+ * delle regole figlie valutate nella stessa chiamata.
+ */
+@Getter
+@Setter
+public class RuleTreeResponse {
+    private RuleResponse result;
+    private Map<String, RuleTreeResponse> childs;
+
+    public RuleTreeResponse(RuleResponse result) {
+        this.result = result;
+    }
+
+    public void addChild(String ruleName, RuleTreeResponse child) {
+        if (childs == null) {
+            childs = new LinkedHashMap<>();
+        }
+        childs.put(ruleName, child);
+    }
+}
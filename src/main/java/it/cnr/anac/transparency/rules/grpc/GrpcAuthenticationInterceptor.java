@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.grpc;
+
+import io.grpc.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Autenticazione delle chiamate gRPC con lo stesso token JWT delle API REST, passato nel metadata
+ * {@code authorization} come {@code Bearer <token>}. Il token viene validato con il {@link JwtDecoder}
+ * del resource server e i ruoli vengono estratti con lo stesso converter della configurazione OAuth2;
+ * le chiamate gRPC sono valutazioni e richiedono uno dei ruoli configurati per il metodo POST.
+ */
+@Slf4j
+public class GrpcAuthenticationInterceptor implements ServerInterceptor {
+    public static final Context.Key<AbstractAuthenticationToken> AUTHENTICATION = Context.key("authentication");
+    private static final Metadata.Key<String> AUTHORIZATION = Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER);
+    private static final String BEARER = "Bearer ";
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final JwtDecoder jwtDecoder;
+    private final Converter<Jwt, AbstractAuthenticationToken> authenticationConverter;
+    private final Set<String> authorities;
+
+    public GrpcAuthenticationInterceptor(JwtDecoder jwtDecoder, Converter<Jwt, AbstractAuthenticationToken> authenticationConverter,
+                                         String[] roles) {
+        this.jwtDecoder = jwtDecoder;
+        this.authenticationConverter = authenticationConverter;
+        this.authorities = Optional.ofNullable(roles)
+                .stream()
+                .flatMap(Arrays::stream)
+                .map(String::trim)
+                .map(role -> role.startsWith(ROLE_PREFIX) ? role : ROLE_PREFIX.concat(role))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        final String authorization = headers.get(AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return close(call, Status.UNAUTHENTICATED.withDescription("Missing bearer token"));
+        }
+        final AbstractAuthenticationToken authentication;
+        try {
+            authentication = authenticationConverter.convert(jwtDecoder.decode(authorization.substring(BEARER.length()).trim()));
+        } catch (JwtException e) {
+            log.debug("Invalid bearer token on gRPC call {}: {}", call.getMethodDescriptor().getFullMethodName(), e.getMessage());
+            return close(call, Status.UNAUTHENTICATED.withDescription("Invalid bearer token"));
+        }
+        if (authentication == null) {
+            return close(call, Status.UNAUTHENTICATED.withDescription("Invalid bearer token"));
+        }
+        if (!authorities.isEmpty() && authentication.getAuthorities()
+                .stream()
+                .map(GrantedAuthority::getAuthority)
+                .noneMatch(authorities::contains)) {
+            return close(call, Status.PERMISSION_DENIED);
+        }
+        return Contexts.interceptCall(Context.current().withValue(AUTHENTICATION, authentication), call, headers, next);
+    }
+
+    private static <ReqT, RespT> ServerCall.Listener<ReqT> close(ServerCall<ReqT, RespT> call, Status status) {
+        call.close(status, new Metadata());
+        return new ServerCall.Listener<>() {};
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.grpc;
+
+import io.grpc.BindableService;
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerCredentials;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.TlsServerCredentials;
+import it.cnr.anac.transparency.rules.configuration.GrpcProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Avvia e arresta il server gRPC insieme al contesto Spring, solo se abilitato con {@code grpc.enabled}.
+ * Con OAuth2 abilitato il server non viene avviato se non è configurato un interceptor di autenticazione,
+ * così che le chiamate gRPC non aggirino la protezione delle API REST.
+ */
+@Slf4j
+public class GrpcServerLifecycle implements SmartLifecycle {
+    private final GrpcProperties grpcProperties;
+    private final List<BindableService> services;
+    private final List<ServerInterceptor> interceptors;
+    private final boolean authenticationRequired;
+    private volatile Server server;
+
+    public GrpcServerLifecycle(GrpcProperties grpcProperties, List<BindableService> services,
+                               List<ServerInterceptor> interceptors, boolean authenticationRequired) {
+        this.grpcProperties = grpcProperties;
+        this.services = services;
+        this.interceptors = interceptors;
+        this.authenticationRequired = authenticationRequired;
+    }
+
+    @Override
+    public void start() {
+        if (!grpcProperties.isEnabled()) {
+            return;
+        }
+        if (authenticationRequired && interceptors.isEmpty()) {
+            throw new IllegalStateException("OAuth2 is enabled but no authentication interceptor is configured for the gRPC server");
+        }
+        if (authenticationRequired && !grpcProperties.getTls().isEnabled()) {
+            log.warn("gRPC server started without TLS, bearer tokens are sent in clear text");
+        }
+        final ServerBuilder<?> serverBuilder = Grpc.newServerBuilderForPort(grpcProperties.getPort(), credentials())
+                .maxInboundMessageSize((int) grpcProperties.getMaxInboundMessageSize().toBytes());
+        services.forEach(service -> serverBuilder.addService(ServerInterceptors.intercept(service, interceptors)));
+        try {
+            server = serverBuilder.build().start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("gRPC server started on port {}, TLS {}, authentication {}", server.getPort(),
+                grpcProperties.getTls().isEnabled(), !interceptors.isEmpty());
+    }
+
+    private ServerCredentials credentials() {
+        final GrpcProperties.Tls tls = grpcProperties.getTls();
+        if (!tls.isEnabled()) {
+            return InsecureServerCredentials.create();
+        }
+        if (tls.getCertificateChain() == null || tls.getPrivateKey() == null) {
+            throw new IllegalStateException("gRPC TLS is enabled but certificate_chain or private_key is missing");
+        }
+        try (InputStream certificateChain = tls.getCertificateChain().getInputStream();
+             InputStream privateKey = tls.getPrivateKey().getInputStream()) {
+            return TlsServerCredentials.create(certificateChain, privateKey);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (server == null) {
+            return;
+        }
+        server.shutdown();
+        try {
+            if (!server.awaitTermination(grpcProperties.getShutdownTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                server.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            server.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        log.info("gRPC server stopped");
+        server = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+
+    public int getPort() {
+        return server != null ? server.getPort() : -1;
+    }
+}
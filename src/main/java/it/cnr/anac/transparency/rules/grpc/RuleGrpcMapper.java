@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.grpc;
+
+import it.cnr.anac.transparency.rules.domain.RuleResponse;
+import it.cnr.anac.transparency.rules.grpc.v1.RuleResult;
+
+import java.util.Optional;
+
+/**
+ * Conversione dei risultati del motore delle regole nei messaggi protobuf.
+ */
+final class RuleGrpcMapper {
+
+    private RuleGrpcMapper() {
+    }
+
+    static RuleResult convert(RuleResponse ruleResponse) {
+        final RuleResult.Builder builder = RuleResult.newBuilder()
+                .setLeaf(Boolean.TRUE.equals(ruleResponse.getLeaf()));
+        Optional.ofNullable(ruleResponse.getRuleName()).ifPresent(builder::setRuleName);
+        Optional.ofNullable(ruleResponse.getUrl()).ifPresent(builder::setUrl);
+        Optional.ofNullable(ruleResponse.getTerm()).ifPresent(builder::setTerm);
+        Optional.ofNullable(ruleResponse.getContent()).ifPresent(builder::setContent);
+        Optional.ofNullable(ruleResponse.getWhere()).ifPresent(builder::setWhere);
+        Optional.ofNullable(ruleResponse.getStatus()).ifPresent(status -> builder.setStatus(status.value()));
+        Optional.ofNullable(ruleResponse.getScore()).ifPresent(builder::setScore);
+        Optional.ofNullable(ruleResponse.getMultiple())
+                .ifPresent(multiple -> multiple.forEach(response -> builder.addMultiple(convert(response))));
+        return builder.build();
+    }
+}
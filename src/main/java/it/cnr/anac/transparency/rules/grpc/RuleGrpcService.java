@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.grpc;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import it.cnr.anac.transparency.rules.configuration.GrpcProperties;
+import it.cnr.anac.transparency.rules.domain.EvaluationOptions;
+import it.cnr.anac.transparency.rules.domain.RuleResponse;
+import it.cnr.anac.transparency.rules.exception.RuleDeadlineExceededException;
+import it.cnr.anac.transparency.rules.exception.RuleException;
+import it.cnr.anac.transparency.rules.exception.RuleNotFoundException;
+import it.cnr.anac.transparency.rules.exception.RuleOverloadException;
+import it.cnr.anac.transparency.rules.grpc.v1.*;
+import it.cnr.anac.transparency.rules.monitoring.RuleMetrics;
+import it.cnr.anac.transparency.rules.service.EvaluationContext;
+import it.cnr.anac.transparency.rules.service.MemoryAdmissionController;
+import it.cnr.anac.transparency.rules.service.RuleExecutor;
+import it.cnr.anac.transparency.rules.service.RuleService;
+import it.cnr.anac.transparency.rules.service.RuleSnapshot;
+import it.cnr.anac.transparency.rules.service.RuleSnapshotManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Servizio gRPC con le stesse operazioni di {@link it.cnr.anac.transparency.rules.v1.controller.RuleController},
+ * eseguite con lo stesso motore (pool, corsie, controllo di ammissione e scadenze).
+ * Lo stream bidirezionale riceve le pagine suddivise in chunk e restituisce un risultato per ogni pagina:
+ * il chunk successivo viene richiesto al client solo quando lo stream di risposta è pronto a ricevere,
+ * così un client che non legge i risultati rallenta anche l'invio delle pagine.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RuleGrpcService extends RuleEvaluationGrpc.RuleEvaluationImplBase {
+    private final RuleService ruleService;
+    private final RuleExecutor ruleExecutor;
+    private final MemoryAdmissionController memoryAdmissionController;
+    private final RuleSnapshotManager ruleSnapshotManager;
+    private final RuleMetrics ruleMetrics;
+    private final GrpcProperties grpcProperties;
+
+    @FunctionalInterface
+    private interface PageTask<T> {
+        T apply(String content) throws Exception;
+    }
+
+    @Override
+    public void evaluate(EvaluateRequest request, StreamObserver<RuleResult> responseObserver) {
+        try {
+            final EvaluationContext context = context(Optional.empty());
+            final RuleResponse ruleResponse = evaluate(request.getContent().toByteArray(), context, content ->
+                    ruleService.executeRule(content, rootRule(request), ruleName(request)));
+            responseObserver.onNext(RuleGrpcMapper.convert(ruleResponse).toBuilder()
+                    .setRulesVersion(version(context))
+                    .build());
+            responseObserver.onCompleted();
+        } catch (Exception e) {
+            responseObserver.onError(toStatus(e).asRuntimeException());
+        }
+    }
+
+    @Override
+    public void evaluateChilds(EvaluateRequest request, StreamObserver<ChildRuleResults> responseObserver) {
+        try {
+            final EvaluationContext context = context(Optional.empty());
+            final EvaluationOptions options = options(request.getOptions(), request.hasUrl() ? Optional.of(request.getUrl()) : Optional.empty());
+            final List<RuleResponse> ruleResponses = evaluate(request.getContent().toByteArray(), context, content ->
+                    ruleService.executeChildRuleWithFallback(content, rootRule(request), ruleName(request), options));
+            if (!ruleService.isSatisfied(ruleResponses, rootRule(request), ruleName(request), options)) {
+                responseObserver.onError(Status.NOT_FOUND.asRuntimeException());
+                return;
+            }
+            responseObserver.onNext(ChildRuleResults.newBuilder()
+                    .setStatus(context.getStatus().value())
+                    .setPartial(context.isPartial())
+                    .setRulesVersion(version(context))
+                    .addAllResults(ruleResponses.stream().map(RuleGrpcMapper::convert).toList())
+                    .build());
+            responseObserver.onCompleted();
+        } catch (Exception e) {
+            responseObserver.onError(toStatus(e).asRuntimeException());
+        }
+    }
+
+    @Override
+    public StreamObserver<PageChunk> evaluateStream(StreamObserver<PageResult> responseObserver) {
+        final ServerCallStreamObserver<PageResult> serverCallStreamObserver = (ServerCallStreamObserver<PageResult>) responseObserver;
+        serverCallStreamObserver.disableAutoRequest();
+        final PageStreamObserver pageStreamObserver = new PageStreamObserver(serverCallStreamObserver);
+        serverCallStreamObserver.setOnReadyHandler(pageStreamObserver);
+        return pageStreamObserver;
+    }
+
+    /**
+     * Riceve i chunk delle pagine, richiedendo il messaggio successivo solo quando lo stream
+     * di risposta è pronto. È anche l'handler di onReady dello stream di risposta.
+     * Le pagine complete vengono valutate su {@link RuleExecutor#streamExecutor()}, fuori dai thread
+     * del server gRPC, e i risultati vengono inviati nell'ordine in cui le valutazioni terminano.
+     */
+    private class PageStreamObserver implements StreamObserver<PageChunk>, Runnable {
+        private final ServerCallStreamObserver<PageResult> responseObserver;
+        private final Map<String, PendingPage> pages = new HashMap<>();
+        private final Set<EvaluationContext> evaluating = new HashSet<>();
+        private boolean wasReady = false;
+        private boolean completed = false;
+        private boolean cancelled = false;
+
+        PageStreamObserver(ServerCallStreamObserver<PageResult> responseObserver) {
+            this.responseObserver = responseObserver;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (responseObserver.isReady() && !wasReady) {
+                wasReady = true;
+                responseObserver.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(PageChunk chunk) {
+            PendingPage page = pages.get(chunk.getPageId());
+            if (page == null) {
+                page = new PendingPage(chunk);
+                pages.put(chunk.getPageId(), page);
+                if (pages.size() + evaluating() > grpcProperties.getMaxPendingPages()) {
+                    page.reject(HttpStatus.TOO_MANY_REQUESTS, "Too many pending pages");
+                } else {
+                    page.reserve();
+                }
+            }
+            page.append(chunk.getData().toByteArray());
+            if (chunk.getLast()) {
+                pages.remove(chunk.getPageId());
+                evaluate(page);
+            }
+            synchronized (this) {
+                if (responseObserver.isReady()) {
+                    responseObserver.request(1);
+                } else {
+                    wasReady = false;
+                }
+            }
+        }
+
+        private void evaluate(PendingPage page) {
+            if (page.rejected != null) {
+                send(page.rejected);
+                return;
+            }
+            final EvaluationContext context = page.context();
+            synchronized (this) {
+                evaluating.add(context);
+            }
+            try {
+                ruleExecutor.streamExecutor().execute(() -> {
+                    PageResult pageResult = null;
+                    try {
+                        pageResult = page.evaluate(context);
+                    } finally {
+                        page.close();
+                        finished(context, pageResult);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                page.close();
+                finished(context, page.reject(HttpStatus.SERVICE_UNAVAILABLE, "Service is shutting down"));
+            }
+        }
+
+        private synchronized int evaluating() {
+            return evaluating.size();
+        }
+
+        private synchronized void finished(EvaluationContext context, PageResult pageResult) {
+            evaluating.remove(context);
+            if (pageResult != null) {
+                send(pageResult);
+            }
+            if (completed && evaluating.isEmpty() && !cancelled) {
+                responseObserver.onCompleted();
+            }
+        }
+
+        private synchronized void send(PageResult pageResult) {
+            if (!cancelled) {
+                responseObserver.onNext(pageResult);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            log.warn("Page stream cancelled by client with {} pending pages: {}", pages.size(), t.getMessage());
+            pages.values().forEach(PendingPage::close);
+            pages.clear();
+            synchronized (this) {
+                cancelled = true;
+                evaluating.forEach(EvaluationContext::cancel);
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            pages.values().forEach(page -> {
+                page.close();
+                send(PageResult.newBuilder()
+                        .setPageId(page.first.getPageId())
+                        .setStatus(HttpStatus.BAD_REQUEST.value())
+                        .setError("Page stream completed before the last chunk")
+                        .build());
+            });
+            pages.clear();
+            synchronized (this) {
+                completed = true;
+                if (evaluating.isEmpty() && !cancelled) {
+                    responseObserver.onCompleted();
+                }
+            }
+        }
+    }
+
+    private class PendingPage implements AutoCloseable {
+        private final PageChunk first;
+        /**
+         * La versione delle regole fissata al primo chunk, che vale sia per il limite sulla dimensione della
+         * pagina sia per la valutazione.
+         */
+        private final RuleSnapshot snapshot = ruleSnapshotManager.latest();
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private PageResult rejected;
+        private MemoryAdmissionController.Reservation reservation;
+
+        PendingPage(PageChunk first) {
+            this.first = first;
+        }
+
+        /**
+         * Prenota la memoria all'arrivo del primo chunk, la prenotazione cresce con i chunk successivi.
+         */
+        void reserve() {
+            if (!memoryAdmissionController.isEnabled()) {
+                return;
+            }
+            try {
+                reservation = memoryAdmissionController.reserveChunked();
+            } catch (RuleOverloadException e) {
+                reject(HttpStatus.TOO_MANY_REQUESTS, "Memory budget exhausted, retry after " + e.getRetryAfter().toSeconds() + "s");
+            }
+        }
+
+        PageResult reject(HttpStatus status, String error) {
+            rejected = PageResult.newBuilder()
+                    .setPageId(first.getPageId())
+                    .setStatus(status.value())
+                    .setError(error)
+                    .build();
+            content.reset();
+            close();
+            return rejected;
+        }
+
+        void append(byte[] data) {
+            if (rejected != null) {
+                return;
+            }
+            final int maxLengthPageByte = snapshot.getConfiguration().getMaxLengthPageByte();
+            if (content.size() + data.length > maxLengthPageByte) {
+                log.warn("The content length of page {} is greater than max {}", first.getPageId(), maxLengthPageByte);
+                ruleMetrics.rejectedPage();
+                reject(HttpStatus.PAYLOAD_TOO_LARGE, "Page too large");
+                return;
+            }
+            if (reservation != null) {
+                try {
+                    reservation.onRead(data.length);
+                } catch (RuleOverloadException e) {
+                    reject(HttpStatus.TOO_MANY_REQUESTS, "Memory budget exhausted, retry after " + e.getRetryAfter().toSeconds() + "s");
+                    return;
+                }
+            }
+            content.writeBytes(data);
+        }
+
+        /**
+         * Il contesto di valutazione, creato sul thread gRPC per leggere la scadenza della chiamata.
+         */
+        EvaluationContext context() {
+            return RuleGrpcService.this.context(first.hasDeadlineMillis() ? Optional.of(first.getDeadlineMillis()) : Optional.empty(), snapshot);
+        }
+
+        PageResult evaluate(EvaluationContext context) {
+            final PageResult.Builder result = PageResult.newBuilder().setPageId(first.getPageId());
+            final Optional<String> rootRule = first.hasRootRule() ? Optional.of(first.getRootRule()) : Optional.empty();
+            final Optional<String> ruleName = first.hasRuleName() ? Optional.of(first.getRuleName()) : Optional.empty();
+            result.setRulesVersion(version(context));
+            try {
+                if (first.getOperation() == Operation.RULE) {
+                    final RuleResponse ruleResponse = RuleGrpcService.this.evaluate(content.toByteArray(), context, reservation, page ->
+                            ruleService.executeRule(page, rootRule, ruleName));
+                    return result.setStatus(HttpStatus.OK.value())
+                            .addResults(RuleGrpcMapper.convert(ruleResponse))
+                            .build();
+                }
+                final EvaluationOptions options = options(first.getOptions(), first.hasUrl() ? Optional.of(first.getUrl()) : Optional.empty());
+                final List<RuleResponse> ruleResponses = RuleGrpcService.this.evaluate(content.toByteArray(), context, reservation, page ->
+                        ruleService.executeChildRuleWithFallback(page, rootRule, ruleName, options));
+                if (!ruleService.isSatisfied(ruleResponses, rootRule, ruleName, options)) {
+                    return result.setStatus(HttpStatus.NOT_FOUND.value()).build();
+                }
+                return result.setStatus(context.getStatus().value())
+                        .setPartial(context.isPartial())
+                        .addAllResults(ruleResponses.stream().map(RuleGrpcMapper::convert).toList())
+                        .build();
+            } catch (Exception e) {
+                final Status status = toStatus(e);
+                result.setStatus(toHttpStatus(e).value()).setPartial(context.isPartial());
+                Optional.ofNullable(status.getDescription()).ifPresent(result::setError);
+                return result.build();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (reservation != null) {
+                reservation.close();
+                reservation = null;
+            }
+        }
+    }
+
+    private <T> T evaluate(byte[] content, EvaluationContext context, PageTask<T> task) throws Exception {
+        try (MemoryAdmissionController.Reservation reservation = memoryAdmissionController.isEnabled() ?
+                memoryAdmissionController.reserve(content.length) : null) {
+            return evaluate(content, context, reservation, task);
+        }
+    }
+
+    private <T> T evaluate(byte[] content, EvaluationContext context, MemoryAdmissionController.Reservation reservation,
+                           PageTask<T> task) throws Exception {
+        try (EvaluationContext.Scope scope = context.attach()) {
+            final String contentDecoded = ruleService.checkPageLength(new String(content, StandardCharsets.UTF_8));
+            if (reservation != null) {
+                reservation.adjustToDecoded(contentDecoded);
+            }
+            return ruleExecutor.execute(contentDecoded.length(), () -> task.apply(contentDecoded));
+        }
+    }
+
+    /**
+     * Il contesto di valutazione: la scadenza indicata nel messaggio ha precedenza
+     * su quella della chiamata gRPC, che a sua volta ha precedenza sulla configurazione.
+     */
+    private EvaluationContext context(Optional<Long> deadlineMillis) {
+        return context(deadlineMillis, ruleSnapshotManager.latest());
+    }
+
+    private EvaluationContext context(Optional<Long> deadlineMillis, RuleSnapshot snapshot) {
+        final Optional<Long> callDeadlineMillis = Optional.ofNullable(Context.current().getDeadline())
+                .map(deadline -> deadline.timeRemaining(TimeUnit.MILLISECONDS));
+        final EvaluationContext context = EvaluationContext.create(ruleExecutor.deadline(deadlineMillis.or(() -> callDeadlineMillis)));
+        context.pin(() -> snapshot);
+        return context;
+    }
+
+    private String version(EvaluationContext context) {
+        return ruleSnapshotManager.pin(context).getVersionLabel();
+    }
+
+    private static Optional<String> rootRule(EvaluateRequest request) {
+        return request.hasRootRule() ? Optional.of(request.getRootRule()) : Optional.empty();
+    }
+
+    private static Optional<String> ruleName(EvaluateRequest request) {
+        return request.hasRuleName() ? Optional.of(request.getRuleName()) : Optional.empty();
+    }
+
+    private static EvaluationOptions options(ChildRuleOptions options, Optional<String> url) {
+        return EvaluationOptions.builder()
+                .allRuleMustBePresent(options.getAllRuleMustBePresent())
+                .atLeastHalf(options.getAtLeastHalf())
+                .forceJsoup(options.getForceJsoup())
+                .evaluateAnchorsFirst(options.getEvaluateAnchorsFirst())
+                .hedged(options.getHedged())
+                .url(url)
+                .build();
+    }
+
+    private static HttpStatus toHttpStatus(Exception e) {
+        if (e instanceof RuleNotFoundException) {
+            return HttpStatus.NOT_FOUND;
+        }
+        if (e instanceof RuleException ruleException) {
+            return Optional.ofNullable(ruleException.getHttpStatus()).orElse(HttpStatus.BAD_REQUEST);
+        }
+        if (e instanceof RuleDeadlineExceededException) {
+            return HttpStatus.REQUEST_TIMEOUT;
+        }
+        if (e instanceof RuleOverloadException) {
+            return HttpStatus.TOO_MANY_REQUESTS;
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    private static Status toStatus(Exception e) {
+        if (e instanceof RuleNotFoundException) {
+            return Status.NOT_FOUND;
+        }
+        if (e instanceof RuleException) {
+            return Status.INVALID_ARGUMENT.withDescription(e.getMessage());
+        }
+        if (e instanceof RuleDeadlineExceededException) {
+            return Status.DEADLINE_EXCEEDED;
+        }
+        if (e instanceof RuleOverloadException overloadException) {
+            return Status.RESOURCE_EXHAUSTED.withDescription("Retry after " + overloadException.getRetryAfter().toSeconds() + "s");
+        }
+        log.error("Cannot execute rule", e);
+        return Status.INTERNAL.withDescription(e.getMessage());
+    }
+}
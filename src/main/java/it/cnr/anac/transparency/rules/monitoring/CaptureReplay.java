@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.monitoring;
+
+import it.cnr.anac.transparency.rules.RuleApplication;
+import it.cnr.anac.transparency.rules.configuration.CaptureProperties;
+import it.cnr.anac.transparency.rules.domain.EvaluationOptions;
+import it.cnr.anac.transparency.rules.exception.RuleDeadlineExceededException;
+import it.cnr.anac.transparency.rules.exception.RuleException;
+import it.cnr.anac.transparency.rules.exception.RuleNotFoundException;
+import it.cnr.anac.transparency.rules.service.EvaluationContext;
+import it.cnr.anac.transparency.rules.service.EvaluationDiagnostics;
+import it.cnr.anac.transparency.rules.service.RuleService;
+import it.cnr.anac.transparency.rules.service.RuleSnapshotManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Riesegue con il motore corrente le pagine catturate da {@link SlowPageCapture} e confronta i tempi con
+ * quelli registrati al momento della cattura, così da mantenere un corpus di regressione delle pagine reali
+ * più costose. Per ogni cattura vengono eseguite {@code replay.iterations} valutazioni dopo una di
+ * riscaldamento e viene considerata la mediana. Il confronto avviene sul tempo delle fasi di estrazione,
+ * indicizzazione e ricerca, che a differenza della durata complessiva non dipende dalle attese in coda.
+ * <p>
+ * Proprietà: {@code replay.directory} (di default {@code capture.directory}), {@code replay.iterations} (3),
+ * {@code replay.report} (csv, di default {@code replay-report.csv}), {@code replay.fail_above} (percentuale di
+ * peggioramento oltre la quale il processo termina con errore, di default nessuna).
+ */
+@Slf4j
+public class CaptureReplay {
+
+    record Replay(String file, String endpoint, String ruleName, int pageLength, long capturedNanos, long replayNanos,
+                  long capturedAllocatedBytes, long replayAllocatedBytes, String outcome) {
+        double change() {
+            return capturedNanos == 0 ? 0 : (replayNanos - capturedNanos) * 100.0 / capturedNanos;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        final ConfigurableApplicationContext context = new SpringApplicationBuilder(RuleApplication.class)
+                .properties(
+                        "server.port=0",
+                        "grpc.enabled=false",
+                        "capture.enabled=false",
+                        "spring.main.banner-mode=off")
+                .run(args);
+        int status = 0;
+        try {
+            status = new CaptureReplay().replay(context);
+        } finally {
+            context.close();
+        }
+        System.exit(status);
+    }
+
+    int replay(ConfigurableApplicationContext context) throws IOException {
+        final Environment environment = context.getEnvironment();
+        final Path directory = environment.getProperty("replay.directory", Path.class,
+                context.getBean(CaptureProperties.class).getDirectory());
+        final int iterations = Math.max(1, environment.getProperty("replay.iterations", Integer.class, 3));
+        final Path report = environment.getProperty("replay.report", Path.class, Path.of("replay-report.csv"));
+        final Double failAbove = environment.getProperty("replay.fail_above", Double.class);
+        final RuleService ruleService = context.getBean(RuleService.class);
+        final RuleSnapshotManager ruleSnapshotManager = context.getBean(RuleSnapshotManager.class);
+
+        final List<Path> files = SlowPageCapture.list(directory);
+        log.info("Replaying {} captures from {}", files.size(), directory);
+        final List<Replay> replays = new ArrayList<>();
+        for (Path file : files) {
+            final SlowPageCapture.CapturedPage capturedPage;
+            try {
+                capturedPage = SlowPageCapture.read(file);
+            } catch (IOException e) {
+                log.warn("Cannot read capture {}", file, e);
+                continue;
+            }
+            final Replay replay = replay(file, capturedPage, iterations, ruleService, ruleSnapshotManager);
+            log.info("{} {} {}: {} ms -> {} ms ({}%) [{}]", replay.file(), replay.endpoint(), replay.ruleName(),
+                    millis(replay.capturedNanos()), millis(replay.replayNanos()), format(replay.change()), replay.outcome());
+            replays.add(replay);
+        }
+        write(report, replays);
+        final long capturedNanos = replays.stream().mapToLong(Replay::capturedNanos).sum();
+        final long replayNanos = replays.stream().mapToLong(Replay::replayNanos).sum();
+        log.info("Replayed {} captures: {} ms -> {} ms, report written to {}", replays.size(),
+                millis(capturedNanos), millis(replayNanos), report.toAbsolutePath());
+        if (failAbove != null) {
+            final List<Replay> regressions = replays.stream().filter(replay -> replay.change() > failAbove).toList();
+            if (!regressions.isEmpty()) {
+                log.error("{} captures are more than {}% slower: {}", regressions.size(), failAbove,
+                        regressions.stream().map(Replay::file).toList());
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    private Replay replay(Path file, SlowPageCapture.CapturedPage capturedPage, int iterations,
+                          RuleService ruleService, RuleSnapshotManager ruleSnapshotManager) {
+        final Map<String, String> parameters = Optional.ofNullable(capturedPage.parameters()).orElse(Collections.emptyMap());
+        final long[] stageNanos = new long[iterations];
+        final long[] allocatedBytes = new long[iterations];
+        String outcome = null;
+        for (int i = -1; i < iterations; i++) {
+            final EvaluationDiagnostics diagnostics = new EvaluationDiagnostics();
+            final EvaluationContext context = EvaluationContext.create(Optional.empty(), diagnostics);
+            ruleSnapshotManager.pin(context);
+            try (EvaluationContext.Scope scope = context.attach()) {
+                outcome = evaluate(ruleService, capturedPage.endpoint(), capturedPage.page(), parameters);
+            }
+            if (i >= 0) {
+                stageNanos[i] = stageNanos(diagnostics.getStages());
+                allocatedBytes[i] = SlowPageCapture.allocatedBytes(diagnostics.getStages());
+            }
+        }
+        Arrays.sort(stageNanos);
+        Arrays.sort(allocatedBytes);
+        return new Replay(
+                file.getFileName().toString(),
+                capturedPage.endpoint(),
+                parameters.getOrDefault("ruleName", ""),
+                capturedPage.page().length(),
+                stageNanos(capturedPage.stages()),
+                stageNanos[iterations / 2],
+                capturedPage.allocatedBytes(),
+                allocatedBytes[iterations / 2],
+                outcome);
+    }
+
+    private String evaluate(RuleService ruleService, String endpoint, String page, Map<String, String> parameters) {
+        final Optional<String> rootRule = Optional.ofNullable(parameters.get("rootRule"));
+        final Optional<String> ruleName = Optional.ofNullable(parameters.get("ruleName"));
+        try {
+            if ("/v1/rules".equals(endpoint)) {
+                return ruleService.executeRule(page, rootRule, ruleName).getStatus().name();
+            }
+            final EvaluationOptions options = EvaluationOptions.builder()
+                    .allRuleMustBePresent(Boolean.parseBoolean(parameters.get("allRuleMustBePresent")))
+                    .atLeastHalf(Boolean.parseBoolean(parameters.get("atLeastHalf")))
+                    .forceJsoup(Boolean.parseBoolean(parameters.get("forceJsoup")))
+                    .evaluateAnchorsFirst(Boolean.parseBoolean(parameters.get("evaluateAnchorsFirst")))
+                    .hedged(Boolean.parseBoolean(parameters.get("hedged")))
+                    .url(Optional.ofNullable(parameters.get("url")))
+                    .build();
+            return ruleService.executeChildRuleWithFallback(page, rootRule, ruleName, options).size() + " rules";
+        } catch (RuleNotFoundException e) {
+            return "NOT_FOUND";
+        } catch (RuleDeadlineExceededException e) {
+            return "REQUEST_TIMEOUT";
+        } catch (RuleException e) {
+            return String.valueOf(e.getHttpStatus());
+        } catch (IOException e) {
+            log.warn("Cannot replay page", e);
+            return "ERROR";
+        }
+    }
+
+    /**
+     * Il tempo delle fasi di estrazione, indicizzazione e ricerca.
+     */
+    static long stageNanos(Map<String, EvaluationDiagnostics.Stage> stages) {
+        return Optional.ofNullable(stages).orElse(Collections.emptyMap())
+                .entrySet()
+                .stream()
+                .filter(entry -> !entry.getKey().startsWith(PipelineStage.PASS.name().toLowerCase(Locale.ROOT)))
+                .filter(entry -> !entry.getKey().startsWith(PipelineStage.DECODE.name().toLowerCase(Locale.ROOT)))
+                .mapToLong(entry -> entry.getValue().elapsedNanos())
+                .sum();
+    }
+
+    private void write(Path report, List<Replay> replays) throws IOException {
+        final StringBuilder csv = new StringBuilder("file,endpoint,rule_name,page_length,captured_ms,replay_ms,change_pct," +
+                "captured_allocated_bytes,replay_allocated_bytes,outcome\n");
+        replays.forEach(replay -> csv.append(replay.file()).append(',')
+                .append(replay.endpoint()).append(',')
+                .append(replay.ruleName()).append(',')
+                .append(replay.pageLength()).append(',')
+                .append(millis(replay.capturedNanos())).append(',')
+                .append(millis(replay.replayNanos())).append(',')
+                .append(format(replay.change())).append(',')
+                .append(replay.capturedAllocatedBytes()).append(',')
+                .append(replay.replayAllocatedBytes()).append(',')
+                .append(replay.outcome()).append('\n'));
+        Optional.ofNullable(report.toAbsolutePath().getParent()).ifPresent(parent -> {
+            try {
+                Files.createDirectories(parent);
+            } catch (IOException e) {
+                log.warn("Cannot create directory {}", parent, e);
+            }
+        });
+        Files.writeString(report, csv);
+    }
+
+    private static String millis(long nanos) {
+        return format(nanos / 1e6);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.monitoring;
+
+/**
+ * Le fasi della valutazione di una pagina misurate da {@link RuleMetrics}.
+ * {@link #PASS} misura un intero passaggio della catena di fallback (estrazione, indicizzazione e ricerca).
+ */
+public enum PipelineStage {
+    DECODE, EXTRACTION, INDEXING, SEARCH, PASS
+}
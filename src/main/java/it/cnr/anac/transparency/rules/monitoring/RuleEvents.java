@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.monitoring;
+
+import it.cnr.anac.transparency.rules.service.EvaluationContext;
+import jdk.jfr.*;
+
+import java.util.List;
+
+/**
+ * Eventi Java Flight Recorder della valutazione delle regole. Gli eventi sono abilitati e vengono scritti
+ * da qualsiasi registrazione attiva, sia quella continua avviata con {@code -XX:StartFlightRecording} sia
+ * quelle a tempo avviate tramite l'endpoint actuator {@code jfr}; senza registrazioni non producono dati.
+ * Il chiamante crea l'evento, invoca {@code begin()} e valorizza i campi solo se {@link #shouldCommit(Event)}:
+ * con gli eventi disabilitati il JIT elimina l'allocazione e il costo è trascurabile.
+ * Come le metriche, gli eventi non vengono scritti dalle valutazioni ombra né dal warm up delle regole.
+ */
+public final class RuleEvents {
+    public static final String CATEGORY = "Rule Service";
+    public static final String PREFIX = "it.cnr.anac.transparency.rules.";
+
+    private RuleEvents() {
+    }
+
+    /**
+     * Indica se l'evento deve essere scritto: la registrazione lo richiede e il thread corrente non esegue
+     * una valutazione ombra.
+     */
+    public static boolean shouldCommit(Event event) {
+        return event.shouldCommit() && !EvaluationContext.isShadow();
+    }
+
+    /**
+     * I nomi di tutti gli eventi, usati per abilitarli in una registrazione.
+     */
+    public static List<String> names() {
+        return List.of(
+                PREFIX + "Decode",
+                PREFIX + "Extraction",
+                PREFIX + "Indexing",
+                PREFIX + "Search",
+                PREFIX + "ChildRule");
+    }
+
+    @Name(PREFIX + "Decode")
+    @Label("Page Decode")
+    @Description("Decodifica base64 della pagina")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class DecodeEvent extends Event {
+        @Label("Encoded Size")
+        @DataAmount
+        public long encodedSize;
+        @Label("Page Size")
+        @DataAmount
+        public long pageSize;
+    }
+
+    @Name(PREFIX + "Extraction")
+    @Label("Anchor Extraction")
+    @Description("Estrazione degli anchor della pagina con AnchorService.find")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class ExtractionEvent extends Event {
+        @Label("Pass")
+        public String pass;
+        @Label("Page Size")
+        @DataAmount
+        public long pageSize;
+        @Label("Anchors")
+        public int anchors;
+        @Label("Chunks")
+        public int chunks = 1;
+    }
+
+    @Name(PREFIX + "Indexing")
+    @Label("Lucene Indexing")
+    @Description("Creazione dell'indice Lucene o aggiunta degli anchor all'indice incrementale")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class IndexingEvent extends Event {
+        @Label("Pass")
+        public String pass;
+        @Label("Anchors")
+        public int anchors;
+        @Label("Documents")
+        public int documents;
+        @Label("Dropped Anchors")
+        public int droppedAnchors;
+        @Label("Partitions")
+        public int partitions = 1;
+    }
+
+    @Name(PREFIX + "Search")
+    @Label("Lucene Search")
+    @Description("Ricerca di un termine di una regola nell'indice")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class SearchEvent extends Event {
+        @Label("Rule Name")
+        public String ruleName;
+        @Label("Term")
+        public String term;
+        @Label("Candidates")
+        public int candidates;
+    }
+
+    @Name(PREFIX + "ChildRule")
+    @Label("Child Rule Evaluation")
+    @Description("Valutazione di una regola figlia")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class ChildRuleEvent extends Event {
+        @Label("Rule Name")
+        public String ruleName;
+        @Label("Status")
+        public int status;
+    }
+}
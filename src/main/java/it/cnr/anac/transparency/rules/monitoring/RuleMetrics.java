@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.monitoring;
+
+import it.cnr.anac.transparency.rules.domain.Anchor;
+import it.cnr.anac.transparency.rules.domain.ExtractionPass;
+import it.cnr.anac.transparency.rules.domain.RuleResponse;
+import it.cnr.anac.transparency.rules.service.EvaluationContext;
+import it.cnr.anac.transparency.rules.service.EvaluationDiagnostics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metriche della valutazione delle regole, esportate anche su /actuator/prometheus.
+ * Tutti i meter vengono registrati all'avvio e indicizzati per fase e modalità di estrazione,
+ * così la registrazione nei percorsi critici non richiede la ricerca dei tag nel registry.
+ * Gli istogrammi per i percentili si abilitano con {@code management.metrics.distribution.percentiles-histogram}.
+ * In modalità explain le stesse misure vengono riportate anche nella {@link EvaluationDiagnostics} della richiesta.
+ * Le valutazioni ombra non vengono misurate, per non alterare le metriche del traffico reale.
+ */
+@Component
+public class RuleMetrics {
+    public static final String STAGE_TIMER = "rule.stage";
+    public static final String PAGE_SIZE = "rule.page.size";
+    public static final String ANCHORS = "rule.anchors";
+    public static final String FALLBACKS = "rule.fallbacks";
+    public static final String OUTCOMES = "rule.outcomes";
+    public static final String REJECTED_PAGES = "rule.pages.rejected";
+
+    private static final String ANY_MODE = "any";
+    private static final ExtractionPass[] PASSES = ExtractionPass.values();
+
+    private final Timer[][] stageTimers;
+    private final String[][] stageNames;
+    private final DistributionSummary pageSize;
+    private final DistributionSummary[] anchors;
+    private final Counter[] fallbacks;
+    private final Counter notFound;
+    private final Counter multiStatus;
+    private final Counter found;
+    private final Counter timedOut;
+    private final Counter rejectedPages;
+
+    public RuleMetrics(MeterRegistry meterRegistry) {
+        stageTimers = new Timer[PipelineStage.values().length][PASSES.length + 1];
+        stageNames = new String[PipelineStage.values().length][PASSES.length + 1];
+        for (PipelineStage stage : PipelineStage.values()) {
+            for (int mode = 0; mode <= PASSES.length; mode++) {
+                stageNames[stage.ordinal()][mode] = stage.name().toLowerCase(Locale.ROOT) +
+                        (mode == 0 ? "" : ":" + mode(PASSES[mode - 1]));
+                stageTimers[stage.ordinal()][mode] = Timer.builder(STAGE_TIMER)
+                        .description("Durata delle fasi della valutazione")
+                        .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                        .tag("mode", mode == 0 ? ANY_MODE : mode(PASSES[mode - 1]))
+                        .register(meterRegistry);
+            }
+        }
+        pageSize = DistributionSummary.builder(PAGE_SIZE)
+                .description("Dimensione delle pagine decodificate")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        anchors = new DistributionSummary[PASSES.length];
+        fallbacks = new Counter[PASSES.length];
+        for (ExtractionPass pass : PASSES) {
+            anchors[pass.ordinal()] = DistributionSummary.builder(ANCHORS)
+                    .description("Anchor estratti per passaggio")
+                    .tag("mode", mode(pass))
+                    .register(meterRegistry);
+            fallbacks[pass.ordinal()] = Counter.builder(FALLBACKS)
+                    .description("Passaggi di fallback eseguiti dopo un passaggio che non ha risolto tutte le regole")
+                    .tag("mode", mode(pass))
+                    .register(meterRegistry);
+        }
+        found = outcome(meterRegistry, HttpStatus.OK);
+        multiStatus = outcome(meterRegistry, HttpStatus.MULTI_STATUS);
+        notFound = outcome(meterRegistry, HttpStatus.NOT_FOUND);
+        timedOut = outcome(meterRegistry, HttpStatus.REQUEST_TIMEOUT);
+        rejectedPages = Counter.builder(REJECTED_PAGES)
+                .description("Pagine rifiutate perché più grandi di max_length_page_byte")
+                .tag("reason", "oversize")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Avvia la misura di una fase, da chiudere con try-with-resources.
+     *
+     * @param pass la modalità di estrazione, null se non pertinente
+     */
+    public StageTimer stage(PipelineStage stage, ExtractionPass pass) {
+        if (EvaluationContext.isShadow()) {
+            return StageTimer.NOOP;
+        }
+        final int mode = pass == null ? 0 : pass.ordinal() + 1;
+        final EvaluationDiagnostics diagnostics = EvaluationContext.diagnostics();
+        if (diagnostics == null) {
+            return new StageTimer(stageTimers[stage.ordinal()][mode], System.nanoTime(), null, null, 0);
+        }
+        return new StageTimer(stageTimers[stage.ordinal()][mode], System.nanoTime(),
+                diagnostics, stageNames[stage.ordinal()][mode], EvaluationDiagnostics.currentThreadAllocatedBytes());
+    }
+
+    public StageTimer stage(PipelineStage stage) {
+        return stage(stage, null);
+    }
+
+    public void pageSize(long bytes) {
+        pageSize.record(bytes);
+    }
+
+    public void anchors(ExtractionPass pass, List<Anchor> anchors) {
+        if (EvaluationContext.isShadow()) {
+            return;
+        }
+        this.anchors[pass.ordinal()].record(anchors.size());
+        final EvaluationDiagnostics diagnostics = EvaluationContext.diagnostics();
+        if (diagnostics != null) {
+            diagnostics.anchors(pass, anchors);
+        }
+    }
+
+    public void fallback(ExtractionPass pass) {
+        if (EvaluationContext.isShadow()) {
+            return;
+        }
+        fallbacks[pass.ordinal()].increment();
+    }
+
+    public void rejectedPage() {
+        rejectedPages.increment();
+    }
+
+    /**
+     * Conta gli esiti delle regole restituiti al client.
+     */
+    public void outcomes(Collection<RuleResponse> ruleResponses) {
+        ruleResponses.forEach(this::outcome);
+    }
+
+    public void notFound() {
+        notFound.increment();
+    }
+
+    public void outcome(RuleResponse ruleResponse) {
+        final HttpStatus status = ruleResponse.getStatus();
+        if (status == HttpStatus.NOT_FOUND) {
+            notFound.increment();
+        } else if (status == HttpStatus.MULTI_STATUS) {
+            multiStatus.increment();
+        } else if (status == HttpStatus.REQUEST_TIMEOUT) {
+            timedOut.increment();
+        } else if (status != null) {
+            found.increment();
+        }
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, HttpStatus status) {
+        return Counter.builder(OUTCOMES)
+                .description("Esiti delle regole restituiti")
+                .tag("status", status.name())
+                .register(meterRegistry);
+    }
+
+    private static String mode(ExtractionPass pass) {
+        return pass.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Misura in corso di una fase: la durata viene registrata alla chiusura.
+     */
+    public static final class StageTimer implements AutoCloseable {
+        private static final StageTimer NOOP = new StageTimer(null, 0, null, null, 0);
+        private final Timer timer;
+        private final long start;
+        private final EvaluationDiagnostics diagnostics;
+        private final String name;
+        private final long allocatedBytes;
+
+        private StageTimer(Timer timer, long start, EvaluationDiagnostics diagnostics, String name, long allocatedBytes) {
+            this.timer = timer;
+            this.start = start;
+            this.diagnostics = diagnostics;
+            this.name = name;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        @Override
+        public void close() {
+            if (timer == null) {
+                return;
+            }
+            final long elapsed = System.nanoTime() - start;
+            timer.record(elapsed, TimeUnit.NANOSECONDS);
+            if (diagnostics != null) {
+                final long allocated = EvaluationDiagnostics.currentThreadAllocatedBytes();
+                diagnostics.stage(name, elapsed, allocatedBytes < 0 || allocated < 0 ? -1 : allocated - allocatedBytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.monitoring;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import it.cnr.anac.transparency.rules.configuration.CaptureProperties;
+import it.cnr.anac.transparency.rules.service.EvaluationContext;
+import it.cnr.anac.transparency.rules.service.EvaluationDiagnostics;
+import it.cnr.anac.transparency.rules.service.RuleSnapshot;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cattura delle pagine lente. Se abilitata, le richieste la cui valutazione supera la soglia di latenza o di
+ * memoria allocata vengono salvate in formato json compresso, con pagina decodificata, parametri e tempi delle
+ * fasi, in una directory gestita come buffer circolare: oltre il numero o la dimensione massima vengono
+ * eliminate le catture più vecchie. La scrittura avviene su un thread dedicato con coda limitata, le catture
+ * che non trovano posto vengono scartate senza rallentare le richieste.
+ * Le catture possono essere rieseguite con {@link CaptureReplay}.
+ */
+@Slf4j
+@Component
+public class SlowPageCapture {
+    public static final String FILE_PREFIX = "capture-";
+    public static final String FILE_SUFFIX = ".json.gz";
+    private static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    private static final Capture NOOP = new Capture(null, null, null, null, null);
+
+    /**
+     * Una richiesta catturata. {@code allocatedBytes} è -1 se la JVM non misura la memoria allocata.
+     */
+    public record CapturedPage(Instant capturedAt, String endpoint, Map<String, String> parameters, String rulesVersion,
+                               boolean partial, long elapsedNanos, long allocatedBytes,
+                               Map<String, EvaluationDiagnostics.Stage> stages, String page) {}
+
+    private final CaptureProperties captureProperties;
+    private final ThreadPoolExecutor writer;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public SlowPageCapture(CaptureProperties captureProperties) {
+        this.captureProperties = captureProperties;
+        if (captureProperties.isEnabled()) {
+            this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(captureProperties.getQueueCapacity()),
+                    Thread.ofPlatform().name("rule-capture").daemon().factory(),
+                    new ThreadPoolExecutor.DiscardPolicy());
+            log.info("Slow page capture enabled in {}, latency threshold {}, memory threshold {}",
+                    captureProperties.getDirectory(), captureProperties.getLatencyThreshold(), captureProperties.getMemoryThreshold());
+        } else {
+            this.writer = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return writer != null;
+    }
+
+    /**
+     * La diagnostica da raccogliere per la richiesta: quella della modalità explain se presente, altrimenti
+     * una nuova se la cattura è abilitata, null se non serve.
+     */
+    public EvaluationDiagnostics diagnostics(EvaluationDiagnostics diagnostics) {
+        return diagnostics != null || !isEnabled() ? diagnostics : new EvaluationDiagnostics();
+    }
+
+    /**
+     * Inizia il controllo di una richiesta, da chiudere al termine della valutazione anche in caso di errore.
+     * Se la cattura è disabilitata o la richiesta non ha diagnostica non fa nulla.
+     */
+    public Capture start(EvaluationContext context, EvaluationDiagnostics diagnostics, String endpoint, Map<String, String> parameters) {
+        if (!isEnabled() || diagnostics == null) {
+            return NOOP;
+        }
+        return new Capture(this, context, diagnostics, endpoint, parameters);
+    }
+
+    public static final class Capture implements AutoCloseable {
+        private final SlowPageCapture slowPageCapture;
+        private final EvaluationContext context;
+        private final EvaluationDiagnostics diagnostics;
+        private final String endpoint;
+        private final Map<String, String> parameters;
+        private CharSequence page;
+
+        private Capture(SlowPageCapture slowPageCapture, EvaluationContext context, EvaluationDiagnostics diagnostics,
+                        String endpoint, Map<String, String> parameters) {
+            this.slowPageCapture = slowPageCapture;
+            this.context = context;
+            this.diagnostics = diagnostics;
+            this.endpoint = endpoint;
+            this.parameters = parameters;
+        }
+
+        /**
+         * La pagina decodificata da salvare se la richiesta supera una soglia, copiata solo al momento della scrittura.
+         */
+        public void page(CharSequence page) {
+            this.page = page;
+        }
+
+        @Override
+        public void close() {
+            if (slowPageCapture != null && page != null) {
+                slowPageCapture.check(this);
+            }
+        }
+    }
+
+    private void check(Capture capture) {
+        final long elapsedNanos = capture.diagnostics.getElapsedNanos();
+        final Map<String, EvaluationDiagnostics.Stage> stages = capture.diagnostics.getStages();
+        final long allocatedBytes = allocatedBytes(stages);
+        if (elapsedNanos < captureProperties.getLatencyThreshold().toNanos() &&
+                allocatedBytes < captureProperties.getMemoryThreshold().toBytes()) {
+            return;
+        }
+        final Instant capturedAt = Instant.now();
+        final String rulesVersion = capture.context.getSnapshot().map(RuleSnapshot::getVersionLabel).orElse(null);
+        final boolean partial = capture.context.isPartial();
+        writer.execute(() -> write(new CapturedPage(
+                capturedAt,
+                capture.endpoint,
+                capture.parameters,
+                rulesVersion,
+                partial,
+                elapsedNanos,
+                allocatedBytes,
+                stages,
+                capture.page.toString())));
+    }
+
+    /**
+     * La memoria allocata dalle fasi, senza i passaggi della catena di fallback che le contengono.
+     */
+    static long allocatedBytes(Map<String, EvaluationDiagnostics.Stage> stages) {
+        long allocatedBytes = 0;
+        for (Map.Entry<String, EvaluationDiagnostics.Stage> entry : stages.entrySet()) {
+            if (entry.getKey().startsWith(PipelineStage.PASS.name().toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            if (entry.getValue().allocatedBytes() < 0) {
+                return -1;
+            }
+            allocatedBytes += entry.getValue().allocatedBytes();
+        }
+        return allocatedBytes;
+    }
+
+    private void write(CapturedPage capturedPage) {
+        final Path directory = captureProperties.getDirectory();
+        final Path file = directory.resolve(String.format(Locale.ROOT, "%s%d-%06d%s",
+                FILE_PREFIX, capturedPage.capturedAt().toEpochMilli(), sequence.incrementAndGet() % 1_000_000, FILE_SUFFIX));
+        try {
+            Files.createDirectories(directory);
+            try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(file))) {
+                OBJECT_MAPPER.writeValue(outputStream, capturedPage);
+            }
+            log.info("Captured slow request on {} in {}: {} ms, {} allocated bytes", capturedPage.endpoint(), file,
+                    TimeUnit.NANOSECONDS.toMillis(capturedPage.elapsedNanos()), capturedPage.allocatedBytes());
+            trim(directory);
+        } catch (IOException e) {
+            log.warn("Cannot write capture {}", file, e);
+        }
+    }
+
+    /**
+     * Elimina le catture più vecchie oltre il numero o la dimensione massima.
+     */
+    private void trim(Path directory) throws IOException {
+        final List<Path> files = list(directory);
+        long size = 0;
+        for (Path file : files) {
+            size += Files.size(file);
+        }
+        int count = files.size();
+        for (Path file : files) {
+            if (count <= captureProperties.getMaxFiles() && size <= captureProperties.getMaxSize().toBytes()) {
+                break;
+            }
+            size -= Files.size(file);
+            count--;
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Le catture presenti nella directory, dalla più vecchia.
+     */
+    public static List<Path> list(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> file.getFileName().toString().startsWith(FILE_PREFIX))
+                    .filter(file -> file.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .sorted(Comparator.comparing(file -> file.getFileName().toString()))
+                    .toList();
+        }
+    }
+
+    public static CapturedPage read(Path file) throws IOException {
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(file))) {
+            return OBJECT_MAPPER.readValue(inputStream, CapturedPage.class);
+        }
+    }
+
+    /**
+     * Attende la scrittura delle catture già in coda.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writer != null) {
+            writer.shutdown();
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
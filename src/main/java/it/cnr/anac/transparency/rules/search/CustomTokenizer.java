@@ -22,23 +22,34 @@ import org.apache.lucene.analysis.util.CharTokenizer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 public class CustomTokenizer extends CharTokenizer {
-    private final List<Character> searchTokens;
+    private final BitSet separators;
 
     public CustomTokenizer(List<Character> searchTokens) {
-        this.searchTokens = searchTokens;
+        this(separators(searchTokens));
+    }
+
+    /**
+     * @param separators i caratteri separatori già calcolati, condivisi tra i tokenizer creati dallo stesso analyzer
+     */
+    CustomTokenizer(BitSet separators) {
+        this.separators = separators;
+    }
+
+    static BitSet separators(List<Character> searchTokens) {
+        final BitSet separators = new BitSet();
+        Optional.ofNullable(searchTokens)
+                .orElse(Collections.emptyList())
+                .forEach(character -> separators.set(character));
+        return separators;
     }
 
     protected boolean isTokenChar(int c) {
-        return !(
-                searchTokens
-                    .stream()
-                    .filter(character -> character == c)
-                    .findAny()
-                    .isPresent() ||
-                    Character.isDigit(c)
-        );
+        return !(separators.get(c) || Character.isDigit(c));
     }
 }
@@ -29,9 +29,11 @@ import org.springframework.stereotype.Service;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 public class CustomTokenizerAnalyzer extends StopwordAnalyzerBase {
-    private CustomTokenizer customTokenizer;
+    private BitSet separators = new BitSet();
     private final CharArraySet stemExclusionSet;
 
     /** File containing default Italian stopwords. */
@@ -76,10 +78,12 @@ public class CustomTokenizerAnalyzer extends StopwordAnalyzerBase {
 
     /**
      * Builds an analyzer with the default stop words: {@link #DEFAULT_STOPWORD_FILE}.
+     * A new {@link CustomTokenizer} is created for each set of token stream components, so the
+     * analyzer can be shared between threads.
      */
-    public CustomTokenizerAnalyzer(CustomTokenizer customTokenizer) {
+    public CustomTokenizerAnalyzer(List<Character> searchTokens) {
         this(DefaultSetHolder.DEFAULT_STOP_SET);
-        this.customTokenizer = customTokenizer;
+        this.separators = CustomTokenizer.separators(searchTokens);
     }
 
     /**
@@ -106,6 +110,7 @@ public class CustomTokenizerAnalyzer extends StopwordAnalyzerBase {
 
     @Override
     protected Analyzer.TokenStreamComponents createComponents(String fieldName) {
+        final CustomTokenizer customTokenizer = new CustomTokenizer(separators);
         TokenStream result = new ElisionFilter(customTokenizer, DEFAULT_ARTICLES);
         result = new LowerCaseFilter(result);
         result = new StopFilter(result, stopwords);
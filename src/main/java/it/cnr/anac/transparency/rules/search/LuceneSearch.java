@@ -18,6 +18,9 @@
 package it.cnr.anac.transparency.rules.search;
 
 import it.cnr.anac.transparency.rules.domain.Anchor;
+import it.cnr.anac.transparency.rules.exception.RuleCancelledException;
+import it.cnr.anac.transparency.rules.service.EvaluationContext;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
@@ -32,21 +35,47 @@ import org.apache.lucene.search.similarities.ClassicSimilarity;
 import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.util.BytesRef;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 @Slf4j
-public class LuceneSearch {
+public class LuceneSearch implements Closeable {
 
     public static final String URL = "url";
     public static final String CONTENT = "content";
     public static final String WHERE = "where";
-    private final DirectoryReader indexReader;
+    private IndexReader indexReader;
+    private final IndexWriter indexWriter;
+    private final Set<List<String>> indexedAnchors;
     private final Analyzer customAnalyzer;
+    private final Integer maxLengthContent;
+    /**
+     * Documenti presenti nell'indice.
+     */
+    @Getter
+    private int documents;
+    /**
+     * Anchor scartati perché con contenuto più lungo di maxLengthContent.
+     */
+    @Getter
+    private int droppedAnchors;
+    /**
+     * Partizioni in cui è stato costruito l'indice, 1 se costruito da un solo thread.
+     */
+    @Getter
+    private int partitions = 1;
 
     Comparator<LuceneResultCount> compareLuceneResult = Comparator
             .comparing(LuceneResultCount::getScore)
@@ -55,33 +84,188 @@ public class LuceneSearch {
             .thenComparing((t1, t2) -> Integer.valueOf(t1.getLuceneResult().getUrl().length()).compareTo(t2.getLuceneResult().getUrl().length()) * -1);
 
     public LuceneSearch(List<Anchor> values, Analyzer customAnalyzer, Integer maxLengthContent) throws IOException {
+        this(values, customAnalyzer, maxLengthContent, false);
+    }
+
+    /**
+     * Con {@code incremental} l'IndexWriter resta aperto e il reader è near-real-time: con
+     * {@link #addAnchors(List)} è possibile aggiungere all'indice solo gli anchor non ancora indicizzati,
+     * senza ricostruirlo.
+     */
+    public LuceneSearch(List<Anchor> values, Analyzer customAnalyzer, Integer maxLengthContent, boolean incremental) throws IOException {
+        this(values, customAnalyzer, maxLengthContent, incremental, null, 1);
+    }
+
+    /**
+     * Con un executor e più partizioni l'indice non incrementale viene costruito in parallelo: gli anchor vengono
+     * divisi in partizioni contigue, ognuna indicizzata da un proprio IndexWriter in un proprio ByteBuffersDirectory,
+     * e i reader vengono combinati con un MultiReader. Le statistiche usate per lo score sono calcolate dall'IndexSearcher
+     * sull'intero MultiReader e i documenti mantengono l'ordine degli anchor, per cui i risultati delle ricerche
+     * coincidono con quelli dell'indice costruito da un solo thread.
+     */
+    public LuceneSearch(List<Anchor> values, Analyzer customAnalyzer, Integer maxLengthContent, boolean incremental,
+                        Executor executor, int partitions) throws IOException {
         log.warn("Number of anchor to index is {}", values.size());
         this.customAnalyzer = customAnalyzer;
+        this.maxLengthContent = maxLengthContent;
         ByteBuffersDirectory directory = new ByteBuffersDirectory();
-        try (IndexWriter directoryWriter = new IndexWriter(directory, new IndexWriterConfig(this.customAnalyzer))) {
-            values
-                    .stream()
-                    .filter(anchor -> Optional.ofNullable(anchor.getHref()).filter(s -> !s.trim().isEmpty()).isPresent())
-                    .filter(anchor -> Optional.ofNullable(anchor.getContent())
-                            .filter(s -> !s.trim().isEmpty() && s.trim().length() < maxLengthContent).isPresent())
-                    .forEach(anchor -> {
-                        Document doc = new Document();
-                        doc.add(new StoredField(URL, anchor.getHref()));
-                        doc.add(new TextField(CONTENT, anchor.getContent(), Field.Store.YES));
-                        doc.add(new TextField(WHERE, anchor.getWhere(), Field.Store.YES));
-                        try {
-                            directoryWriter.addDocument(doc);
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
+        if (incremental) {
+            indexedAnchors = new HashSet<>();
+            indexWriter = new IndexWriter(directory, new IndexWriterConfig(this.customAnalyzer));
+            index(indexWriter, values);
+            indexReader = DirectoryReader.open(indexWriter);
+        } else if (executor != null && partitions > 1) {
+            indexedAnchors = null;
+            indexWriter = null;
+            indexReader = index(executor, filter(values), partitions);
+        } else {
+            indexedAnchors = null;
+            indexWriter = null;
+            try (IndexWriter directoryWriter = new IndexWriter(directory, new IndexWriterConfig(this.customAnalyzer))) {
+                index(directoryWriter, values);
+            }
+            indexReader = DirectoryReader.open(directory);
         }
-        indexReader = DirectoryReader.open(directory);
         if (log.isTraceEnabled()) {
             getTokensForField(indexReader, CONTENT);
         }
     }
 
+    private int index(IndexWriter directoryWriter, List<Anchor> values) {
+        final List<Anchor> anchors = filter(values);
+        addDocuments(directoryWriter, anchors);
+        documents += anchors.size();
+        return anchors.size();
+    }
+
+    private List<Anchor> filter(List<Anchor> values) {
+        return values
+                .stream()
+                .filter(anchor -> Optional.ofNullable(anchor.getHref()).filter(s -> !s.trim().isEmpty()).isPresent())
+                .filter(anchor -> Optional.ofNullable(anchor.getContent()).filter(s -> !s.trim().isEmpty()).isPresent())
+                .filter(anchor -> {
+                    if (anchor.getContent().trim().length() < maxLengthContent) {
+                        return true;
+                    }
+                    droppedAnchors++;
+                    return false;
+                })
+                .filter(anchor -> indexedAnchors == null ||
+                        indexedAnchors.add(List.of(anchor.getHref(), anchor.getContent(), anchor.getWhere())))
+                .toList();
+    }
+
+    private void addDocuments(IndexWriter directoryWriter, List<Anchor> anchors) {
+        anchors.forEach(anchor -> {
+            EvaluationContext.checkDeadline();
+            Document doc = new Document();
+            doc.add(new StoredField(URL, anchor.getHref()));
+            doc.add(new TextField(CONTENT, anchor.getContent(), Field.Store.YES));
+            doc.add(new TextField(WHERE, anchor.getWhere(), Field.Store.YES));
+            try {
+                directoryWriter.addDocument(doc);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * Indicizza le partizioni sull'executor, ognuna con il contesto della valutazione per la verifica della scadenza.
+     * Le partizioni condividono un contesto comune: appena una fallisce il contesto viene annullato, le altre si
+     * fermano alla verifica successiva e, una volta concluse tutte, i reader già aperti vengono chiusi.
+     */
+    private IndexReader index(Executor executor, List<Anchor> anchors, int partitions) throws IOException {
+        final EvaluationContext indexContext = EvaluationContext.current()
+                .orElseGet(() -> EvaluationContext.create(Optional.empty()))
+                .fork();
+        final int partitionSize = Math.max(1, (anchors.size() + partitions - 1) / partitions);
+        final List<CompletableFuture<DirectoryReader>> futures = new ArrayList<>();
+        for (int from = 0; from < anchors.size(); from += partitionSize) {
+            final List<Anchor> partition = anchors.subList(from, Math.min(anchors.size(), from + partitionSize));
+            final EvaluationContext partitionContext = indexContext.fork();
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try (EvaluationContext.Scope scope = partitionContext.attach()) {
+                    final ByteBuffersDirectory directory = new ByteBuffersDirectory();
+                    try (IndexWriter partitionWriter = new IndexWriter(directory, new IndexWriterConfig(this.customAnalyzer))) {
+                        addDocuments(partitionWriter, partition);
+                    }
+                    return DirectoryReader.open(directory);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor).whenComplete((reader, throwable) -> {
+                if (throwable != null) {
+                    indexContext.cancel();
+                }
+            }));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException _ex) {
+            log.trace("Partition index failed", _ex);
+        }
+        final List<IndexReader> readers = new ArrayList<>();
+        Throwable failure = null;
+        for (CompletableFuture<DirectoryReader> future : futures) {
+            try {
+                readers.add(future.join());
+            } catch (CompletionException e) {
+                if (failure == null || failure instanceof RuleCancelledException) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure != null) {
+            for (IndexReader reader : readers) {
+                reader.close();
+            }
+            if (failure instanceof UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            }
+            if (failure instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new CompletionException(failure);
+        }
+        if (readers.isEmpty()) {
+            final ByteBuffersDirectory directory = new ByteBuffersDirectory();
+            new IndexWriter(directory, new IndexWriterConfig(this.customAnalyzer)).close();
+            readers.add(DirectoryReader.open(directory));
+        }
+        documents += anchors.size();
+        this.partitions = readers.size();
+        log.debug("Indexed {} anchor in {} partitions", anchors.size(), readers.size());
+        return new MultiReader(readers.toArray(IndexReader[]::new), true);
+    }
+
+    /**
+     * Aggiunge all'indice incrementale gli anchor non ancora presenti e riapre il reader in modalità
+     * near-real-time, in modo che le ricerche successive vedano anche i nuovi documenti.
+     * @return il numero di anchor effettivamente aggiunti.
+     */
+    public int addAnchors(List<Anchor> values) throws IOException {
+        if (indexWriter == null) {
+            throw new IllegalStateException("Lucene search is not incremental");
+        }
+        final int added = index(indexWriter, values);
+        log.debug("Added {} of {} anchor to incremental index", added, values.size());
+        final DirectoryReader newReader = DirectoryReader.openIfChanged((DirectoryReader) indexReader, indexWriter);
+        if (newReader != null) {
+            indexReader.close();
+            indexReader = newReader;
+        }
+        return added;
+    }
+
+    @Override
+    public void close() throws IOException {
+        indexReader.close();
+        if (indexWriter != null) {
+            indexWriter.close();
+        }
+    }
+
     private void getTokensForField(IndexReader reader, String fieldName) throws IOException {
         List<LeafReaderContext> list = reader.leaves();
         log.trace("============= START TOKEN =============");
@@ -98,12 +282,14 @@ public class LuceneSearch {
         log.trace("============= END TOKEN =============");
     }
 
-    public List<LuceneResult> search(String keyword) throws ParseException, IOException {
+    /**
+     * La query di ricerca di un termine: non dipende dall'indice e può quindi essere preparata una sola volta
+     * e riutilizzata da più ricerche, purché con lo stesso analyzer.
+     */
+    public static Query buildQuery(String keyword, Analyzer customAnalyzer) throws ParseException {
         BooleanQuery.Builder builder = new BooleanQuery.Builder();
-        IndexSearcher dirSearcher = new IndexSearcher(indexReader);
-        dirSearcher.setSimilarity(new BinarySimilarity());
 
-        QueryParser parser = new QueryParser(CONTENT, this.customAnalyzer);
+        QueryParser parser = new QueryParser(CONTENT, customAnalyzer);
         parser.setDefaultOperator(QueryParser.Operator.AND);
         Query query = parser.parse(keyword);
 
@@ -119,7 +305,16 @@ public class LuceneSearch {
         builder.add(boostedExact, BooleanClause.Occur.SHOULD);
         builder.add(boostedText, BooleanClause.Occur.SHOULD);
 
-        Query finalQuery = builder.build();
+        return builder.build();
+    }
+
+    public List<LuceneResult> search(String keyword) throws ParseException, IOException {
+        return search(keyword, buildQuery(keyword, this.customAnalyzer));
+    }
+
+    public List<LuceneResult> search(String keyword, Query finalQuery) throws IOException {
+        IndexSearcher dirSearcher = new IndexSearcher(indexReader);
+        dirSearcher.setSimilarity(new BinarySimilarity());
 
         TopDocs topDocs = dirSearcher.search(finalQuery, 100);
         final List<LuceneResult> luceneResults = Arrays.stream(topDocs.scoreDocs).map(scoreDoc -> {
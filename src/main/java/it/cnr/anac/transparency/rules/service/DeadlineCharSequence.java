@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+/**
+ * Vista di un contenuto che verifica periodicamente la scadenza (o l'annullamento) della richiesta durante la lettura,
+ * così da interrompere anche un'espressione regolare con backtracking molto lungo.
+ */
+class DeadlineCharSequence implements CharSequence {
+    private static final int CHECK_INTERVAL = 4096;
+
+    private final CharSequence delegate;
+    private int reads;
+
+    DeadlineCharSequence(CharSequence delegate) {
+        this.delegate = delegate;
+    }
+
+    static CharSequence wrap(CharSequence content) {
+        return EvaluationContext.current()
+                .filter(context -> context.hasDeadline() || context.isCancellable())
+                .<CharSequence>map(context -> new DeadlineCharSequence(content))
+                .orElse(content);
+    }
+
+    @Override
+    public int length() {
+        return delegate.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (++reads % CHECK_INTERVAL == 0) {
+            EvaluationContext.checkDeadline();
+        }
+        return delegate.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return delegate.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+import it.cnr.anac.transparency.rules.exception.RuleCancelledException;
+import it.cnr.anac.transparency.rules.exception.RuleDeadlineExceededException;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Contesto di una singola valutazione, associato al thread che la esegue e propagato
+ * ai thread di {@link RuleExecutor}. Contiene la scadenza della richiesta, verificata in modo
+ * cooperativo all'interno dei cicli di estrazione, indicizzazione e ricerca.
+ * Un contesto figlio, creato con {@link #fork()}, condivide la scadenza del padre e può essere
+ * annullato indipendentemente, ad esempio quando un'altra valutazione concorrente ha già concluso;
+ * l'annullamento del padre si estende a tutti i contesti figli.
+ * Il contesto fissa inoltre la versione delle regole ({@link RuleSnapshot}) usata dalla valutazione,
+ * condivisa con tutti i contesti figli.
+ * Le valutazioni ombra ({@link #shadow(Optional, RuleSnapshot)}) non aggiornano metriche e statistiche degli estrattori,
+ * ad eccezione di quelle di esplorazione ({@link #explore(Optional, RuleSnapshot)}) che aggiornano le sole statistiche.
+ */
+public final class EvaluationContext {
+    public static final String DEADLINE_HEADER = "X-Rule-Deadline";
+    public static final String PARTIAL_HEADER = "X-Rule-Partial";
+
+    private static final ThreadLocal<EvaluationContext> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final EvaluationContext parent;
+    private final EvaluationDiagnostics diagnostics;
+    private final boolean shadow;
+    private final boolean explore;
+    @Getter
+    private volatile boolean partial;
+    private volatile boolean cancelled;
+    private volatile RuleSnapshot snapshot;
+    private volatile SchedulingLanes.Permit lanePermit;
+
+    private EvaluationContext(long deadlineNanos, EvaluationContext parent, EvaluationDiagnostics diagnostics,
+                              boolean shadow, boolean explore) {
+        this.deadlineNanos = deadlineNanos;
+        this.parent = parent;
+        this.diagnostics = diagnostics;
+        this.shadow = shadow;
+        this.explore = explore;
+    }
+
+    public static EvaluationContext create(Optional<Duration> timeout) {
+        return create(timeout, null);
+    }
+
+    /**
+     * @param diagnostics la diagnostica da raccogliere in modalità explain, null se non richiesta
+     */
+    public static EvaluationContext create(Optional<Duration> timeout, EvaluationDiagnostics diagnostics) {
+        return new EvaluationContext(deadlineNanos(timeout), null, diagnostics, false, false);
+    }
+
+    /**
+     * Il contesto di una valutazione ombra, con la stessa versione delle regole della valutazione primaria.
+     */
+    public static EvaluationContext shadow(Optional<Duration> timeout, RuleSnapshot snapshot) {
+        final EvaluationContext context = new EvaluationContext(deadlineNanos(timeout), null, null, true, false);
+        context.snapshot = snapshot;
+        return context;
+    }
+
+    /**
+     * Il contesto di una valutazione ombra che esegue la catena completa dei passaggi di estrazione
+     * per aggiornare le statistiche degli estrattori.
+     */
+    public static EvaluationContext explore(Optional<Duration> timeout, RuleSnapshot snapshot) {
+        final EvaluationContext context = new EvaluationContext(deadlineNanos(timeout), null, null, true, true);
+        context.snapshot = snapshot;
+        return context;
+    }
+
+    private static long deadlineNanos(Optional<Duration> timeout) {
+        return timeout
+                .filter(duration -> !duration.isNegative() && !duration.isZero())
+                .map(duration -> System.nanoTime() + duration.toNanos())
+                .orElse(Long.MAX_VALUE);
+    }
+
+    public EvaluationContext fork() {
+        return new EvaluationContext(deadlineNanos, this, diagnostics, shadow, explore);
+    }
+
+    /**
+     * La diagnostica della valutazione associata al thread corrente, null se explain non è attivo.
+     */
+    public static EvaluationDiagnostics diagnostics() {
+        final EvaluationContext context = CURRENT.get();
+        return context == null ? null : context.diagnostics;
+    }
+
+    /**
+     * Indica se il thread corrente esegue una valutazione ombra.
+     */
+    public static boolean isShadow() {
+        final EvaluationContext context = CURRENT.get();
+        return context != null && context.shadow;
+    }
+
+    /**
+     * Indica se il thread corrente esegue una valutazione ombra di esplorazione.
+     */
+    public static boolean isExplore() {
+        final EvaluationContext context = CURRENT.get();
+        return context != null && context.explore;
+    }
+
+    /**
+     * Restituisce la versione delle regole fissata per questa valutazione, fissando
+     * quella fornita dal supplier alla prima invocazione.
+     */
+    public RuleSnapshot pin(Supplier<RuleSnapshot> supplier) {
+        if (parent != null) {
+            return parent.pin(supplier);
+        }
+        RuleSnapshot pinned = snapshot;
+        if (pinned == null) {
+            synchronized (this) {
+                pinned = snapshot;
+                if (pinned == null) {
+                    pinned = supplier.get();
+                    snapshot = pinned;
+                }
+            }
+        }
+        return pinned;
+    }
+
+    public Optional<RuleSnapshot> getSnapshot() {
+        return parent != null ? parent.getSnapshot() : Optional.ofNullable(snapshot);
+    }
+
+    /**
+     * Associa alla valutazione il posto occupato nella corsia di esecuzione, condiviso con tutti i contesti figli.
+     */
+    public void setLanePermit(SchedulingLanes.Permit permit) {
+        if (parent != null) {
+            parent.setLanePermit(permit);
+        } else {
+            lanePermit = permit;
+        }
+    }
+
+    public Optional<SchedulingLanes.Permit> getLanePermit() {
+        return parent != null ? parent.getLanePermit() : Optional.ofNullable(lanePermit);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Un contesto è annullato se è stato annullato esso stesso o uno dei contesti da cui è stato creato con
+     * {@link #fork()}: l'annullamento di una valutazione ferma anche i thread che ne eseguono le parti in parallelo.
+     */
+    public boolean isCancelled() {
+        return cancelled || parent != null && parent.isCancelled();
+    }
+
+    public static Optional<EvaluationContext> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Associa il contesto al thread corrente fino alla chiusura dello {@link Scope} restituito.
+     */
+    public static Scope attach(EvaluationContext context) {
+        final EvaluationContext previous = CURRENT.get();
+        CURRENT.set(context);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    public Scope attach() {
+        return attach(this);
+    }
+
+    public boolean hasDeadline() {
+        return deadlineNanos != Long.MAX_VALUE;
+    }
+
+    public boolean isCancellable() {
+        return parent != null;
+    }
+
+    public boolean isExpired() {
+        return hasDeadline() && System.nanoTime() - deadlineNanos > 0;
+    }
+
+    /**
+     * Verifica la scadenza del contesto associato al thread corrente.
+     *
+     * @throws RuleDeadlineExceededException se la scadenza è stata superata
+     */
+    public static void checkDeadline() throws RuleDeadlineExceededException {
+        final EvaluationContext context = CURRENT.get();
+        if (context != null && context.isCancelled()) {
+            throw new RuleCancelledException();
+        }
+        if (context != null && context.isExpired()) {
+            context.markPartial();
+            throw new RuleDeadlineExceededException();
+        }
+    }
+
+    public static boolean deadlineExpired() {
+        final EvaluationContext context = CURRENT.get();
+        if (context != null && context.isCancelled()) {
+            return true;
+        }
+        if (context != null && context.isExpired()) {
+            context.markPartial();
+            return true;
+        }
+        return false;
+    }
+
+    private void markPartial() {
+        partial = true;
+        if (parent != null) {
+            parent.markPartial();
+        }
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public HttpStatus getStatus() {
+        return partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK;
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+import it.cnr.anac.transparency.rules.domain.Anchor;
+import it.cnr.anac.transparency.rules.domain.ExtractionPass;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Diagnostica di una singola valutazione in modalità explain: tempi e memoria allocata per fase, anchor
+ * prodotti per estrattore e per origine, anchor scartati, documenti indicizzati e ricerche per regola.
+ * Viene creata solo quando richiesta e raggiunta tramite {@link EvaluationContext}: senza explain
+ * i punti di raccolta si limitano a verificare che sia assente.
+ * I metodi sono sincronizzati perché i rami hedged la aggiornano in parallelo.
+ */
+public final class EvaluationDiagnostics {
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = threadMXBean();
+
+    public record Stage(long count, long elapsedNanos, long allocatedBytes) {}
+
+    public record Search(String ruleName, String term, long elapsedNanos, int candidates) {}
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final Map<String, Integer> anchorsByExtractor = new LinkedHashMap<>();
+    private final Map<String, Integer> anchorsByWhere = new TreeMap<>();
+    private final List<Search> searches = new ArrayList<>();
+    private int droppedAnchors;
+    private int indexDocuments;
+
+    /**
+     * I byte allocati dal thread corrente, -1 se la JVM non li rende disponibili (ad esempio per i thread virtuali).
+     */
+    public static long currentThreadAllocatedBytes() {
+        return THREAD_MX_BEAN == null ? -1 : THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    public synchronized void stage(String stage, long elapsedNanos, long allocatedBytes) {
+        stages.merge(stage, new Stage(1, elapsedNanos, allocatedBytes), (previous, current) -> new Stage(
+                previous.count() + 1,
+                previous.elapsedNanos() + current.elapsedNanos(),
+                previous.allocatedBytes() < 0 || current.allocatedBytes() < 0 ? -1 : previous.allocatedBytes() + current.allocatedBytes()));
+    }
+
+    public synchronized void anchors(ExtractionPass pass, List<Anchor> anchors) {
+        anchorsByExtractor.merge(pass.name().toLowerCase(Locale.ROOT), anchors.size(), Integer::sum);
+        anchors.forEach(anchor -> anchorsByWhere.merge(String.valueOf(anchor.getWhere()), 1, Integer::sum));
+    }
+
+    public synchronized void indexed(int documents, int droppedAnchors) {
+        this.indexDocuments += documents;
+        this.droppedAnchors += droppedAnchors;
+    }
+
+    public synchronized void search(String ruleName, String term, long elapsedNanos, int candidates) {
+        searches.add(new Search(ruleName, term, elapsedNanos, candidates));
+    }
+
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public synchronized Map<String, Stage> getStages() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(stages));
+    }
+
+    public synchronized Map<String, Integer> getAnchorsByExtractor() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(anchorsByExtractor));
+    }
+
+    public synchronized Map<String, Integer> getAnchorsByWhere() {
+        return Collections.unmodifiableMap(new TreeMap<>(anchorsByWhere));
+    }
+
+    public synchronized List<Search> getSearches() {
+        return List.copyOf(searches);
+    }
+
+    public synchronized int getDroppedAnchors() {
+        return droppedAnchors;
+    }
+
+    public synchronized int getIndexDocuments() {
+        return indexDocuments;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadMXBean &&
+                threadMXBean.isThreadAllocatedMemorySupported()) {
+            if (!threadMXBean.isThreadAllocatedMemoryEnabled()) {
+                threadMXBean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return threadMXBean;
+        }
+        return null;
+    }
+}
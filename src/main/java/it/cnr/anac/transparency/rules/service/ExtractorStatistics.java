@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+import it.cnr.anac.transparency.rules.configuration.AdaptiveProperties;
+import it.cnr.anac.transparency.rules.domain.ExtractionPass;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Statistiche, per host o per fingerprint della pagina e per regola padre, sui passaggi di estrazione che hanno
+ * risolto tutte le regole figlie. Vengono utilizzate per iniziare la valutazione direttamente
+ * dal passaggio con maggiori probabilità di successo, saltando quelli che per lo stesso sito
+ * (o CMS) non risolvono mai tutte le regole.
+ * Le statistiche sono mantenute per un numero limitato di chiavi, eliminando quelle usate meno di recente.
+ */
+@Slf4j
+@Service
+public class ExtractorStatistics {
+    private static final int FINGERPRINT_PREFIX_LENGTH = 16384;
+    private static final Pattern META_PATTERN = Pattern.compile("<meta\\s[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern GENERATOR_PATTERN = Pattern.compile("name\\s*=\\s*[\"']?generator[\"'\\s>]", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CONTENT_PATTERN = Pattern.compile("content\\s*=\\s*[\"']([^\"']*)[\"']", Pattern.CASE_INSENSITIVE);
+    private static final Pattern VERSION_PATTERN = Pattern.compile("[\\s\\-]*v?\\d[\\w.\\-]*$", Pattern.CASE_INSENSITIVE);
+
+    public record PassStatistics(long attempts, long resolved) {}
+
+    public record KeyStatistics(Instant lastUpdate, Map<ExtractionPass, PassStatistics> passes) {}
+
+    private final AdaptiveProperties adaptiveProperties;
+    private final Map<String, Entry> entries;
+
+    public ExtractorStatistics(AdaptiveProperties adaptiveProperties) {
+        this.adaptiveProperties = adaptiveProperties;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > adaptiveProperties.getMaxEntries();
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return adaptiveProperties.isEnabled();
+    }
+
+    /**
+     * La chiave delle statistiche: l'host dell'url della pagina, se indicato, altrimenti il
+     * generatore dichiarato nel tag meta della pagina senza il numero di versione, seguito
+     * dal percorso della regola padre di cui vengono valutate le regole figlie.
+     */
+    public Optional<String> key(Optional<String> url, CharSequence content, String parentRule) {
+        if (!adaptiveProperties.isEnabled()) {
+            return Optional.empty();
+        }
+        final Optional<String> host = url.flatMap(ExtractorStatistics::host);
+        return host.map(s -> "host:".concat(s))
+                .or(() -> generator(content).map(s -> "generator:".concat(s)))
+                .map(s -> s.concat("@").concat(parentRule));
+    }
+
+    private static Optional<String> host(String url) {
+        try {
+            return Optional.ofNullable(URI.create(url.trim()).getHost())
+                    .map(s -> s.toLowerCase(Locale.ROOT))
+                    .map(s -> s.startsWith("www.") ? s.substring(4) : s);
+        } catch (IllegalArgumentException _ex) {
+            log.debug("Invalid url {}", url);
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<String> generator(CharSequence content) {
+        final Matcher meta = META_PATTERN.matcher(content.subSequence(0, Math.min(content.length(), FINGERPRINT_PREFIX_LENGTH)));
+        while (meta.find()) {
+            final String tag = meta.group();
+            if (GENERATOR_PATTERN.matcher(tag).find()) {
+                final Matcher matcher = CONTENT_PATTERN.matcher(tag);
+                if (matcher.find()) {
+                    final String generator = VERSION_PATTERN.matcher(matcher.group(1).trim()).replaceFirst("");
+                    return Optional.of(generator.toLowerCase(Locale.ROOT)).filter(s -> !s.isEmpty());
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Il primo passaggio da eseguire: viene saltato ogni passaggio che, dopo un numero minimo di tentativi,
+     * ha risolto tutte le regole in meno della percentuale configurata. L'ultimo passaggio della catena
+     * non viene mai saltato. Le valutazioni ombra di esplorazione eseguono sempre la catena completa.
+     */
+    public ExtractionPass startPass(Optional<String> key, boolean evaluateAnchorsFirst) {
+        if (key.isEmpty() || !adaptiveProperties.isEnabled() || EvaluationContext.isExplore()) {
+            return ExtractionPass.REGEX;
+        }
+        final List<ExtractionPass> chain = evaluateAnchorsFirst ?
+                List.of(ExtractionPass.REGEX, ExtractionPass.JSOUP_ANCHORS, ExtractionPass.JSOUP_ALL_TAGS) :
+                List.of(ExtractionPass.REGEX, ExtractionPass.JSOUP_ALL_TAGS);
+        synchronized (entries) {
+            final Entry entry = entries.get(key.get());
+            if (entry == null) {
+                return ExtractionPass.REGEX;
+            }
+            for (ExtractionPass pass : chain.subList(0, chain.size() - 1)) {
+                final long attempts = entry.attempts[pass.ordinal()];
+                if (attempts < adaptiveProperties.getMinSamples() ||
+                        (double) entry.resolved[pass.ordinal()] / attempts >= adaptiveProperties.getMinSuccessRate()) {
+                    return pass;
+                }
+                log.debug("Skipping extraction pass {} for {}", pass, key.get());
+            }
+        }
+        return chain.get(chain.size() - 1);
+    }
+
+    /**
+     * Indica se, per una valutazione che salta alcuni passaggi, eseguire la catena completa
+     * in una valutazione ombra di esplorazione, in modo che le statistiche continuino ad aggiornarsi
+     * senza modificare la risposta restituita al client.
+     */
+    public boolean explore(Optional<String> key, ExtractionPass startPass) {
+        return key.isPresent() && startPass != ExtractionPass.REGEX && !EvaluationContext.isShadow() &&
+                ThreadLocalRandom.current().nextDouble() < adaptiveProperties.getExploreRate();
+    }
+
+    public void record(Optional<String> key, ExtractionPass pass, boolean resolved) {
+        if (key.isEmpty() || !adaptiveProperties.isEnabled() || (EvaluationContext.isShadow() && !EvaluationContext.isExplore())) {
+            return;
+        }
+        synchronized (entries) {
+            final Entry entry = entries.computeIfAbsent(key.get(), s -> new Entry());
+            entry.attempts[pass.ordinal()]++;
+            if (resolved) {
+                entry.resolved[pass.ordinal()]++;
+            }
+            entry.lastUpdate = Instant.now();
+        }
+    }
+
+    public Map<String, KeyStatistics> getStatistics() {
+        final Map<String, KeyStatistics> statistics = new TreeMap<>();
+        synchronized (entries) {
+            entries.forEach((key, entry) -> {
+                final Map<ExtractionPass, PassStatistics> passes = new EnumMap<>(ExtractionPass.class);
+                for (ExtractionPass pass : ExtractionPass.values()) {
+                    passes.put(pass, new PassStatistics(entry.attempts[pass.ordinal()], entry.resolved[pass.ordinal()]));
+                }
+                statistics.put(key, new KeyStatistics(entry.lastUpdate, passes));
+            });
+        }
+        return statistics;
+    }
+
+    public void reset() {
+        synchronized (entries) {
+            log.info("Reset extractor statistics of {} keys", entries.size());
+            entries.clear();
+        }
+    }
+
+    public boolean reset(String key) {
+        synchronized (entries) {
+            return entries.remove(key) != null;
+        }
+    }
+
+    private static class Entry {
+        private final long[] attempts = new long[ExtractionPass.values().length];
+        private final long[] resolved = new long[ExtractionPass.values().length];
+        private Instant lastUpdate;
+    }
+}
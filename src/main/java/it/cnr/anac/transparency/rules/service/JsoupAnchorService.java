@@ -17,15 +17,22 @@
 
 package it.cnr.anac.transparency.rules.service;
 
-import it.cnr.anac.transparency.rules.configuration.RuleConfiguration;
 import it.cnr.anac.transparency.rules.domain.Anchor;
+import it.cnr.anac.transparency.rules.domain.ExtractionPass;
+import it.cnr.anac.transparency.rules.monitoring.PipelineStage;
+import it.cnr.anac.transparency.rules.monitoring.RuleEvents;
+import it.cnr.anac.transparency.rules.monitoring.RuleMetrics;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -34,19 +41,41 @@ import java.util.stream.Stream;
 @Service
 @Slf4j
 public class JsoupAnchorService implements AnchorService{
+    private static final Pattern HTML_PATTERN = Pattern.compile("HTML", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+
+    @Autowired
+    RuleSnapshotManager ruleSnapshotManager;
     @Autowired
-    RuleConfiguration ruleConfiguration;
+    RuleMetrics ruleMetrics;
 
     @Override
-    public List<Anchor> find(String content, boolean allTags) {
+    public List<Anchor> find(CharSequence content, boolean allTags) {
+        final ExtractionPass pass = allTags ? ExtractionPass.JSOUP_ALL_TAGS : ExtractionPass.JSOUP_ANCHORS;
+        final RuleEvents.ExtractionEvent event = new RuleEvents.ExtractionEvent();
+        event.begin();
+        try (RuleMetrics.StageTimer stage = ruleMetrics.stage(PipelineStage.EXTRACTION, pass)) {
+            final List<Anchor> anchors = extract(content, allTags);
+            ruleMetrics.anchors(pass, anchors);
+            if (RuleEvents.shouldCommit(event)) {
+                event.pass = pass.name();
+                event.pageSize = content == null ? 0 : content.length();
+                event.anchors = anchors.size();
+                event.commit();
+            }
+            return anchors;
+        }
+    }
+
+    private List<Anchor> extract(CharSequence content, boolean allTags) {
         if (Optional.ofNullable(content)
-                .map(String::toUpperCase)
-                .filter(s -> s.contains("HTML"))
+                .filter(s -> HTML_PATTERN.matcher(s).find())
                 .isEmpty()) {
-            log.warn("Content '{}' .... is not HTML Page!", content.substring(0, Math.min(50, content.length())));
+            log.warn("Content '{}' .... is not HTML Page!", content.subSequence(0, Math.min(50, content.length())));
             return Collections.emptyList();
         }
-        Document doc = Jsoup.parse(content);
+        EvaluationContext.checkDeadline();
+        Document doc = parse(content);
+        EvaluationContext.checkDeadline();
         if (allTags) {
             return doc.getAllElements()
                     .stream()
@@ -61,7 +90,24 @@ public class JsoupAnchorService implements AnchorService{
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Le pagine riversate su file vengono lette a blocchi dal parser, senza copiarle sullo heap.
+     * La scadenza e l'annullamento della valutazione vengono verificati a ogni blocco letto dal parser,
+     * così che il parsing di un ramo hedged perdente si interrompa senza arrivare alla fine della pagina.
+     */
+    private Document parse(CharSequence content) {
+        final Reader reader = content instanceof SpilledPage page ? page.reader() : new StringReader(content.toString());
+        return Parser.htmlParser().parseInput(new FilterReader(reader) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                EvaluationContext.checkDeadline();
+                return super.read(buffer, offset, length);
+            }
+        }, "");
+    }
+
     private List<Anchor> convert(Element element) {
+        EvaluationContext.checkDeadline();
         final String href = Optional.of(element.attr(AnchorService.HREF)).filter(s -> !s.trim().isEmpty()).orElse("#");
         if (!element.tag().getName().equalsIgnoreCase(AnchorService.ANCHOR)) {
             final List<Anchor> firstList = List.of(
@@ -79,12 +125,12 @@ public class JsoupAnchorService implements AnchorService{
                             .map(this::removeWords)
                             .orElse(null), "text::parent")
             );
-            final List<Anchor> secondList = ruleConfiguration.getTagAttributes().stream().map(s -> {
+            final List<Anchor> secondList = ruleSnapshotManager.current().getTagAttributes().stream().map(s -> {
                 return new Anchor(href, Optional.of(element)
                         .flatMap(element1 -> Optional.of(element1.attributes().get(s)))
                         .orElse(null), "attribute::" + s);
             }).toList();
-            final List<Anchor> thirdList = ruleConfiguration.getTagAttributes().stream().map(s -> {
+            final List<Anchor> thirdList = ruleSnapshotManager.current().getTagAttributes().stream().map(s -> {
                 return new Anchor(href, Optional.ofNullable(element.parent())
                         .flatMap(element1 -> Optional.of(element1.attributes().get(s)))
                         .orElse(null), "attribute::parent::" + s);
@@ -135,10 +181,8 @@ public class JsoupAnchorService implements AnchorService{
     }
 
     private String removeWords(String input) {
-        List<Pattern> patterns = ruleConfiguration.getStopWordsInbox().stream()
-                .map(s -> Pattern.compile(Pattern.quote(s), Pattern.CASE_INSENSITIVE))
-                .toList();
         if (input == null) return null;
+        final List<Pattern> patterns = ruleSnapshotManager.current().getStopWordsInboxPatterns();
         String result = input;
         for (Pattern p : patterns) {
             result = p.matcher(result).replaceAll("");
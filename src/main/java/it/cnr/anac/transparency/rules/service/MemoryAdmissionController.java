@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+import it.cnr.anac.transparency.rules.configuration.AdmissionProperties;
+import it.cnr.anac.transparency.rules.exception.RuleOverloadException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controllo di ammissione delle richieste basato su un budget globale di memoria.
+ * Ogni richiesta prenota la memoria stimata prima di essere elaborata, attende in coda
+ * fino a {@code admission.max_wait} se il budget è esaurito e viene poi rifiutata con
+ * {@link RuleOverloadException}. La prenotazione viene ricalcolata dopo la decodifica del contenuto.
+ * Il semaforo non è fair: una richiesta grande in attesa non blocca quelle piccole che trovano già posto nel budget.
+ */
+@Slf4j
+@Service
+public class MemoryAdmissionController {
+    public static final String RESERVATION_ATTRIBUTE = MemoryAdmissionController.class.getName() + ".reservation";
+    private static final int KIB = 1024;
+
+    private final AdmissionProperties admissionProperties;
+    private final Semaphore budget;
+    private final int budgetKib;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, Reservation> reservations = new ConcurrentHashMap<>();
+
+    public MemoryAdmissionController(AdmissionProperties admissionProperties) {
+        this.admissionProperties = admissionProperties;
+        this.budgetKib = (int) Math.min(Integer.MAX_VALUE, admissionProperties.getBudgetBytes() / KIB);
+        this.budget = new Semaphore(budgetKib);
+    }
+
+    public boolean isEnabled() {
+        return admissionProperties.isEnabled();
+    }
+
+    /**
+     * Stima la memoria necessaria a partire dalla dimensione del body della richiesta e,
+     * se già nota, dalla dimensione del contenuto decodificato.
+     */
+    public long estimate(long contentLength, long decodedLength) {
+        return contentLength * 2 + Math.round(decodedLength * admissionProperties.getExpansionFactor());
+    }
+
+    /**
+     * Prenota la memoria per una richiesta di cui è noto solo il Content-Length,
+     * assumendo che il contenuto decodificato abbia la stessa dimensione.
+     */
+    public Reservation reserve(long contentLength) throws RuleOverloadException {
+        final int permits = toKib(estimate(contentLength, contentLength));
+        try {
+            if (!budget.tryAcquire(permits, admissionProperties.getMaxWait().toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Memory budget exhausted: requested {} KiB, available {} KiB of {} KiB",
+                        permits, budget.availablePermits(), budgetKib);
+                throw new RuleOverloadException(admissionProperties.getRetryAfter());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuleOverloadException(admissionProperties.getRetryAfter());
+        }
+        final Reservation reservation = new Reservation(sequence.incrementAndGet(), contentLength, permits);
+        reservations.put(reservation.getId(), reservation);
+        return reservation;
+    }
+
+    /**
+     * Prenota la memoria per una richiesta senza Content-Length (chunked) a partire da
+     * {@code admission.chunked_content_length}: la prenotazione cresce man mano che il body viene letto
+     * (vedi {@link Reservation#onRead(long)}).
+     */
+    public Reservation reserveChunked() throws RuleOverloadException {
+        return reserve(admissionProperties.getChunkedContentLength().toBytes());
+    }
+
+    /**
+     * La prenotazione associata alla richiesta HTTP corrente, se presente.
+     */
+    public Optional<Reservation> current() {
+        return Optional.ofNullable(RequestContextHolder.getRequestAttributes())
+                .map(requestAttributes -> requestAttributes.getAttribute(RESERVATION_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST))
+                .filter(Reservation.class::isInstance)
+                .map(Reservation.class::cast);
+    }
+
+    public long getBudgetBytes() {
+        return (long) budgetKib * KIB;
+    }
+
+    public long getAvailableBytes() {
+        return (long) budget.availablePermits() * KIB;
+    }
+
+    public Collection<Reservation> getReservations() {
+        return Collections.unmodifiableCollection(reservations.values());
+    }
+
+    private int toKib(long bytes) {
+        return (int) Math.max(1, Math.min(budgetKib, (bytes + KIB - 1) / KIB));
+    }
+
+    public class Reservation implements AutoCloseable {
+        @Getter
+        private final long id;
+        @Getter
+        private final Instant since = Instant.now();
+        private final AtomicLong contentLength;
+        private final AtomicLong received = new AtomicLong();
+        private final AtomicInteger permits;
+
+        Reservation(long id, long contentLength, int permits) {
+            this.id = id;
+            this.contentLength = new AtomicLong(contentLength);
+            this.permits = new AtomicInteger(permits);
+        }
+
+        public long getContentLength() {
+            return contentLength.get();
+        }
+
+        public long getBytes() {
+            return (long) permits.get() * KIB;
+        }
+
+        /**
+         * Registra i byte letti dal body. Quando il contenuto letto supera quello stimato, come accade per le
+         * richieste senza Content-Length, la prenotazione viene estesa raddoppiando la stima; se il budget non ha
+         * memoria immediatamente disponibile la richiesta viene rifiutata con {@link RuleOverloadException}.
+         */
+        public synchronized void onRead(long bytes) throws RuleOverloadException {
+            final long total = received.addAndGet(bytes);
+            if (total <= contentLength.get() || !reservations.containsKey(id)) {
+                return;
+            }
+            final long extended = Math.max(total, contentLength.get() * 2);
+            final int current = permits.get();
+            final int required = toKib(estimate(extended, extended));
+            if (required > current && !budget.tryAcquire(required - current)) {
+                log.warn("Memory budget exhausted: reservation {} cannot grow from {} KiB to {} KiB, available {} KiB",
+                        id, current, required, budget.availablePermits());
+                throw new RuleOverloadException(admissionProperties.getRetryAfter());
+            }
+            permits.addAndGet(Math.max(0, required - current));
+            contentLength.set(extended);
+        }
+
+        /**
+         * Aggiorna la prenotazione con la stima basata sul contenuto decodificato, misurato in byte UTF-8:
+         * la memoria in eccesso viene restituita al budget, quella mancante viene prenotata solo
+         * se immediatamente disponibile.
+         */
+        public void adjustToDecoded(CharSequence contentDecoded) {
+            adjustToDecoded(RuleService.utf8Length(contentDecoded));
+        }
+
+        public synchronized void adjustToDecoded(long decodedBytes) {
+            if (!reservations.containsKey(id)) {
+                return;
+            }
+            final int required = toKib(estimate(contentLength.get(), decodedBytes));
+            final int current = permits.get();
+            if (required < current) {
+                if (permits.compareAndSet(current, required)) {
+                    budget.release(current - required);
+                }
+            } else if (required > current) {
+                if (budget.tryAcquire(required - current)) {
+                    permits.addAndGet(required - current);
+                } else {
+                    log.debug("Cannot extend reservation {} from {} KiB to {} KiB", id, current, required);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (reservations.remove(id) != null) {
+                budget.release(permits.getAndSet(0));
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+import it.cnr.anac.transparency.rules.configuration.SpillProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Riversamento su file delle pagine più grandi di {@link SpillProperties#getThreshold()}: la pagina decodificata
+ * viene scritta in un file temporaneo e mappata in memoria come {@link SpilledPage}, così che le pagine vicine a
+ * max_length_page_byte non occupino lo heap per tutta la durata della valutazione.
+ */
+@Slf4j
+@Service
+public class PageSpillService {
+    /**
+     * I file più vecchi, nella directory dei file temporanei, sono residui di un'istanza terminata in modo anomalo
+     */
+    private static final Duration STALE_AGE = Duration.ofHours(1);
+
+    private final SpillProperties spillProperties;
+
+    public PageSpillService(SpillProperties spillProperties) {
+        this.spillProperties = spillProperties;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        log.info("Page spill enabled in {} above {}", spillProperties.getDirectory(), spillProperties.getThreshold());
+        if (!Files.isDirectory(spillProperties.getDirectory())) {
+            return;
+        }
+        final Instant staleBefore = Instant.now().minus(STALE_AGE);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spillProperties.getDirectory(), SpilledPage.FILE_PREFIX + "*")) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toInstant().isBefore(staleBefore)) {
+                    Files.deleteIfExists(file);
+                    log.info("Deleted stale spill file {}", file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Cannot clean spill directory {}", spillProperties.getDirectory(), e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return spillProperties.isEnabled();
+    }
+
+    /**
+     * Indica se una pagina della dimensione indicata, in byte, deve essere riversata su file.
+     */
+    public boolean exceeds(long length) {
+        return isEnabled() && length > spillProperties.getThreshold().toBytes();
+    }
+
+    public SpilledPage spill(Reader reader) throws IOException {
+        return SpilledPage.write(reader, spillProperties.getDirectory(), false);
+    }
+
+    /**
+     * Riversa su file la pagina letta dallo stream in UTF-8.
+     */
+    public SpilledPage spill(InputStream inputStream) throws IOException {
+        return spill(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodifica il contenuto in base64 direttamente su file, senza creare la pagina decodificata sullo heap.
+     */
+    public SpilledPage spillBase64(CharSequence content) throws IOException {
+        try (InputStream inputStream = new Base64InputStream(new AsciiInputStream(content))) {
+            return spill(inputStream);
+        }
+    }
+
+    /**
+     * Un buffer che mantiene in memoria i byte scritti fino alla soglia e li riversa su file oltre la soglia.
+     */
+    public SpillBuffer buffer() {
+        return new SpillBuffer(isEnabled() ? spillProperties.getThreshold().toBytes() : Long.MAX_VALUE,
+                spillProperties.getDirectory());
+    }
+
+    /**
+     * Come {@link Base64#isBase64(String)}, senza copiare il contenuto.
+     */
+    public static boolean isBase64(CharSequence content) {
+        for (int i = 0; i < content.length(); i++) {
+            final char c = content.charAt(i);
+            if (c > 0x7F || !(Base64.isBase64((byte) c) || c == ' ' || c == '\n' || c == '\r' || c == '\t')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class AsciiInputStream extends InputStream {
+        private final CharSequence content;
+        private int position;
+
+        AsciiInputStream(CharSequence content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read() {
+            return position < content.length() ? content.charAt(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= content.length()) {
+                return -1;
+            }
+            final int read = Math.min(length, content.length() - position);
+            for (int i = 0; i < read; i++) {
+                buffer[offset + i] = (byte) content.charAt(position++);
+            }
+            return read;
+        }
+    }
+
+    public static final class SpillBuffer extends OutputStream {
+        private final long threshold;
+        private final Path directory;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private Path file;
+        private OutputStream fileStream;
+        private long size;
+
+        private SpillBuffer(long threshold, Path directory) {
+            this.threshold = threshold;
+            this.directory = directory;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (file == null && size + length > threshold) {
+                Files.createDirectories(directory);
+                file = Files.createTempFile(directory, SpilledPage.FILE_PREFIX, ".tmp");
+                fileStream = new BufferedOutputStream(Files.newOutputStream(file));
+                memory.writeTo(fileStream);
+                memory = null;
+            }
+            if (file == null) {
+                memory.write(bytes, offset, length);
+            } else {
+                fileStream.write(bytes, offset, length);
+            }
+            size += length;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public boolean isSpilled() {
+            return file != null;
+        }
+
+        /**
+         * Il contenuto del buffer, solo se non è stato riversato su file.
+         */
+        public String toString(Charset charset) {
+            if (isSpilled()) {
+                throw new IllegalStateException("Buffer spilled to " + file);
+            }
+            return memory.toString(charset);
+        }
+
+        /**
+         * Completa la scrittura e restituisce uno stream sul contenuto del buffer.
+         */
+        public InputStream inputStream() throws IOException {
+            if (!isSpilled()) {
+                return new ByteArrayInputStream(memory.toByteArray());
+            }
+            close();
+            return new BufferedInputStream(Files.newInputStream(file));
+        }
+
+        /**
+         * Svuota il buffer, eliminando l'eventuale file.
+         */
+        public void reset() throws IOException {
+            delete();
+            memory = new ByteArrayOutputStream();
+            size = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (fileStream != null) {
+                fileStream.flush();
+            }
+        }
+
+        /**
+         * Completa la scrittura, il file resta disponibile fino a {@link #delete()}.
+         */
+        @Override
+        public void close() throws IOException {
+            if (fileStream != null) {
+                fileStream.close();
+            }
+        }
+
+        /**
+         * Elimina l'eventuale file temporaneo.
+         */
+        public void delete() throws IOException {
+            if (file != null) {
+                close();
+                Files.deleteIfExists(file);
+                file = null;
+                fileStream = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+import it.cnr.anac.transparency.rules.exception.RuleNotFoundException;
+import it.cnr.anac.transparency.rules.monitoring.RuleMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * Decodifica incrementale del body delle richieste reattive: i buffer vengono consumati
+ * man mano che arrivano, decodificando il base64 e verificando la dimensione massima
+ * della pagina senza attendere la lettura completa del contenuto.
+ * Il contenuto grezzo viene conservato solo finché non è chiaro se si tratta di base64, poi viene rilasciato
+ * man mano che viene decodificato.
+ * Oltre la soglia di {@link PageSpillService} il contenuto ricevuto e quello decodificato vengono riversati su file
+ * e la pagina viene restituita come {@link SpilledPage}.
+ */
+@Slf4j
+@Service
+public class ReactivePageDecoder {
+    @Autowired
+    RuleSnapshotManager ruleSnapshotManager;
+    @Autowired
+    RuleService ruleService;
+    @Autowired
+    RuleMetrics ruleMetrics;
+    @Autowired
+    PageSpillService pageSpillService;
+
+    public Mono<CharSequence> decode(Flux<DataBuffer> body) {
+        return decode(body, EvaluationContext.create(Optional.empty()));
+    }
+
+    /**
+     * I limiti sulla dimensione della pagina sono quelli della versione delle regole fissata dal contesto
+     * della valutazione, che viene associato al thread durante la decodifica finale.
+     * Il body viene richiesto un buffer alla volta: il buffer successivo viene letto solo quando il decoder
+     * ha terminato di consumare il precedente.
+     */
+    public Mono<CharSequence> decode(Flux<DataBuffer> body, EvaluationContext context) {
+        final long maxDecoded = ruleSnapshotManager.pin(context).getConfiguration().getMaxLengthPageByte();
+        // il contenuto in base64 occupa 4/3 del contenuto decodificato
+        final long maxRaw = maxDecoded / 3 * 4 + 1024;
+        return Mono.using(
+                        () -> new IncrementalDecoder(maxDecoded, maxRaw),
+                        decoder -> body.concatMap(dataBuffer -> Mono.fromRunnable(() -> decoder.accept(dataBuffer)), 1)
+                                .then(Mono.fromCallable(() -> {
+                                    try (EvaluationContext.Scope scope = context.attach()) {
+                                        return decoder.finish();
+                                    }
+                                })),
+                        IncrementalDecoder::release)
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * Quantità di contenuto in base64 dopo la quale il contenuto grezzo non viene più conservato.
+     */
+    static final int PROBE_SIZE = 64 * 1024;
+
+    private enum Mode {
+        /** Contenuto ancora da classificare, conservato sia grezzo che decodificato */
+        PROBE,
+        /** Contenuto in base64, conservato solo decodificato */
+        BASE64,
+        /** Contenuto non in base64, conservato solo grezzo */
+        PLAIN
+    }
+
+    private class IncrementalDecoder {
+        private final long maxDecoded;
+        private final long maxRaw;
+        private final PageSpillService.SpillBuffer raw = pageSpillService.buffer();
+        private final PageSpillService.SpillBuffer decoded = pageSpillService.buffer();
+        private final Base64OutputStream decoder = new Base64OutputStream(decoded, false);
+        private Mode mode = Mode.PROBE;
+        private long received;
+
+        IncrementalDecoder(long maxDecoded, long maxRaw) {
+            this.maxDecoded = maxDecoded;
+            this.maxRaw = maxRaw;
+        }
+
+        void accept(DataBuffer dataBuffer) {
+            try {
+                final byte[] bytes = new byte[dataBuffer.readableByteCount()];
+                dataBuffer.read(bytes);
+                received += bytes.length;
+                switch (mode) {
+                    case PROBE -> probe(bytes);
+                    case BASE64 -> decoder.write(bytes);
+                    case PLAIN -> raw.write(bytes);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                DataBufferUtils.release(dataBuffer);
+            }
+            if (received > maxRaw || decoded.size() > maxDecoded) {
+                log.warn("The content length {} is greater than max {}", received, maxDecoded);
+                ruleMetrics.rejectedPage();
+                throw new RuleNotFoundException();
+            }
+        }
+
+        /**
+         * Finché il contenuto ricevuto è inferiore a {@link #PROBE_SIZE} viene conservato anche in forma grezza,
+         * per poterlo trattare come testo se risulta non essere base64. Superata la soglia il contenuto grezzo
+         * viene rilasciato e la decodifica prosegue ignorando, come {@link Base64#decodeBase64(byte[])},
+         * i caratteri estranei all'alfabeto base64.
+         */
+        private void probe(byte[] bytes) throws IOException {
+            if (raw.size() == 0 && bytes.length >= 2 && bytes[0] == 'b' && bytes[1] == '\'') {
+                // come in RuleService#base64Decode il contenuto b'...' è in base64
+                log.debug("Content is a python bytes literal, decoding as base64");
+                mode = Mode.BASE64;
+                decoder.write(bytes, 2, bytes.length - 2);
+                return;
+            }
+            raw.write(bytes);
+            if (!isBase64(bytes)) {
+                log.debug("Content is not base64, decoding postponed after {} bytes", raw.size());
+                mode = Mode.PLAIN;
+                decoded.reset();
+                return;
+            }
+            decoder.write(bytes);
+            if (raw.size() >= PROBE_SIZE) {
+                mode = Mode.BASE64;
+                raw.reset();
+            }
+        }
+
+        CharSequence finish() throws IOException {
+            if (mode != Mode.PLAIN) {
+                decoder.close();
+                if (decoded.isSpilled()) {
+                    return ruleService.checkPageLength(spill(decoded.inputStream()));
+                }
+                return ruleService.checkPageLength(decoded.toString(StandardCharsets.UTF_8));
+            }
+            if (raw.isSpilled()) {
+                final InputStream inputStream = raw.inputStream();
+                // come in RuleService#base64Decode il contenuto b'...' è in base64
+                inputStream.mark(2);
+                if (inputStream.read() == 'b' && inputStream.read() == '\'') {
+                    return ruleService.checkPageLength(spill(new Base64InputStream(inputStream)));
+                }
+                inputStream.reset();
+                return ruleService.checkPageLength(spill(inputStream));
+            }
+            return ruleService.base64Decode(raw.toString(StandardCharsets.UTF_8));
+        }
+
+        private SpilledPage spill(InputStream inputStream) throws IOException {
+            try (inputStream) {
+                return pageSpillService.spill(inputStream);
+            }
+        }
+
+        void release() {
+            try {
+                raw.delete();
+                decoded.delete();
+            } catch (IOException e) {
+                log.warn("Cannot delete spill files", e);
+            }
+        }
+
+        private boolean isBase64(byte[] bytes) {
+            for (byte b : bytes) {
+                if (!Base64.isBase64(b) && !Character.isWhitespace(b)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -17,40 +17,142 @@
 
 package it.cnr.anac.transparency.rules.service;
 
-import it.cnr.anac.transparency.rules.configuration.RuleConfiguration;
+import it.cnr.anac.transparency.rules.configuration.ExecutionProperties;
 import it.cnr.anac.transparency.rules.domain.Anchor;
+import it.cnr.anac.transparency.rules.domain.ExtractionPass;
+import it.cnr.anac.transparency.rules.monitoring.PipelineStage;
+import it.cnr.anac.transparency.rules.monitoring.RuleEvents;
+import it.cnr.anac.transparency.rules.monitoring.RuleMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.text.StringEscapeUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Estrazione degli anchor con l'espressione regolare anchor_regex. Le pagine più grandi della soglia di
+ * {@link RuleExecutor#extractionPool(int)} vengono divise in blocchi, all'inizio di un tag {@code <a}, ed estratte
+ * in parallelo: ogni blocco prosegue oltre il proprio limite per completare l'ultimo anchor e, se un anchor del
+ * blocco precedente invade il successivo, il successivo viene riesaminato dalla fine di quell'anchor. Il risultato
+ * è identico, anche nell'ordine, a quello della scansione sequenziale.
+ */
 @Slf4j
 @Service
 public class RegularExpressionAnchorService implements AnchorService{
     @Autowired
-    RuleConfiguration ruleConfiguration;
+    RuleSnapshotManager ruleSnapshotManager;
+    @Autowired
+    RuleMetrics ruleMetrics;
+    @Autowired
+    RuleExecutor ruleExecutor;
+    @Autowired
+    ExecutionProperties executionProperties;
+
+    /**
+     * Un anchor trovato dall'espressione regolare, con la posizione nella pagina.
+     */
+    private record Match(int start, int end, List<Anchor> anchors) {}
+
     @Override
-    public List<Anchor> find(String content, boolean allTags) {
-        content = content.replaceAll("\\s+", " ");
-        final Pattern patternAnchor = Pattern.compile(ruleConfiguration.getAnchorRegex(), Pattern.CASE_INSENSITIVE);
-        final Pattern patternHref = Pattern.compile(ruleConfiguration.getHrefRegex(), Pattern.CASE_INSENSITIVE);
-        Matcher matcher = patternAnchor.matcher(content);
-        List<Anchor> result = new ArrayList<>();
-        while (matcher.find()) {
+    public List<Anchor> find(CharSequence content, boolean allTags) {
+        final RuleEvents.ExtractionEvent event = new RuleEvents.ExtractionEvent();
+        event.begin();
+        try (RuleMetrics.StageTimer stage = ruleMetrics.stage(PipelineStage.EXTRACTION, ExtractionPass.REGEX)) {
+            final CharSequence collapsed = collapseWhitespace(content);
+            final Optional<ForkJoinPool> pool = ruleExecutor.extractionPool(collapsed.length());
+            final int[] boundaries = pool.isPresent() ?
+                    boundaries(collapsed, (int) executionProperties.getParallelExtraction().getChunkSize().toBytes()) :
+                    new int[]{0, collapsed.length()};
+            final List<Anchor> anchors = boundaries.length > 2 ?
+                    extract(collapsed, boundaries, pool.get()) :
+                    extract(collapsed);
+            ruleMetrics.anchors(ExtractionPass.REGEX, anchors);
+            if (RuleEvents.shouldCommit(event)) {
+                event.pass = ExtractionPass.REGEX.name();
+                event.pageSize = content.length();
+                event.anchors = anchors.size();
+                event.chunks = boundaries.length - 1;
+                event.commit();
+            }
+            return anchors;
+        }
+    }
+
+    private List<Anchor> extract(CharSequence content) {
+        final List<Anchor> result = new ArrayList<>();
+        scan(content, 0, content.length()).forEach(match -> result.addAll(match.anchors()));
+        return result;
+    }
+
+    private List<Anchor> extract(CharSequence content, int[] boundaries, ForkJoinPool pool) {
+        final EvaluationContext context = EvaluationContext.current().orElseGet(() -> EvaluationContext.create(Optional.empty()));
+        final List<ForkJoinTask<List<Match>>> chunks = new ArrayList<>();
+        final List<EvaluationContext> chunkContexts = new ArrayList<>();
+        try {
+            for (int i = 0; i < boundaries.length - 1; i++) {
+                final int from = boundaries[i];
+                final int to = boundaries[i + 1];
+                final EvaluationContext chunkContext = context.fork();
+                chunkContexts.add(chunkContext);
+                chunks.add(pool.submit(() -> {
+                    try (EvaluationContext.Scope scope = chunkContext.attach()) {
+                        return scan(content, from, to);
+                    }
+                }));
+            }
+            final List<Anchor> result = new ArrayList<>();
+            int position = 0;
+            for (int i = 0; i < chunks.size(); i++) {
+                List<Match> matches = chunks.get(i).join();
+                if (position > boundaries[i]) {
+                    log.debug("Anchor ending at {} crosses chunk boundary {}, rescanning chunk", position, boundaries[i]);
+                    matches = scan(content, position, boundaries[i + 1]);
+                }
+                for (Match match : matches) {
+                    result.addAll(match.anchors());
+                    position = match.end();
+                }
+            }
+            return result;
+        } finally {
+            chunkContexts.forEach(EvaluationContext::cancel);
+            chunks.forEach(chunk -> chunk.cancel(true));
+        }
+    }
+
+    /**
+     * Gli anchor che iniziano tra from e to, cercati come nella scansione sequenziale che riprende da from:
+     * l'ultimo anchor può terminare oltre to.
+     */
+    private List<Match> scan(CharSequence content, int from, int to) {
+        final RuleSnapshot snapshot = ruleSnapshotManager.current();
+        final Pattern patternAnchor = snapshot.getAnchorPattern();
+        final Pattern patternHref = snapshot.getHrefPattern();
+        Matcher matcher = patternAnchor.matcher(DeadlineCharSequence.wrap(content))
+                .region(from, content.length())
+                .useTransparentBounds(true)
+                .useAnchoringBounds(false);
+        List<Match> result = new ArrayList<>();
+        while (matcher.find() && matcher.start() < to) {
+            EvaluationContext.checkDeadline();
+            final List<Anchor> anchors = new ArrayList<>(2);
             final String attributes = matcher.group(1);
             final Matcher matcherHref = patternHref.matcher(attributes);
             matcherHref.find();
             try {
                 final String href = matcherHref.group(HREF);
                 final String text = matcher.group(TEXT);
-                result.add(Anchor.newInstance(href, StringEscapeUtils.unescapeHtml4(text), "text"));
-                result.add(Anchor.newInstance(
+                anchors.add(Anchor.newInstance(href, StringEscapeUtils.unescapeHtml4(text), "text"));
+                anchors.add(Anchor.newInstance(
                         href,
                         Optional.ofNullable(StringEscapeUtils.unescapeHtml4(
                                 text.replaceAll("\\<[^>]*>","")
@@ -61,7 +163,51 @@ public class RegularExpressionAnchorService implements AnchorService{
             } catch (IllegalStateException _ex) {
                 log.debug("No match found in attributes: {}", attributes);
             }
+            result.add(new Match(matcher.start(), matcher.end(), anchors));
         }
         return result;
     }
+
+    /**
+     * I limiti dei blocchi: ogni blocco, di circa chunkSize caratteri, inizia con un tag {@code <a}
+     * seguito da uno spazio, così che di norma nessun anchor sia diviso tra due blocchi.
+     */
+    static int[] boundaries(CharSequence content, int chunkSize) {
+        final List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+        int position = chunkSize;
+        while (position < content.length()) {
+            final int limit = Math.min(content.length() - 2, position + chunkSize);
+            int boundary = -1;
+            for (int i = position; i < limit; i++) {
+                if (content.charAt(i) == '<' && Character.toLowerCase(content.charAt(i + 1)) == 'a' &&
+                        Character.isWhitespace(content.charAt(i + 2))) {
+                    boundary = i;
+                    break;
+                }
+            }
+            if (boundary < 0) {
+                position += chunkSize;
+                continue;
+            }
+            boundaries.add(boundary);
+            position = boundary + chunkSize;
+        }
+        boundaries.add(content.length());
+        return boundaries.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Sostituisce le sequenze di spazi con un solo spazio, le pagine riversate su file restano fuori dallo heap.
+     */
+    private CharSequence collapseWhitespace(CharSequence content) {
+        if (content instanceof SpilledPage page) {
+            try {
+                return page.collapseWhitespace();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return content.toString().replaceAll("\\s+", " ");
+    }
 }
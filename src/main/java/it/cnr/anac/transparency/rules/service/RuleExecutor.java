@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+import it.cnr.anac.transparency.rules.configuration.ExecutionProperties;
+import it.cnr.anac.transparency.rules.exception.RuleOverloadException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Esegue le fasi CPU-bound (estrazione, indicizzazione e ricerca) su un pool di thread di dimensione
+ * fissa con coda limitata. Negli endpoint sincroni la decodifica del contenuto avviene sul thread
+ * della richiesta, prima dell'accodamento, perché la dimensione decodificata determina la corsia del task. Quando la coda è piena la richiesta viene rifiutata con
+ * {@link RuleOverloadException}, trasformando il sovraccarico in back-pressure verso il client.
+ * Se il pool non è abilitato i task vengono eseguiti sul thread chiamante.
+ */
+@Slf4j
+@Service
+public class RuleExecutor {
+    private final ExecutionProperties executionProperties;
+    private final SchedulingLanes schedulingLanes;
+    private final ThreadPoolExecutor executorService;
+    private final ThreadPoolExecutor hedgeExecutorService;
+    private final Semaphore hedgeSlots;
+    private final ExecutorService siteExecutorService =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rule-site-", 0).factory());
+    private final ExecutorService streamExecutorService =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rule-stream-", 0).factory());
+    private final ForkJoinPool extractionPool;
+    private final ExecutorService indexingPool;
+
+    @FunctionalInterface
+    public interface RuleTask<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    @Autowired
+    public RuleExecutor(ExecutionProperties executionProperties, SchedulingLanes schedulingLanes) {
+        this.executionProperties = executionProperties;
+        this.schedulingLanes = schedulingLanes;
+        this.executorService = executionProperties.isEnabled() ?
+                new ThreadPoolExecutor(
+                        executionProperties.getPoolSize(),
+                        executionProperties.getPoolSize(),
+                        0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(executionProperties.getQueueCapacity()),
+                        Thread.ofPlatform().name("rule-cpu-", 0).daemon(true).factory(),
+                        new ThreadPoolExecutor.AbortPolicy()) : null;
+        final int hedgePoolSize = executionProperties.isEnabled() ?
+                executionProperties.getPoolSize() : Runtime.getRuntime().availableProcessors();
+        this.hedgeExecutorService = new ThreadPoolExecutor(hedgePoolSize, hedgePoolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(hedgePoolSize),
+                Thread.ofPlatform().name("rule-hedge-", 0).daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.hedgeSlots = new Semaphore(hedgePoolSize);
+        this.extractionPool = executionProperties.getParallelExtraction().isEnabled() ?
+                new ForkJoinPool(executionProperties.getParallelExtraction().getParallelism(), pool -> {
+                    final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("rule-extraction-" + thread.getPoolIndex());
+                    return thread;
+                }, null, false) : null;
+        this.indexingPool = executionProperties.getParallelIndexing().isEnabled() ?
+                Executors.newFixedThreadPool(executionProperties.getParallelIndexing().getPartitions(),
+                        Thread.ofPlatform().name("rule-indexing-", 0).daemon(true).factory()) : null;
+    }
+
+    /**
+     * Scadenza della richiesta: l'header, se presente, ha precedenza sulla configurazione.
+     */
+    public Optional<Duration> deadline(Optional<Long> deadlineMillis) {
+        return deadlineMillis
+                .map(Duration::ofMillis)
+                .or(() -> Optional.ofNullable(executionProperties.getDeadline()));
+    }
+
+    public Optional<ExecutorService> getExecutorService() {
+        return Optional.ofNullable(executorService);
+    }
+
+    /**
+     * Esecuzione dei rami concorrenti di una singola valutazione. Usa un pool dedicato con lo stesso numero di thread
+     * del pool delle fasi CPU-bound, così che un task del pool non resti in attesa di altri task in coda sullo stesso
+     * pool. I posti del pool e un posto aggiuntivo nella corsia della valutazione vengono riservati, senza attesa,
+     * per tutti i rami: se non sono disponibili il risultato è vuoto e la valutazione procede con la catena sequenziale,
+     * invece di eseguire i rami uno dopo l'altro sul thread chiamante.
+     *
+     * @param branches il numero di rami che verranno sottomessi al CompletionService restituito
+     */
+    public <T> Optional<CompletionService<T>> hedgeCompletionService(int branches) {
+        if (!hedgeSlots.tryAcquire(branches)) {
+            log.debug("Hedge executor is saturated, branches not executed in parallel");
+            return Optional.empty();
+        }
+        final Queue<SchedulingLanes.Permit> permits = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < branches; i++) {
+            final Optional<SchedulingLanes.Permit> permit = schedulingLanes.tryAcquireBranch();
+            if (permit.isEmpty()) {
+                permits.forEach(SchedulingLanes.Permit::close);
+                hedgeSlots.release(branches);
+                return Optional.empty();
+            }
+            permits.add(permit.get());
+        }
+        return Optional.of(new ExecutorCompletionService<>(branch -> {
+            final SchedulingLanes.Permit permit = permits.remove();
+            hedgeExecutorService.execute(() -> {
+                try (SchedulingLanes.Permit branchPermit = permit) {
+                    branch.run();
+                } finally {
+                    hedgeSlots.release();
+                }
+            });
+        }));
+    }
+
+    /**
+     * Esecuzione delle pagine di una valutazione di sito. Anche in questo caso thread virtuali dedicati:
+     * ogni pagina attende sul proprio thread le fasi CPU-bound eseguite con {@link #execute(long, RuleTask)}.
+     */
+    public Executor siteExecutor() {
+        return siteExecutorService;
+    }
+
+    /**
+     * Esecuzione delle pagine ricevute in streaming via gRPC, fuori dai thread del server gRPC: ogni pagina attende
+     * sul proprio thread virtuale le fasi CPU-bound, il numero di pagine per stream è limitato da {@code grpc.max_pending_pages}.
+     */
+    public Executor streamExecutor() {
+        return streamExecutorService;
+    }
+
+    /**
+     * Pool fork-join dell'estrazione a blocchi delle pagine più grandi di
+     * {@link ExecutionProperties.ParallelExtraction#getThreshold()}, vuoto se non abilitata o se la pagina è più piccola.
+     */
+    public Optional<ForkJoinPool> extractionPool(int length) {
+        return Optional.ofNullable(extractionPool)
+                .filter(pool -> length >= executionProperties.getParallelExtraction().getThreshold().toBytes());
+    }
+
+    /**
+     * Pool della costruzione a partizioni dell'indice per gli elenchi con almeno
+     * {@link ExecutionProperties.ParallelIndexing#getThreshold()} anchor, vuoto se non abilitata o se gli anchor sono meno.
+     */
+    public Optional<ExecutorService> indexingPool(int anchors) {
+        return Optional.ofNullable(indexingPool)
+                .filter(pool -> anchors >= executionProperties.getParallelIndexing().getThreshold());
+    }
+
+    public int getIndexingPartitions() {
+        return executionProperties.getParallelIndexing().getPartitions();
+    }
+
+    /**
+     * Esegue il task nella corsia assegnata in base alla dimensione del contenuto decodificato; il posto nella corsia
+     * viene associato al contesto della valutazione, che lo riclassifica dopo l'estrazione.
+     */
+    public <T, E extends Exception> T execute(long decodedLength, RuleTask<T, E> task) throws E {
+        try (SchedulingLanes.Permit permit = schedulingLanes.acquire(decodedLength)) {
+            EvaluationContext.current().ifPresent(context -> context.setLanePermit(permit));
+            return execute(task);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T, E extends Exception> T execute(RuleTask<T, E> task) throws E {
+        if (executorService == null) {
+            return task.call();
+        }
+        final Future<T> future;
+        try {
+            final Optional<EvaluationContext> context = EvaluationContext.current();
+            future = executorService.submit(() -> {
+                if (context.isEmpty()) {
+                    return task.call();
+                }
+                try (EvaluationContext.Scope scope = EvaluationContext.attach(context.get())) {
+                    return task.call();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Rule executor queue is full ({} pending), request rejected", executorService.getQueue().size());
+            throw new RuleOverloadException(executionProperties.getRetryAfter());
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw (E) cause;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Optional.ofNullable(executorService).ifPresent(ExecutorService::shutdownNow);
+        hedgeExecutorService.shutdownNow();
+        siteExecutorService.shutdownNow();
+        streamExecutorService.shutdownNow();
+        Optional.ofNullable(extractionPool).ifPresent(ExecutorService::shutdownNow);
+        Optional.ofNullable(indexingPool).ifPresent(ExecutorService::shutdownNow);
+    }
+}
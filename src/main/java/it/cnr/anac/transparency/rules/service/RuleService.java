@@ -17,20 +17,25 @@
 
 package it.cnr.anac.transparency.rules.service;
 
-import it.cnr.anac.transparency.rules.configuration.RuleConfiguration;
 import it.cnr.anac.transparency.rules.domain.Anchor;
+import it.cnr.anac.transparency.rules.domain.CompiledRuleTree;
+import it.cnr.anac.transparency.rules.domain.EvaluationOptions;
+import it.cnr.anac.transparency.rules.domain.ExtractionPass;
 import it.cnr.anac.transparency.rules.domain.Rule;
 import it.cnr.anac.transparency.rules.domain.RuleResponse;
+import it.cnr.anac.transparency.rules.domain.RuleTreeResponse;
 import it.cnr.anac.transparency.rules.domain.Term;
+import it.cnr.anac.transparency.rules.exception.RuleDeadlineExceededException;
 import it.cnr.anac.transparency.rules.exception.RuleException;
 import it.cnr.anac.transparency.rules.exception.RuleNotFoundException;
-import it.cnr.anac.transparency.rules.search.CustomTokenizer;
-import it.cnr.anac.transparency.rules.search.CustomTokenizerAnalyzer;
+import it.cnr.anac.transparency.rules.monitoring.PipelineStage;
+import it.cnr.anac.transparency.rules.monitoring.RuleEvents;
+import it.cnr.anac.transparency.rules.monitoring.RuleMetrics;
 import it.cnr.anac.transparency.rules.search.LuceneResult;
 import it.cnr.anac.transparency.rules.search.LuceneSearch;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -38,7 +43,12 @@ import org.springframework.stereotype.Service;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.apache.commons.codec.binary.Base64;
 
@@ -46,108 +56,617 @@ import org.apache.commons.codec.binary.Base64;
 @Slf4j
 public class RuleService {
     @Autowired
-    RuleConfiguration ruleConfiguration;
+    RuleSnapshotManager ruleSnapshotManager;
     @Autowired
     RegularExpressionAnchorService regularExpressionAnchorService;
     @Autowired
     JsoupAnchorService jsoupAnchorService;
+    @Autowired
+    ExtractorStatistics extractorStatistics;
+    @Autowired
+    RuleExecutor ruleExecutor;
+    @Autowired
+    SchedulingLanes schedulingLanes;
+    @Autowired
+    RuleMetrics ruleMetrics;
+    @Autowired
+    ShadowExecutionService shadowExecutionService;
+    @Autowired
+    PageSpillService pageSpillService;
 
     public String base64Decode(String content) {
-        if (Base64.isBase64(content)) {
-            content = new String(Base64.decodeBase64(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
-        } else if (content.contains("b'")) {
-            content = new String(Base64.decodeBase64(content.replace("b'", "").getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
-        }
-        final int length = content.getBytes(StandardCharsets.UTF_8).length;
-        if (length > ruleConfiguration.getMaxLengthPageByte()) {
-            log.warn("The content length {} is greater than max {}", length, ruleConfiguration.getMaxLengthPageByte());
-            throw new RuleNotFoundException();
+        final RuleEvents.DecodeEvent event = new RuleEvents.DecodeEvent();
+        event.begin();
+        final int encodedSize = content.length();
+        try (RuleMetrics.StageTimer stage = ruleMetrics.stage(PipelineStage.DECODE)) {
+            if (Base64.isBase64(content)) {
+                content = new String(Base64.decodeBase64(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+            } else if (content.contains("b'")) {
+                content = new String(Base64.decodeBase64(content.replace("b'", "").getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+            }
         }
+        if (RuleEvents.shouldCommit(event)) {
+            event.encodedSize = encodedSize;
+            event.pageSize = content.length();
+            event.commit();
+        }
+        return checkPageLength(content);
+    }
+
+    /**
+     * Decodifica il contenuto come {@link #base64Decode(String)}. Le pagine in base64 più grandi della soglia di
+     * {@link PageSpillService} vengono decodificate direttamente su file, senza creare la pagina sullo heap.
+     */
+    public CharSequence decode(String content) throws IOException {
+        if (!pageSpillService.exceeds(content.length() / 4L * 3L) || !PageSpillService.isBase64(content)) {
+            return base64Decode(content);
+        }
+        final RuleEvents.DecodeEvent event = new RuleEvents.DecodeEvent();
+        event.begin();
+        final SpilledPage page;
+        try (RuleMetrics.StageTimer stage = ruleMetrics.stage(PipelineStage.DECODE)) {
+            page = pageSpillService.spillBase64(content);
+        }
+        if (RuleEvents.shouldCommit(event)) {
+            event.encodedSize = content.length();
+            event.pageSize = page.length();
+            event.commit();
+        }
+        log.debug("Page of {} bytes spilled to file", page.getUtf8Length());
+        return checkPageLength(page);
+    }
+
+    public String checkPageLength(String content) {
+        checkPageLength(content.getBytes(StandardCharsets.UTF_8).length);
         return content;
     }
 
-    private Analyzer createCustomAnalyzer() {
-        return new CustomTokenizerAnalyzer(new CustomTokenizer(ruleConfiguration.getSearchTokens()));
+    public SpilledPage checkPageLength(SpilledPage page) {
+        checkPageLength(page.getUtf8Length());
+        return page;
+    }
+
+    private void checkPageLength(long length) {
+        final Integer maxLengthPageByte = ruleSnapshotManager.current().getConfiguration().getMaxLengthPageByte();
+        ruleMetrics.pageSize(length);
+        if (length > maxLengthPageByte) {
+            log.warn("The content length {} is greater than max {}", length, maxLengthPageByte);
+            ruleMetrics.rejectedPage();
+            throw new RuleNotFoundException();
+        }
+    }
+
+    /**
+     * Dimensione in byte UTF-8 del contenuto, calcolata senza codificarlo.
+     */
+    static long utf8Length(CharSequence content) {
+        if (content instanceof SpilledPage page) {
+            return page.getUtf8Length();
+        }
+        long length = 0;
+        for (int i = 0; i < content.length(); i++) {
+            final char c = content.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < content.length() && Character.isLowSurrogate(content.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
     }
 
     public LuceneSearch createLuceneSearch(List<Anchor> anchors) throws IOException {
-        return new LuceneSearch(anchors, createCustomAnalyzer(), ruleConfiguration.getMaxLengthContent());
+        return createLuceneSearch(anchors, null, false);
+    }
+
+    public LuceneSearch createIncrementalLuceneSearch(List<Anchor> anchors) throws IOException {
+        return createLuceneSearch(anchors, null, true);
+    }
+
+    private LuceneSearch createLuceneSearch(List<Anchor> anchors, ExtractionPass pass, boolean incremental) throws IOException {
+        final RuleSnapshot snapshot = ruleSnapshotManager.current();
+        final RuleEvents.IndexingEvent event = new RuleEvents.IndexingEvent();
+        event.begin();
+        final LuceneSearch luceneSearch;
+        try (RuleMetrics.StageTimer stage = ruleMetrics.stage(PipelineStage.INDEXING, pass)) {
+            final Optional<ExecutorService> indexingPool = incremental ? Optional.empty() : ruleExecutor.indexingPool(anchors.size());
+            luceneSearch = new LuceneSearch(anchors, snapshot.getAnalyzer(), snapshot.getConfiguration().getMaxLengthContent(), incremental,
+                    indexingPool.orElse(null), ruleExecutor.getIndexingPartitions());
+        }
+        if (RuleEvents.shouldCommit(event)) {
+            event.pass = pass == null ? null : pass.name();
+            event.anchors = anchors.size();
+            event.documents = luceneSearch.getDocuments();
+            event.droppedAnchors = luceneSearch.getDroppedAnchors();
+            event.partitions = luceneSearch.getPartitions();
+            event.commit();
+        }
+        final EvaluationDiagnostics diagnostics = EvaluationContext.diagnostics();
+        if (diagnostics != null) {
+            diagnostics.indexed(luceneSearch.getDocuments(), luceneSearch.getDroppedAnchors());
+        }
+        return luceneSearch;
+    }
+
+    /**
+     * Aggiunge all'indice incrementale gli anchor di un ulteriore passaggio di estrazione.
+     */
+    public void addAnchors(LuceneSearch luceneSearch, List<Anchor> anchors, ExtractionPass pass) throws IOException {
+        final int documents = luceneSearch.getDocuments();
+        final int droppedAnchors = luceneSearch.getDroppedAnchors();
+        final RuleEvents.IndexingEvent event = new RuleEvents.IndexingEvent();
+        event.begin();
+        try (RuleMetrics.StageTimer stage = ruleMetrics.stage(PipelineStage.INDEXING, pass)) {
+            luceneSearch.addAnchors(anchors);
+        }
+        if (RuleEvents.shouldCommit(event)) {
+            event.pass = pass.name();
+            event.anchors = anchors.size();
+            event.documents = luceneSearch.getDocuments() - documents;
+            event.droppedAnchors = luceneSearch.getDroppedAnchors() - droppedAnchors;
+            event.commit();
+        }
+        final EvaluationDiagnostics diagnostics = EvaluationContext.diagnostics();
+        if (diagnostics != null) {
+            diagnostics.indexed(luceneSearch.getDocuments() - documents, luceneSearch.getDroppedAnchors() - droppedAnchors);
+        }
     }
 
     public RuleResponse executeRule(Optional<String> rootRule, Optional<String> ruleName, List<Anchor> anchors) throws RuleNotFoundException, IOException {
-        final Rule rule = Optional.ofNullable(ruleConfiguration.getRule(rootRule, ruleName))
-                .orElseGet(() -> ruleConfiguration.getRootRule());
         log.debug("Founded {} anchor in content for rule {}", anchors.size(), ruleName.orElse("empty"));
-        LuceneSearch luceneSearch = createLuceneSearch(anchors);
+        try (LuceneSearch luceneSearch = createLuceneSearch(anchors)) {
+            return executeRule(luceneSearch, rootRule, ruleName);
+        }
+    }
+
+    /**
+     * Applica la regola all'indice indicato.
+     */
+    public RuleResponse executeRule(LuceneSearch luceneSearch, Optional<String> rootRule, Optional<String> ruleName) throws RuleNotFoundException {
+        final CompiledRuleTree ruleTree = ruleSnapshotManager.current().getRuleTree();
+        final Rule rule = ruleTree.rule(ruleTree.resolveOrDefault(rootRule, ruleName));
         return findTermInValues(luceneSearch, ruleName, rule, Boolean.TRUE);
     }
 
-    public RuleResponse executeRule(String content, Optional<String> rootRule, Optional<String> ruleName) throws RuleNotFoundException, IOException, RuleException {
+    public RuleResponse executeRule(CharSequence content, Optional<String> rootRule, Optional<String> ruleName) throws RuleNotFoundException, IOException, RuleException {
         try {
-            return executeRule(rootRule, ruleName, regularExpressionAnchorService.find(content, Boolean.FALSE));
+            return executeRule(rootRule, ruleName, anchorsWithRegularExpression(content));
         } catch (RuleNotFoundException _ex) {
+            ruleMetrics.fallback(ExtractionPass.JSOUP_ANCHORS);
             return executeRuleAlternative(content, rootRule, ruleName);
         }
     }
 
-    public RuleResponse executeRuleAlternative(String content, Optional<String> rootRule, Optional<String> ruleName) throws RuleNotFoundException, IOException, RuleException {
+    public RuleResponse executeRuleAlternative(CharSequence content, Optional<String> rootRule, Optional<String> ruleName) throws RuleNotFoundException, IOException, RuleException {
         return executeRule(rootRule, ruleName, anchorsWidthJsoup(content, Boolean.FALSE));
     }
 
+    /**
+     * Il percorso della regola padre, dalla regola root, separato da punti.
+     */
+    private String parentRule(Optional<String> rootRule, Optional<String> ruleName) throws RuleNotFoundException {
+        final CompiledRuleTree ruleTree = ruleSnapshotManager.current().getRuleTree();
+        final Deque<String> path = new ArrayDeque<>();
+        for (int id = ruleTree.resolveOrDefault(rootRule, ruleName); id != CompiledRuleTree.NO_RULE; id = ruleTree.parent(id)) {
+            path.addFirst(ruleTree.name(id));
+        }
+        return String.join(".", path);
+    }
+
     public Map<String, Rule> childRules(Optional<String> rootRule, Optional<String> ruleName) {
-        return Optional.ofNullable(Optional.ofNullable(ruleConfiguration.getRule(rootRule, ruleName))
-                .orElseGet(() -> ruleConfiguration.getRootRule())
-                .getChilds()).orElse(Collections.emptyMap());
+        final CompiledRuleTree ruleTree = ruleSnapshotManager.current().getRuleTree();
+        return ruleTree.childRules(ruleTree.resolveOrDefault(rootRule, ruleName));
     }
 
-    public List<RuleResponse> executeChildRule(String content, Optional<String> rootRule, Optional<String> ruleName, List<Anchor> anchors, List<RuleResponse> rulesFound) throws RuleNotFoundException, IOException {
-        final Map<String, Rule> childs = Optional.ofNullable(childRules(rootRule, ruleName)).orElse(Collections.emptyMap());
+    public List<RuleResponse> executeChildRule(CharSequence content, Optional<String> rootRule, Optional<String> ruleName, List<Anchor> anchors, List<RuleResponse> rulesFound) throws RuleNotFoundException, IOException {
         log.debug("Founded {} anchor in content for rule {}", anchors.size(), ruleName.orElse("empty"));
-        LuceneSearch luceneSearch = createLuceneSearch(anchors);
-        return childs.entrySet()
-                .stream()
-                .map(entry -> {
+        try (LuceneSearch luceneSearch = createLuceneSearch(anchors)) {
+            return executeChildRule(luceneSearch, rootRule, ruleName, rulesFound);
+        }
+    }
+
+    /**
+     * Applica le regole figlie non ancora risolte all'indice indicato.
+     */
+    public List<RuleResponse> executeChildRule(LuceneSearch luceneSearch, Optional<String> rootRule, Optional<String> ruleName, List<RuleResponse> rulesFound) throws RuleNotFoundException {
+        final CompiledRuleTree ruleTree = ruleSnapshotManager.current().getRuleTree();
+        final int parent = ruleTree.resolveOrDefault(rootRule, ruleName);
+        return IntStream.range(0, ruleTree.childCount(parent))
+                .map(index -> ruleTree.child(parent, index))
+                .mapToObj(child -> {
+                    final String childName = ruleTree.name(child);
                     final Optional<RuleResponse> ruleResponseFound = rulesFound.stream()
-                            .filter(ruleResponse -> ruleResponse.getRuleName().equalsIgnoreCase(entry.getKey()))
+                            .filter(ruleResponse -> ruleResponse.getRuleName().equalsIgnoreCase(childName))
                             .findAny();
                     if (ruleResponseFound.isPresent()) {
                         return ruleResponseFound.get();
                     }
+                    if (EvaluationContext.deadlineExpired()) {
+                        return timeoutResponse(childName, ruleTree.rule(child));
+                    }
+                    final RuleEvents.ChildRuleEvent event = new RuleEvents.ChildRuleEvent();
+                    event.begin();
+                    RuleResponse ruleResponse;
                     try {
-                        return findTermInValues(luceneSearch, Optional.of(entry.getKey()), entry.getValue(), Boolean.FALSE);
+                        ruleResponse = findTermInValues(luceneSearch, Optional.of(childName), ruleTree.rule(child), Boolean.FALSE);
                     } catch (RuleNotFoundException _ex) {
-                        return new RuleResponse(
-                                null,
-                                entry.getKey(),
-                                String.join(",", ruleConfiguration
-                                        .getRule(rootRule, Optional.of(entry.getKey()))
-                                        .getTerm()
-                                        .stream()
-                                        .map(Term::getKey)
-                                        .collect(Collectors.toList())),
-                                null,
-                                null,
-                                Optional.ofNullable(entry.getValue().getChilds()).map(c -> c.isEmpty()).orElse(Boolean.TRUE),
-                                HttpStatus.NOT_FOUND,
-                                null
-                        );
+                        ruleResponse = ruleTree.notFound(child);
                     }
+                    if (RuleEvents.shouldCommit(event)) {
+                        event.ruleName = childName;
+                        event.status = ruleResponse.getStatus().value();
+                        event.commit();
+                    }
+                    return ruleResponse;
                 })
                 .collect(Collectors.toList());
     }
 
-    public List<RuleResponse> executeChildRule(String content, Optional<String> rootRule, Optional<String> ruleName) throws RuleNotFoundException, IOException {
-        return executeChildRule(content, rootRule, ruleName, regularExpressionAnchorService.find(content, Boolean.FALSE), Collections.emptyList());
+    public List<RuleResponse> executeChildRule(CharSequence content, Optional<String> rootRule, Optional<String> ruleName) throws RuleNotFoundException, IOException {
+        return executeChildRule(content, rootRule, ruleName, anchorsWithRegularExpression(content), Collections.emptyList());
     }
 
-    public List<RuleResponse> executeChildRuleAlternative(String content, Optional<String> rootRule, Optional<String> ruleName, List<RuleResponse> rulesFound, boolean allTags) throws RuleNotFoundException, IOException {
+    public List<RuleResponse> executeChildRuleAlternative(CharSequence content, Optional<String> rootRule, Optional<String> ruleName, List<RuleResponse> rulesFound, boolean allTags) throws RuleNotFoundException, IOException {
         return executeChildRule(content, rootRule, ruleName, anchorsWidthJsoup(content, allTags), rulesFound);
     }
 
+    /**
+     * Applica le regole figlie con la catena di fallback regex -> jsoup anchors -> jsoup allTags,
+     * fermandosi al primo passaggio che risolve tutte le regole.
+     * Il primo passaggio è scelto in base agli esiti precedenti per lo stesso host o fingerprint,
+     * {@link EvaluationOptions#isForceJsoup()} ha comunque la precedenza.
+     * Con {@link EvaluationOptions#isHedged()} il passaggio regex e il primo passaggio jsoup vengono eseguiti in parallelo,
+     * se {@link RuleExecutor#hedgeCompletionService(int)} ha posti liberi per entrambi.
+     * Un campione delle valutazioni viene ripetuto in modo asincrono da {@link ShadowExecutionService}.
+     */
+    public List<RuleResponse> executeChildRuleWithFallback(CharSequence content, Optional<String> rootRule, Optional<String> ruleName, EvaluationOptions options) throws RuleNotFoundException, IOException {
+        if (!shadowExecutionService.isEnabled()) {
+            return evaluateChildRuleWithFallback(content, rootRule, ruleName, options);
+        }
+        final long start = System.nanoTime();
+        final List<RuleResponse> ruleResponses = evaluateChildRuleWithFallback(content, rootRule, ruleName, options);
+        shadowExecutionService.offer(content, rootRule, ruleName, options, ruleResponses, System.nanoTime() - start);
+        return ruleResponses;
+    }
+
+    /**
+     * Come {@link #executeChildRuleWithFallback(CharSequence, Optional, Optional, EvaluationOptions)} ma senza
+     * campionare la valutazione per {@link ShadowExecutionService}, ad esempio durante il warm up delle regole.
+     */
+    List<RuleResponse> evaluateChildRuleWithFallback(CharSequence content, Optional<String> rootRule, Optional<String> ruleName, EvaluationOptions options) throws RuleNotFoundException, IOException {
+        final int childsSize = childRules(rootRule, ruleName).size();
+        final Optional<String> statisticsKey = extractorStatistics.key(options.getUrl(), content, parentRule(rootRule, ruleName));
+        final ExtractionPass startPass = options.isForceJsoup() ?
+                ExtractionPass.JSOUP_ANCHORS : extractorStatistics.startPass(statisticsKey, options.isEvaluateAnchorsFirst());
+        if (!options.isForceJsoup() && extractorStatistics.explore(statisticsKey, startPass)) {
+            shadowExecutionService.explore(content, rootRule, ruleName, options);
+        }
+        final boolean regularExpression = startPass == ExtractionPass.REGEX &&
+                utf8Length(content) < ruleSnapshotManager.current().getConfiguration().getMaxLengthContentRegularExpression();
+        if (options.isHedged() && regularExpression) {
+            final Optional<CompletionService<HedgedBranch>> completionService = ruleExecutor.hedgeCompletionService(2);
+            if (completionService.isPresent()) {
+                return executeChildRuleHedged(content, rootRule, ruleName, options, statisticsKey, completionService.get());
+            }
+            log.debug("No parallel slot for hedged evaluation of childs of rule {}, using the sequential chain", ruleName.orElse("empty"));
+        }
+        List<RuleResponse> ruleResponses = Collections.emptyList();
+        List<RuleResponse> rulesFound = Collections.emptyList();
+        LuceneSearch luceneSearch = null;
+        try {
+            if (regularExpression) {
+                try (RuleMetrics.StageTimer stage = ruleMetrics.stage(PipelineStage.PASS, ExtractionPass.REGEX)) {
+                    luceneSearch = passLuceneSearch(luceneSearch, anchorsWithRegularExpression(content), ExtractionPass.REGEX, options);
+                    ruleResponses = executeChildRule(luceneSearch, rootRule, ruleName, rulesFound);
+                }
+                rulesFound = rulesFound(ruleResponses);
+                extractorStatistics.record(statisticsKey, ExtractionPass.REGEX, rulesFound.size() == childsSize);
+            }
+            if (rulesFound.size() != childsSize) {
+                if (options.isEvaluateAnchorsFirst() && startPass != ExtractionPass.JSOUP_ALL_TAGS) {
+                    if (luceneSearch != null) {
+                        ruleMetrics.fallback(ExtractionPass.JSOUP_ANCHORS);
+                    }
+                    try (RuleMetrics.StageTimer stage = ruleMetrics.stage(PipelineStage.PASS, ExtractionPass.JSOUP_ANCHORS)) {
+                        luceneSearch = passLuceneSearch(luceneSearch, anchorsWidthJsoup(content, Boolean.FALSE), ExtractionPass.JSOUP_ANCHORS, options);
+                        ruleResponses = executeChildRule(luceneSearch, rootRule, ruleName, rulesFound);
+                    }
+                    rulesFound = rulesFound(ruleResponses);
+                    extractorStatistics.record(statisticsKey, ExtractionPass.JSOUP_ANCHORS, rulesFound.size() == childsSize);
+                }
+                if (rulesFound.size() != childsSize) {
+                    if (luceneSearch != null) {
+                        ruleMetrics.fallback(ExtractionPass.JSOUP_ALL_TAGS);
+                    }
+                    try (RuleMetrics.StageTimer stage = ruleMetrics.stage(PipelineStage.PASS, ExtractionPass.JSOUP_ALL_TAGS)) {
+                        luceneSearch = passLuceneSearch(luceneSearch, anchorsWidthJsoup(content, Boolean.TRUE), ExtractionPass.JSOUP_ALL_TAGS, options);
+                        ruleResponses = executeChildRule(luceneSearch, rootRule, ruleName, rulesFound);
+                    }
+                    extractorStatistics.record(statisticsKey, ExtractionPass.JSOUP_ALL_TAGS, rulesFound(ruleResponses).size() == childsSize);
+                }
+            }
+            return ruleResponses;
+        } catch (RuleDeadlineExceededException _ex) {
+            log.warn("Deadline exceeded for childs of rule {}, {} of {} rules resolved", ruleName.orElse("empty"), rulesFound.size(), childsSize);
+            return partialChildRule(rootRule, ruleName, ruleResponses);
+        } finally {
+            if (luceneSearch != null) {
+                luceneSearch.close();
+            }
+        }
+    }
+
+    /**
+     * Valuta più regole con una sola estrazione degli anchor e un solo indice. Se ruleNames è valorizzato
+     * vengono valutate le regole indicate, annidate secondo la gerarchia delle regole quando una è discendente
+     * di un'altra; altrimenti viene valutata la regola ruleName (o la root) con i discendenti fino a depth livelli.
+     * Le regole al primo livello della risposta sono valutate come in {@link #executeRule(String, Optional, Optional)},
+     * le discendenti come in {@link #executeChildRule(LuceneSearch, Optional, Optional, List)}.
+     */
+    public Map<String, RuleTreeResponse> executeRuleTree(CharSequence content, Optional<String> rootRule, Optional<String> ruleName,
+                                                         List<String> ruleNames, int depth, boolean forceJsoup) throws RuleNotFoundException, IOException {
+        final RuleSnapshot snapshot = ruleSnapshotManager.current();
+        final CompiledRuleTree ruleTree = snapshot.getRuleTree();
+        final BitSet selected = new BitSet(ruleTree.size());
+        if (ruleNames.isEmpty()) {
+            selectSubtree(ruleTree, ruleTree.resolveOrDefault(rootRule, ruleName), Math.max(depth, 0), selected);
+        } else {
+            ruleNames.forEach(name -> {
+                final int id = ruleTree.resolve(rootRule, Optional.of(name));
+                if (id == CompiledRuleTree.NO_RULE) {
+                    throw new RuleNotFoundException();
+                }
+                selected.set(id);
+            });
+        }
+        final boolean regularExpression = !forceJsoup &&
+                utf8Length(content) < snapshot.getConfiguration().getMaxLengthContentRegularExpression();
+        final List<Anchor> anchors = regularExpression ?
+                anchorsWithRegularExpression(content) : anchorsWidthJsoup(content, Boolean.FALSE);
+        log.debug("Founded {} anchor in content for {} rules", anchors.size(), selected.cardinality());
+        final Map<String, RuleTreeResponse> roots = new LinkedHashMap<>();
+        final Map<Integer, RuleTreeResponse> responses = new HashMap<>();
+        try (LuceneSearch luceneSearch = createLuceneSearch(anchors)) {
+            selected.stream().forEach(id -> {
+                final int ancestor = selectedAncestor(ruleTree, id, selected);
+                final Optional<String> name = Optional.of(ruleTree.name(id));
+                final RuleResponse ruleResponse;
+                if (EvaluationContext.deadlineExpired()) {
+                    ruleResponse = timeoutResponse(name.get(), ruleTree.rule(id));
+                } else {
+                    ruleResponse = findTermInValuesOrNotFound(luceneSearch, name, ruleTree, id, ancestor == CompiledRuleTree.NO_RULE);
+                }
+                responses.put(id, new RuleTreeResponse(ruleResponse));
+            });
+        }
+        selected.stream().forEach(id -> {
+            final int ancestor = selectedAncestor(ruleTree, id, selected);
+            if (ancestor == CompiledRuleTree.NO_RULE) {
+                roots.put(ruleTree.name(id), responses.get(id));
+            } else {
+                responses.get(ancestor).addChild(ruleTree.name(id), responses.get(id));
+            }
+        });
+        return roots;
+    }
+
+    private RuleResponse findTermInValuesOrNotFound(LuceneSearch luceneSearch, Optional<String> ruleName, CompiledRuleTree ruleTree, int id, boolean rootRule) {
+        try {
+            return findTermInValues(luceneSearch, ruleName, ruleTree.rule(id), rootRule);
+        } catch (RuleNotFoundException _ex) {
+            return ruleTree.notFound(id);
+        }
+    }
+
+    private void selectSubtree(CompiledRuleTree ruleTree, int id, int depth, BitSet selected) {
+        selected.set(id);
+        if (depth > 0) {
+            IntStream.range(0, ruleTree.childCount(id))
+                    .forEach(index -> selectSubtree(ruleTree, ruleTree.child(id, index), depth - 1, selected));
+        }
+    }
+
+    private int selectedAncestor(CompiledRuleTree ruleTree, int id, BitSet selected) {
+        int ancestor = ruleTree.parent(id);
+        while (ancestor != CompiledRuleTree.NO_RULE && !selected.get(ancestor)) {
+            ancestor = ruleTree.parent(ancestor);
+        }
+        return ancestor;
+    }
+
+    private record HedgedBranch(ExtractionPass pass, List<RuleResponse> ruleResponses) {}
+
+    /**
+     * Esegue in parallelo il passaggio regex e il primo passaggio jsoup (anchors o allTags), ognuno con un
+     * proprio contesto figlio di quello della richiesta. Appena un ramo risolve tutte le regole figlie
+     * (o almeno la metà con atLeastHalf) l'altro viene annullato. Altrimenti i risultati vengono uniti come
+     * nella catena sequenziale: prima le regole trovate dalla regex, poi quelle dal passaggio jsoup, infine
+     * jsoup allTags per le regole ancora mancanti.
+     */
+    private List<RuleResponse> executeChildRuleHedged(CharSequence content, Optional<String> rootRule, Optional<String> ruleName, EvaluationOptions options,
+                                                      Optional<String> statisticsKey, CompletionService<HedgedBranch> completionService) throws RuleNotFoundException, IOException {
+        final Map<String, Rule> childs = childRules(rootRule, ruleName);
+        final EvaluationContext context = EvaluationContext.current().orElseGet(() -> EvaluationContext.create(Optional.empty()));
+        final ExtractionPass jsoupPass = options.isEvaluateAnchorsFirst() ? ExtractionPass.JSOUP_ANCHORS : ExtractionPass.JSOUP_ALL_TAGS;
+        final Map<ExtractionPass, EvaluationContext> branches = new EnumMap<>(ExtractionPass.class);
+        branches.put(ExtractionPass.REGEX, context.fork());
+        branches.put(jsoupPass, context.fork());
+        final Map<ExtractionPass, List<RuleResponse>> results = new EnumMap<>(ExtractionPass.class);
+        try {
+            branches.forEach((pass, branchContext) -> completionService.submit(() -> {
+                try (EvaluationContext.Scope scope = branchContext.attach()) {
+                    final List<Anchor> anchors = pass == ExtractionPass.REGEX ?
+                            anchorsWithRegularExpression(content) :
+                            anchorsWidthJsoup(content, pass == ExtractionPass.JSOUP_ALL_TAGS);
+                    return new HedgedBranch(pass, executeChildRule(content, rootRule, ruleName, anchors, Collections.emptyList()));
+                } catch (RuleDeadlineExceededException _ex) {
+                    return new HedgedBranch(pass, Collections.emptyList());
+                }
+            }));
+            while (results.size() < branches.size()) {
+                final HedgedBranch branch = awaitBranch(completionService);
+                final int found = rulesFound(branch.ruleResponses()).size();
+                if (!branch.ruleResponses().isEmpty()) {
+                    extractorStatistics.record(statisticsKey, branch.pass(), found == childs.size());
+                }
+                if (found == childs.size() || (options.isAtLeastHalf() && found > 0 && found >= Math.divideExact(childs.size(), 2))) {
+                    log.debug("Hedged evaluation of childs of rule {} resolved by {} pass", ruleName.orElse("empty"), branch.pass());
+                    return branch.ruleResponses();
+                }
+                results.put(branch.pass(), branch.ruleResponses());
+            }
+        } finally {
+            branches.values().forEach(EvaluationContext::cancel);
+        }
+        final List<RuleResponse> regularExpressionFound = rulesFound(results.get(ExtractionPass.REGEX));
+        final List<RuleResponse> ruleResponses = childs.keySet()
+                .stream()
+                .map(key -> findRuleResponse(regularExpressionFound, key).or(() -> findRuleResponse(results.get(jsoupPass), key)))
+                .flatMap(Optional::stream)
+                .toList();
+        final List<RuleResponse> rulesFound = rulesFound(ruleResponses);
+        try {
+            if (rulesFound.size() != childs.size() && jsoupPass == ExtractionPass.JSOUP_ANCHORS) {
+                ruleMetrics.fallback(ExtractionPass.JSOUP_ALL_TAGS);
+                final List<RuleResponse> allTagsResponses = executeChildRuleAlternative(content, rootRule, ruleName, rulesFound, Boolean.TRUE);
+                extractorStatistics.record(statisticsKey, ExtractionPass.JSOUP_ALL_TAGS, rulesFound(allTagsResponses).size() == childs.size());
+                return allTagsResponses;
+            }
+        } catch (RuleDeadlineExceededException _ex) {
+            log.warn("Deadline exceeded for childs of rule {}, {} of {} rules resolved", ruleName.orElse("empty"), rulesFound.size(), childs.size());
+            return partialChildRule(rootRule, ruleName, ruleResponses);
+        }
+        return ruleResponses.size() == childs.size() ? ruleResponses : partialChildRule(rootRule, ruleName, ruleResponses);
+    }
+
+    private HedgedBranch awaitBranch(CompletionService<HedgedBranch> completionService) throws IOException {
+        try {
+            return completionService.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private Optional<RuleResponse> findRuleResponse(List<RuleResponse> ruleResponses, String ruleName) {
+        return Optional.ofNullable(ruleResponses)
+                .flatMap(responses -> responses.stream()
+                        .filter(ruleResponse -> ruleResponse.getRuleName().equalsIgnoreCase(ruleName))
+                        .findAny());
+    }
+
+    /**
+     * L'indice per un passaggio della catena di fallback: in modalità incrementale gli anchor del passaggio
+     * vengono aggiunti all'indice dei passaggi precedenti, altrimenti l'indice viene ricostruito.
+     */
+    private LuceneSearch passLuceneSearch(LuceneSearch luceneSearch, List<Anchor> anchors, ExtractionPass pass, EvaluationOptions options) throws IOException {
+        final boolean incrementalIndex = options.getIncrementalIndex()
+                .orElseGet(() -> ruleSnapshotManager.current().getConfiguration().getIncrementalIndex());
+        if (luceneSearch != null && incrementalIndex) {
+            addAnchors(luceneSearch, anchors, pass);
+            return luceneSearch;
+        }
+        if (luceneSearch != null) {
+            luceneSearch.close();
+        }
+        return createLuceneSearch(anchors, pass, incrementalIndex);
+    }
+
+    /**
+     * Le regole figlie valutate dall'ultimo passaggio completato prima della scadenza della richiesta,
+     * trovate o meno, le restanti vengono restituite con stato {@link HttpStatus#REQUEST_TIMEOUT}.
+     */
+    List<RuleResponse> partialChildRule(Optional<String> rootRule, Optional<String> ruleName, List<RuleResponse> ruleResponses) {
+        return childRules(rootRule, ruleName).entrySet()
+                .stream()
+                .map(entry -> ruleResponses.stream()
+                        .filter(ruleResponse -> ruleResponse.getRuleName().equalsIgnoreCase(entry.getKey()))
+                        .findAny()
+                        .orElseGet(() -> timeoutResponse(entry.getKey(), entry.getValue())))
+                .collect(Collectors.toList());
+    }
+
+    private RuleResponse timeoutResponse(String ruleName, Rule rule) {
+        return new RuleResponse(
+                null,
+                ruleName,
+                null,
+                null,
+                null,
+                Optional.ofNullable(rule.getChilds()).map(Map::isEmpty).orElse(Boolean.TRUE),
+                HttpStatus.REQUEST_TIMEOUT,
+                null
+        );
+    }
+
+    /**
+     * Verifica che le regole trovate rispettino le soglie richieste (allRuleMustBePresent, atLeastHalf)
+     * e che almeno una regola sia stata trovata.
+     */
+    public boolean isSatisfied(List<RuleResponse> ruleResponses, Optional<String> rootRule, Optional<String> ruleName, EvaluationOptions options) {
+        final int childsSize = childRules(rootRule, ruleName).size();
+        final List<RuleResponse> ruleResponseOK = ruleResponses.stream().filter(
+                ruleResponse -> Stream.of(HttpStatus.OK, HttpStatus.ACCEPTED, HttpStatus.MULTI_STATUS)
+                        .anyMatch(httpStatus -> httpStatus == ruleResponse.getStatus())).toList();
+        if (options.isAllRuleMustBePresent() && ruleResponseOK.size() < childsSize) {
+            log.info("Found {} rules but total are:{}", ruleResponseOK.size(), childsSize);
+            return false;
+        }
+        if (options.isAtLeastHalf() && ruleResponseOK.size() < Math.divideExact(childsSize, 2)) {
+            log.info("Found {} rules but total are:{}", ruleResponseOK.size(), childsSize);
+            return false;
+        }
+        return !ruleResponses.stream().allMatch(ruleResponse -> ruleResponse.getStatus().equals(HttpStatus.NOT_FOUND));
+    }
+
+    List<RuleResponse> rulesFound(List<RuleResponse> ruleResponses) {
+        return ruleResponses
+                .stream()
+                .filter(ruleResponse -> !ruleResponse.getStatus().equals(HttpStatus.NOT_FOUND))
+                .filter(ruleResponse -> !ruleResponse.getStatus().equals(HttpStatus.REQUEST_TIMEOUT))
+                .collect(Collectors.toList());
+    }
+
     private RuleResponse findTermInValues(LuceneSearch luceneSearch, Optional<String> ruleName, Rule rule, Term term, Boolean rootRule) throws RuleNotFoundException {
         try {
-            final List<LuceneResult> luceneResults = luceneSearch.search(term.getKey());
-            final String r = ruleName.orElse(ruleConfiguration.getDefaultRule());
+            final RuleSnapshot snapshot = ruleSnapshotManager.current();
+            final Optional<Query> query = snapshot.query(term.getKey());
+            final EvaluationDiagnostics diagnostics = EvaluationContext.diagnostics();
+            final long start = diagnostics == null ? 0 : System.nanoTime();
+            final RuleEvents.SearchEvent event = new RuleEvents.SearchEvent();
+            event.begin();
+            final List<LuceneResult> luceneResults;
+            try (RuleMetrics.StageTimer stage = ruleMetrics.stage(PipelineStage.SEARCH)) {
+                luceneResults = query.isPresent() ?
+                        luceneSearch.search(term.getKey(), query.get()) : luceneSearch.search(term.getKey());
+            }
+            final String r = ruleName.orElse(snapshot.getConfiguration().getDefaultRule());
+            if (RuleEvents.shouldCommit(event)) {
+                event.ruleName = r;
+                event.term = term.getKey();
+                event.candidates = luceneResults.size();
+                event.commit();
+            }
+            if (diagnostics != null) {
+                diagnostics.search(r, term.getKey(), System.nanoTime() - start, luceneResults.size());
+            }
             Boolean leaf = Optional.ofNullable(rule.getChilds()).map(Map::isEmpty).orElse(Boolean.TRUE);
             if (!luceneResults.isEmpty() && (luceneResults.size() == 1 || leaf || rootRule)) {
                 LuceneResult luceneResult = luceneResults.getFirst();
@@ -198,7 +717,19 @@ public class RuleService {
         throw new RuleNotFoundException();
     }
 
-    private List<Anchor> anchorsWidthJsoup(String content, boolean allTags) {
-        return jsoupAnchorService.find(content, allTags);
+    private List<Anchor> anchorsWithRegularExpression(CharSequence content) {
+        return extracted(regularExpressionAnchorService.find(content, Boolean.FALSE));
+    }
+
+    private List<Anchor> anchorsWidthJsoup(CharSequence content, boolean allTags) {
+        return extracted(jsoupAnchorService.find(content, allTags));
+    }
+
+    /**
+     * Con il numero di anchor estratti la valutazione può passare alla corsia lenta.
+     */
+    private List<Anchor> extracted(List<Anchor> anchors) {
+        schedulingLanes.reclassify(anchors.size());
+        return anchors;
     }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+import it.cnr.anac.transparency.rules.configuration.RuleConfiguration;
+import it.cnr.anac.transparency.rules.domain.CompiledRuleTree;
+import it.cnr.anac.transparency.rules.domain.Term;
+import it.cnr.anac.transparency.rules.search.CustomTokenizerAnalyzer;
+import it.cnr.anac.transparency.rules.search.LuceneSearch;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Versione immutabile delle regole e di tutto ciò che ne deriva: albero compilato, espressioni regolari,
+ * analyzer e query già preparate per ogni termine. Viene costruita a partire da una copia della configurazione
+ * e pubblicata da {@link RuleSnapshotManager} solo dopo essere stata validata e riscaldata: una richiesta
+ * usa sempre la stessa versione dall'inizio alla fine, anche se nel frattempo le regole vengono ricaricate.
+ */
+@Slf4j
+@Getter
+public final class RuleSnapshot {
+    private final long version;
+    private final String checksum;
+    private final Instant loadedAt;
+    private final RuleConfiguration configuration;
+    private final CompiledRuleTree ruleTree;
+    private final Pattern anchorPattern;
+    private final Pattern hrefPattern;
+    private final List<String> tagAttributes;
+    private final List<Pattern> stopWordsInboxPatterns;
+    private final Analyzer analyzer;
+    private final Map<String, Query> queries;
+
+    RuleSnapshot(long version, String checksum, RuleConfiguration configuration) {
+        this.version = version;
+        this.checksum = checksum;
+        this.loadedAt = Instant.now();
+        this.configuration = configuration;
+        this.ruleTree = configuration.getCompiledRuleTree();
+        this.anchorPattern = Pattern.compile(configuration.getAnchorRegex(), Pattern.CASE_INSENSITIVE);
+        this.hrefPattern = Pattern.compile(configuration.getHrefRegex(), Pattern.CASE_INSENSITIVE);
+        this.tagAttributes = List.copyOf(Optional.ofNullable(configuration.getTagAttributes()).orElse(Collections.emptyList()));
+        this.stopWordsInboxPatterns = Optional.ofNullable(configuration.getStopWordsInbox())
+                .orElse(Collections.emptyList())
+                .stream()
+                .map(s -> Pattern.compile(Pattern.quote(s), Pattern.CASE_INSENSITIVE))
+                .toList();
+        this.analyzer = new CustomTokenizerAnalyzer(configuration.getSearchTokens());
+        final Map<String, Query> queries = new HashMap<>();
+        for (int id = 0; id < ruleTree.size(); id++) {
+            Optional.ofNullable(ruleTree.rule(id).getTerm())
+                    .orElse(Collections.emptyList())
+                    .stream()
+                    .map(Term::getKey)
+                    .filter(key -> !queries.containsKey(key))
+                    .forEach(key -> {
+                        try {
+                            queries.put(key, LuceneSearch.buildQuery(key, analyzer));
+                        } catch (ParseException e) {
+                            log.warn("Cannot prepare query for term {}: {}", key, e.getMessage());
+                        }
+                    });
+        }
+        this.queries = Collections.unmodifiableMap(queries);
+    }
+
+    /**
+     * La versione riportata nelle risposte: progressivo del caricamento e checksum delle regole.
+     */
+    public String getVersionLabel() {
+        return version + "-" + checksum;
+    }
+
+    public Optional<Query> query(String keyword) {
+        return Optional.ofNullable(queries.get(keyword));
+    }
+}
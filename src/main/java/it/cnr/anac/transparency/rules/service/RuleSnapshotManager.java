@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import it.cnr.anac.transparency.rules.configuration.RuleConfiguration;
+import it.cnr.anac.transparency.rules.domain.CompiledRuleTree;
+import it.cnr.anac.transparency.rules.domain.EvaluationOptions;
+import it.cnr.anac.transparency.rules.domain.Term;
+import it.cnr.anac.transparency.rules.exception.RuleException;
+import it.cnr.anac.transparency.rules.exception.RuleNotFoundException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Gestisce la versione corrente delle regole. Ad ogni refresh della configurazione (/actuator/refresh o
+ * Spring Cloud Config) viene costruito un nuovo {@link RuleSnapshot} a partire dall'Environment aggiornato,
+ * validato e riscaldato con una pagina di esempio, poi pubblicato con un unico swap atomico.
+ * Le valutazioni in corso continuano con la versione fissata nel proprio {@link EvaluationContext};
+ * se la costruzione o il riscaldamento falliscono resta attiva la versione precedente.
+ */
+@Slf4j
+@Service
+public class RuleSnapshotManager {
+    public static final String VERSION_HEADER = "X-Rule-Version";
+
+    private final AtomicReference<RuleSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    @Autowired
+    Environment environment;
+    @Autowired
+    ObjectProvider<RuleService> ruleService;
+
+    @PostConstruct
+    public void postConstruct() {
+        snapshot.set(build());
+        log.info("Loaded rules version {}", snapshot.get().getVersionLabel());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        warmUp(snapshot.get());
+    }
+
+    @EventListener(RefreshScopeRefreshedEvent.class)
+    public void onRefresh() {
+        reload();
+    }
+
+    /**
+     * Costruisce, riscalda e pubblica una nuova versione delle regole.
+     *
+     * @return la versione attiva al termine del caricamento
+     */
+    public synchronized RuleSnapshot reload() {
+        final RuleSnapshot previous = snapshot.get();
+        try {
+            final RuleSnapshot candidate = build();
+            warmUp(candidate);
+            snapshot.set(candidate);
+            log.info("Rules reloaded, version {} replaced by {}", previous.getVersionLabel(), candidate.getVersionLabel());
+            return candidate;
+        } catch (RuntimeException e) {
+            log.error("Cannot reload rules, version {} is still active", previous.getVersionLabel(), e);
+            return previous;
+        }
+    }
+
+    /**
+     * La versione usata dalla valutazione corrente: quella fissata nel contesto della richiesta
+     * (fissata alla prima invocazione) oppure, fuori da una richiesta, l'ultima pubblicata.
+     */
+    public RuleSnapshot current() {
+        return EvaluationContext.current()
+                .map(this::pin)
+                .orElseGet(snapshot::get);
+    }
+
+    public RuleSnapshot pin(EvaluationContext context) {
+        return context.pin(snapshot::get);
+    }
+
+    public RuleSnapshot latest() {
+        return snapshot.get();
+    }
+
+    private RuleSnapshot build() {
+        final RuleConfiguration configuration = new RuleConfiguration();
+        Binder.get(environment).bind(ConfigurationPropertyName.EMPTY, Bindable.ofInstance(configuration));
+        configuration.postConstruct();
+        final String checksum;
+        try {
+            checksum = DigestUtils.sha256Hex(objectMapper.writeValueAsBytes(configuration.getRules())).substring(0, 12);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        return new RuleSnapshot(sequence.incrementAndGet(), checksum, configuration);
+    }
+
+    /**
+     * Esegue tutte le regole radice su una pagina sintetica contenente un link per ogni regola,
+     * così da verificare la nuova versione e scaldare estrattori, analyzer e query prima dello swap.
+     * La pagina viene valutata in un contesto ombra, per cui non compare nelle metriche, nelle statistiche
+     * degli estrattori e negli eventi JFR.
+     */
+    private void warmUp(RuleSnapshot candidate) {
+        final RuleService service = ruleService.getObject();
+        final CompiledRuleTree ruleTree = candidate.getRuleTree();
+        final String content = IntStream.range(0, ruleTree.size())
+                .mapToObj(id -> Optional.ofNullable(ruleTree.rule(id).getTerm())
+                        .orElse(Collections.emptyList())
+                        .stream()
+                        .findFirst()
+                        .map(Term::getKey)
+                        .map(key -> "<a href=\"/warmup/" + id + "\">" + key + "</a>")
+                        .orElse(""))
+                .collect(Collectors.joining("\n", "<html><body>\n", "\n</body></html>"));
+        final EvaluationContext context = EvaluationContext.shadow(Optional.empty(), candidate);
+        final long start = System.nanoTime();
+        try (EvaluationContext.Scope scope = context.attach()) {
+            for (int id = 0; id < ruleTree.size(); id++) {
+                if (ruleTree.parent(id) != CompiledRuleTree.NO_RULE) {
+                    continue;
+                }
+                final Optional<String> rootRule = Optional.of(ruleTree.name(id));
+                try {
+                    service.executeRule(content, rootRule, Optional.empty());
+                } catch (RuleNotFoundException e) {
+                    log.debug("Warm up of rule {} not found", rootRule.get());
+                }
+                service.evaluateChildRuleWithFallback(content, rootRule, Optional.empty(), EvaluationOptions.builder().build());
+            }
+        } catch (IOException | RuleException e) {
+            throw new IllegalStateException(e);
+        }
+        log.info("Rules version {} warmed up in {} ms", candidate.getVersionLabel(), (System.nanoTime() - start) / 1_000_000);
+    }
+}
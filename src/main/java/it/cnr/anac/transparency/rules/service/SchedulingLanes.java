@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+import it.cnr.anac.transparency.rules.configuration.LanesProperties;
+import it.cnr.anac.transparency.rules.exception.RuleOverloadException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Corsie di esecuzione con limiti di concorrenza separati: le pagine piccole, valutate in pochi
+ * millisecondi, non restano in coda dietro alle pagine molto grandi che possono richiedere secondi.
+ * Le richieste vengono classificate in base alla dimensione del contenuto decodificato e riclassificate,
+ * dopo l'estrazione, in base al numero di anchor.
+ */
+@Slf4j
+@Service
+public class SchedulingLanes {
+    public enum Lane {FAST, SLOW}
+
+    private final LanesProperties lanesProperties;
+    private final Map<Lane, Semaphore> semaphores = new EnumMap<>(Lane.class);
+
+    public SchedulingLanes(LanesProperties lanesProperties) {
+        this.lanesProperties = lanesProperties;
+        semaphores.put(Lane.FAST, new Semaphore(lanesProperties.getFastConcurrency()));
+        semaphores.put(Lane.SLOW, new Semaphore(lanesProperties.getSlowConcurrency()));
+    }
+
+    public Lane classify(long decodedLength, OptionalInt anchorCount) {
+        if (decodedLength > lanesProperties.getSlowThreshold().toBytes() ||
+                anchorCount.orElse(0) > lanesProperties.getSlowAnchorThreshold()) {
+            return Lane.SLOW;
+        }
+        return Lane.FAST;
+    }
+
+    public Permit acquire(long decodedLength) throws RuleOverloadException {
+        return acquire(decodedLength, OptionalInt.empty());
+    }
+
+    public Permit acquire(long decodedLength, OptionalInt anchorCount) throws RuleOverloadException {
+        if (!lanesProperties.isEnabled()) {
+            return new Permit(null, null, decodedLength);
+        }
+        final Lane lane = classify(decodedLength, anchorCount);
+        final Permit permit = new Permit(lane, enter(lane, decodedLength), decodedLength);
+        log.debug("Request of {} bytes assigned to lane {}", decodedLength, lane);
+        return permit;
+    }
+
+    /**
+     * Riclassifica la valutazione associata al thread corrente quando, dopo l'estrazione, è noto il numero di anchor:
+     * se supera {@code lanes.slow_anchor_threshold} la valutazione occupa un posto nella corsia lenta e rilascia quello
+     * nella corsia veloce. La riclassificazione avviene sui thread del pool CPU-bound e non attende: se la corsia lenta
+     * è piena la valutazione viene rifiutata.
+     *
+     * @throws RuleOverloadException se la corsia lenta non ha posti liberi
+     */
+    public void reclassify(int anchorCount) throws RuleOverloadException {
+        if (!lanesProperties.isEnabled()) {
+            return;
+        }
+        final Optional<Permit> current = EvaluationContext.current().flatMap(EvaluationContext::getLanePermit);
+        if (current.isEmpty()) {
+            return;
+        }
+        final Permit permit = current.get();
+        synchronized (permit) {
+            if (permit.semaphore == null || permit.lane != Lane.FAST ||
+                    classify(permit.decodedLength, OptionalInt.of(anchorCount)) != Lane.SLOW) {
+                return;
+            }
+            final Semaphore slow = semaphores.get(Lane.SLOW);
+            if (!slow.tryAcquire()) {
+                log.warn("Lane {} is saturated, request of {} bytes with {} anchors rejected", Lane.SLOW, permit.decodedLength, anchorCount);
+                throw new RuleOverloadException(lanesProperties.getRetryAfter());
+            }
+            permit.close();
+            log.debug("Request of {} bytes with {} anchors moved to lane {}", permit.decodedLength, anchorCount, Lane.SLOW);
+            permit.semaphore = slow;
+            permit.lane = Lane.SLOW;
+        }
+    }
+
+    /**
+     * Un posto aggiuntivo, senza attesa, nella corsia della valutazione associata al thread corrente, per i rami
+     * eseguiti in parallelo dalla stessa valutazione. Vuoto se la corsia non ha posti liberi.
+     */
+    public Optional<Permit> tryAcquireBranch() {
+        final Optional<Permit> current = EvaluationContext.current().flatMap(EvaluationContext::getLanePermit);
+        if (!lanesProperties.isEnabled() || current.map(Permit::getLane).isEmpty()) {
+            return Optional.of(new Permit(null, null, 0));
+        }
+        final Lane lane = current.get().getLane();
+        final Semaphore semaphore = semaphores.get(lane);
+        if (!semaphore.tryAcquire()) {
+            log.debug("Lane {} is saturated, branch not executed in parallel", lane);
+            return Optional.empty();
+        }
+        return Optional.of(new Permit(lane, semaphore, current.get().decodedLength));
+    }
+
+    private Semaphore enter(Lane lane, long decodedLength) throws RuleOverloadException {
+        final Semaphore semaphore = semaphores.get(lane);
+        try {
+            if (!semaphore.tryAcquire(lanesProperties.getMaxWait().toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Lane {} is saturated, request of {} bytes rejected", lane, decodedLength);
+                throw new RuleOverloadException(lanesProperties.getRetryAfter());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuleOverloadException(lanesProperties.getRetryAfter());
+        }
+        return semaphore;
+    }
+
+    public int available(Lane lane) {
+        return semaphores.get(lane).availablePermits();
+    }
+
+    /**
+     * Posto occupato in una corsia. Il permesso viene associato al contesto della valutazione
+     * ({@link EvaluationContext#setLanePermit(Permit)}) per poter essere riclassificato dopo l'estrazione.
+     */
+    public static class Permit implements AutoCloseable {
+        @Getter
+        private Lane lane;
+        private Semaphore semaphore;
+        private final long decodedLength;
+
+        Permit(Lane lane, Semaphore semaphore, long decodedLength) {
+            this.lane = lane;
+            this.semaphore = semaphore;
+            this.decodedLength = decodedLength;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (semaphore != null) {
+                semaphore.release();
+                semaphore = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+import it.cnr.anac.transparency.rules.configuration.AdaptiveProperties;
+import it.cnr.anac.transparency.rules.configuration.ShadowProperties;
+import it.cnr.anac.transparency.rules.domain.EvaluationOptions;
+import it.cnr.anac.transparency.rules.domain.RuleResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Valutazione ombra: un campione delle valutazioni delle regole figlie viene rieseguito in modo asincrono con
+ * la configurazione alternativa del motore indicata in {@link ShadowProperties#getEngine()}, su un pool
+ * dedicato di thread a bassa priorità con coda limitata. Gli esiti (url, stato, termine e score) vengono
+ * confrontati con quelli della valutazione primaria e le differenze vengono conteggiate nelle metriche
+ * {@value #COMPARISONS} e {@value #MISMATCHES}, insieme alle durate delle due valutazioni; le differenze più
+ * recenti sono conservate come esempio. La valutazione primaria non attende mai quella ombra: se la coda è
+ * piena la valutazione ombra viene scartata.
+ * Lo stesso pool esegue le valutazioni di esplorazione della scelta adattiva dell'estrattore
+ * ({@link #explore(CharSequence, Optional, Optional, EvaluationOptions)}).
+ */
+@Slf4j
+@Service
+public class ShadowExecutionService {
+    public static final String COMPARISONS = "rule.shadow.comparisons";
+    public static final String MISMATCHES = "rule.shadow.mismatches";
+    public static final String DURATION = "rule.shadow.duration";
+    public static final String SKIPPED = "rule.shadow.skipped";
+    private static final List<String> FIELDS = List.of("missing", "url", "status", "term", "score");
+
+    public record Difference(String ruleName, String field, String primary, String shadow) {}
+
+    public record Mismatch(Instant at, String url, String rootRule, String ruleName, long primaryMicros, long shadowMicros,
+                           List<Difference> differences) {}
+
+    private final ShadowProperties shadowProperties;
+    private final boolean comparisons;
+    private final ObjectProvider<RuleService> ruleService;
+    private final ThreadPoolExecutor executorService;
+    private final Counter matches;
+    private final Counter mismatches;
+    private final Map<String, Counter> fieldMismatches = new HashMap<>();
+    private final Counter discarded;
+    private final Counter incomplete;
+    private final Timer primaryDuration;
+    private final Timer shadowDuration;
+    private final Deque<Mismatch> samples = new ArrayDeque<>();
+
+    public ShadowExecutionService(ShadowProperties shadowProperties, AdaptiveProperties adaptiveProperties,
+                                  ObjectProvider<RuleService> ruleService, MeterRegistry meterRegistry) {
+        this.shadowProperties = shadowProperties;
+        this.comparisons = shadowProperties.isEnabled();
+        this.ruleService = ruleService;
+        this.matches = comparison(meterRegistry, "match");
+        this.mismatches = comparison(meterRegistry, "mismatch");
+        FIELDS.forEach(field -> fieldMismatches.put(field, Counter.builder(MISMATCHES)
+                .description("Differenze tra valutazione primaria e ombra per campo")
+                .tag("field", field)
+                .register(meterRegistry)));
+        this.discarded = skipped(meterRegistry, "discarded");
+        this.incomplete = skipped(meterRegistry, "incomplete");
+        this.primaryDuration = duration(meterRegistry, "primary");
+        this.shadowDuration = duration(meterRegistry, "shadow");
+        if (shadowProperties.isEnabled() || (adaptiveProperties.isEnabled() && adaptiveProperties.getExploreRate() > 0)) {
+            this.executorService = new ThreadPoolExecutor(shadowProperties.getThreads(), shadowProperties.getThreads(),
+                    0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(shadowProperties.getQueueCapacity()),
+                    Thread.ofPlatform().name("rule-shadow-", 0).priority(Thread.MIN_PRIORITY).daemon().factory());
+            log.info("Shadow execution enabled, sample rate {}, explore rate {}",
+                    comparisons ? shadowProperties.getSampleRate() : 0,
+                    adaptiveProperties.isEnabled() ? adaptiveProperties.getExploreRate() : 0);
+        } else {
+            this.executorService = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return comparisons && executorService != null;
+    }
+
+    /**
+     * Campiona la valutazione primaria appena conclusa e, se selezionata, accoda la valutazione ombra.
+     * Le valutazioni primarie parziali, per scadenza della richiesta, non vengono confrontate.
+     */
+    public void offer(CharSequence content, Optional<String> rootRule, Optional<String> ruleName, EvaluationOptions options,
+                      List<RuleResponse> primary, long primaryNanos) {
+        if (!isEnabled() || EvaluationContext.isShadow() ||
+                ThreadLocalRandom.current().nextDouble() >= shadowProperties.getSampleRate()) {
+            return;
+        }
+        final Optional<EvaluationContext> context = EvaluationContext.current();
+        if (context.map(EvaluationContext::isPartial).orElse(Boolean.FALSE)) {
+            return;
+        }
+        final RuleSnapshot snapshot = context.flatMap(EvaluationContext::getSnapshot).orElse(null);
+        try {
+            executorService.execute(() -> shadow(content, rootRule, ruleName, options, primary, primaryNanos, snapshot));
+        } catch (RejectedExecutionException e) {
+            discarded.increment();
+        }
+    }
+
+    /**
+     * Accoda l'esecuzione della catena completa dei passaggi di estrazione, i cui esiti aggiornano
+     * soltanto le statistiche degli estrattori e non vengono confrontati con la valutazione primaria.
+     */
+    public void explore(CharSequence content, Optional<String> rootRule, Optional<String> ruleName, EvaluationOptions options) {
+        if (executorService == null || EvaluationContext.isShadow()) {
+            return;
+        }
+        final RuleSnapshot snapshot = EvaluationContext.current().flatMap(EvaluationContext::getSnapshot).orElse(null);
+        try {
+            executorService.execute(() -> {
+                final EvaluationContext context = EvaluationContext.explore(Optional.of(shadowProperties.getTimeout()), snapshot);
+                try (EvaluationContext.Scope scope = context.attach()) {
+                    ruleService.getObject().executeChildRuleWithFallback(content, rootRule, ruleName, options.toBuilder().hedged(false).build());
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Explore evaluation of childs of rule {} failed", ruleName.orElse("empty"), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            discarded.increment();
+        }
+    }
+
+    private void shadow(CharSequence content, Optional<String> rootRule, Optional<String> ruleName, EvaluationOptions options,
+                        List<RuleResponse> primary, long primaryNanos, RuleSnapshot snapshot) {
+        final EvaluationContext context = EvaluationContext.shadow(Optional.of(shadowProperties.getTimeout()), snapshot);
+        final long start = System.nanoTime();
+        final List<RuleResponse> shadow;
+        try (EvaluationContext.Scope scope = context.attach()) {
+            shadow = ruleService.getObject().executeChildRuleWithFallback(content, rootRule, ruleName, shadowOptions(options));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Shadow evaluation of childs of rule {} failed", ruleName.orElse("empty"), e);
+            incomplete.increment();
+            return;
+        }
+        final long shadowNanos = System.nanoTime() - start;
+        if (context.isPartial()) {
+            incomplete.increment();
+            return;
+        }
+        primaryDuration.record(primaryNanos, TimeUnit.NANOSECONDS);
+        shadowDuration.record(shadowNanos, TimeUnit.NANOSECONDS);
+        final List<Difference> differences = compare(primary, shadow);
+        if (differences.isEmpty()) {
+            matches.increment();
+            return;
+        }
+        mismatches.increment();
+        differences.forEach(difference -> fieldMismatches.get(difference.field()).increment());
+        log.debug("Shadow evaluation of childs of rule {} differs: {}", ruleName.orElse("empty"), differences);
+        synchronized (samples) {
+            samples.addLast(new Mismatch(Instant.now(), options.getUrl().orElse(null), rootRule.orElse(null),
+                    ruleName.orElse(null), TimeUnit.NANOSECONDS.toMicros(primaryNanos),
+                    TimeUnit.NANOSECONDS.toMicros(shadowNanos), differences));
+            while (samples.size() > shadowProperties.getMismatchSamples()) {
+                samples.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Le opzioni della richiesta con la configurazione alternativa del motore. La valutazione ombra non è
+     * mai hedged, per non occupare il pool dedicato della valutazione primaria.
+     */
+    EvaluationOptions shadowOptions(EvaluationOptions options) {
+        final ShadowProperties.Engine engine = shadowProperties.getEngine();
+        return options.toBuilder()
+                .forceJsoup(Optional.ofNullable(engine.getForceJsoup()).orElse(options.isForceJsoup()))
+                .evaluateAnchorsFirst(Optional.ofNullable(engine.getEvaluateAnchorsFirst()).orElse(options.isEvaluateAnchorsFirst()))
+                .incrementalIndex(Optional.ofNullable(engine.getIncrementalIndex()).or(options::getIncrementalIndex))
+                .hedged(false)
+                .build();
+    }
+
+    /**
+     * Confronta gli esiti per nome della regola: url, stato, termine e score entro la tolleranza configurata.
+     */
+    List<Difference> compare(List<RuleResponse> primary, List<RuleResponse> shadow) {
+        final Map<String, RuleResponse> shadowByName = new LinkedHashMap<>();
+        shadow.forEach(ruleResponse -> shadowByName.put(key(ruleResponse), ruleResponse));
+        final List<Difference> differences = new ArrayList<>();
+        for (RuleResponse primaryResponse : primary) {
+            final RuleResponse shadowResponse = shadowByName.remove(key(primaryResponse));
+            if (shadowResponse == null) {
+                differences.add(new Difference(primaryResponse.getRuleName(), "missing", "present", null));
+                continue;
+            }
+            compare(differences, primaryResponse.getRuleName(), "url", primaryResponse.getUrl(), shadowResponse.getUrl());
+            compare(differences, primaryResponse.getRuleName(), "status", primaryResponse.getStatus(), shadowResponse.getStatus());
+            compare(differences, primaryResponse.getRuleName(), "term", primaryResponse.getTerm(), shadowResponse.getTerm());
+            final Float primaryScore = primaryResponse.getScore();
+            final Float shadowScore = shadowResponse.getScore();
+            if ((primaryScore == null) != (shadowScore == null) ||
+                    (primaryScore != null && Math.abs(primaryScore - shadowScore) > shadowProperties.getScoreTolerance())) {
+                differences.add(new Difference(primaryResponse.getRuleName(), "score",
+                        String.valueOf(primaryScore), String.valueOf(shadowScore)));
+            }
+        }
+        shadowByName.values().forEach(shadowResponse ->
+                differences.add(new Difference(shadowResponse.getRuleName(), "missing", null, "present")));
+        return differences;
+    }
+
+    private void compare(List<Difference> differences, String ruleName, String field, Object primary, Object shadow) {
+        if (!Objects.equals(primary, shadow)) {
+            differences.add(new Difference(ruleName, field, String.valueOf(primary), String.valueOf(shadow)));
+        }
+    }
+
+    private String key(RuleResponse ruleResponse) {
+        return String.valueOf(ruleResponse.getRuleName()).toLowerCase(Locale.ROOT);
+    }
+
+    public List<Mismatch> getSamples() {
+        synchronized (samples) {
+            return List.copyOf(samples);
+        }
+    }
+
+    public void clearSamples() {
+        synchronized (samples) {
+            samples.clear();
+        }
+    }
+
+    public long getMatches() {
+        return (long) matches.count();
+    }
+
+    public long getMismatches() {
+        return (long) mismatches.count();
+    }
+
+    public long getDiscarded() {
+        return (long) discarded.count();
+    }
+
+    public ShadowProperties getShadowProperties() {
+        return shadowProperties;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Optional.ofNullable(executorService).ifPresent(ExecutorService::shutdownNow);
+    }
+
+    private static Counter comparison(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(COMPARISONS)
+                .description("Confronti tra valutazione primaria e ombra")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter skipped(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder(SKIPPED)
+                .description("Valutazioni ombra non confrontate")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static Timer duration(MeterRegistry meterRegistry, String engine) {
+        return Timer.builder(DURATION)
+                .description("Durata delle valutazioni campionate, primaria e ombra")
+                .tag("engine", engine)
+                .register(meterRegistry);
+    }
+}
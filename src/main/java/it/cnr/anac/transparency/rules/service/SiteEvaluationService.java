@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+import it.cnr.anac.transparency.rules.domain.*;
+import it.cnr.anac.transparency.rules.exception.RuleDeadlineExceededException;
+import it.cnr.anac.transparency.rules.exception.RuleNotFoundException;
+import it.cnr.anac.transparency.rules.search.LuceneSearch;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Valutazione dell'albero delle regole su un insieme di pagine dello stesso sito. La regola radice viene
+ * valutata sulla prima pagina, le regole figlie di ogni regola trovata sulla pagina indicata dal link
+ * trovato, se presente nell'insieme, e così via fino alle foglie. Ogni pagina viene estratta e indicizzata
+ * una sola volta, in modo incrementale (regex, jsoup anchors, jsoup allTags) man mano che le regole lo
+ * richiedono; pagine diverse vengono valutate in parallelo.
+ * Ogni pagina viene decodificata solo quando serve, nel task che la valuta ed entro {@link RuleExecutor}, con
+ * gli stessi controlli degli endpoint a pagina singola: riversamento su file delle pagine grandi, limite
+ * {@code max_length_page_byte} e aggiornamento della prenotazione di memoria della richiesta.
+ */
+@Slf4j
+@Service
+public class SiteEvaluationService {
+    @Autowired
+    RuleService ruleService;
+    @Autowired
+    RuleExecutor ruleExecutor;
+    @Autowired
+    RuleSnapshotManager ruleSnapshotManager;
+    @Autowired
+    RegularExpressionAnchorService regularExpressionAnchorService;
+    @Autowired
+    JsoupAnchorService jsoupAnchorService;
+
+    public Map<String, RuleTreeResponse> evaluate(List<SitePage> pages, Optional<String> rootRule) throws RuleNotFoundException, IOException {
+        return evaluate(pages, rootRule, Optional.empty());
+    }
+
+    /**
+     * @param reservation la prenotazione di memoria della richiesta, aggiornata con la dimensione complessiva
+     *                    delle pagine decodificate
+     */
+    public Map<String, RuleTreeResponse> evaluate(List<SitePage> pages, Optional<String> rootRule,
+                                                  Optional<MemoryAdmissionController.Reservation> reservation) throws RuleNotFoundException, IOException {
+        if (pages.isEmpty()) {
+            throw new RuleNotFoundException();
+        }
+        final EvaluationContext context = EvaluationContext.current().orElseGet(() -> EvaluationContext.create(Optional.empty()));
+        final RuleSnapshot snapshot = ruleSnapshotManager.pin(context);
+        final CompiledRuleTree ruleTree = snapshot.getRuleTree();
+        final int rootId = ruleTree.resolveOrDefault(rootRule, Optional.empty());
+        final Site site = new Site(pages, context, snapshot, rootId, reservation);
+        try {
+            final SitePage home = pages.getFirst();
+            final RuleResponse rootResponse = ruleExecutor.execute(home.getContent().length(), () -> evaluateRule(site, home));
+            final RuleTreeResponse root = new RuleTreeResponse(rootResponse);
+            try {
+                expand(site, root, rootId, home).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+                    throw uncheckedIOException.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw e;
+            }
+            return Map.of(ruleTree.name(rootId), root);
+        } finally {
+            site.close();
+        }
+    }
+
+    private RuleResponse evaluateRule(Site site, SitePage page) throws IOException {
+        final PageIndex pageIndex = site.index(page);
+        synchronized (pageIndex) {
+            for (ExtractionPass pass : passes(site, page, ExtractionPass.REGEX, ExtractionPass.JSOUP_ANCHORS)) {
+                try {
+                    return ruleService.executeRule(pageIndex.luceneSearch(pass), site.rootRule, site.rootRule);
+                } catch (RuleNotFoundException _ex) {
+                    log.debug("Root rule {} not found on page {} with {} pass", site.rootRule.get(), page.getUrl(), pass);
+                }
+            }
+            return site.snapshot.getRuleTree().notFound(site.rootId);
+        }
+    }
+
+    private List<RuleResponse> evaluateChilds(Site site, SitePage page, int id) throws IOException {
+        final CompiledRuleTree ruleTree = site.snapshot.getRuleTree();
+        final Optional<String> ruleName = Optional.of(ruleTree.name(id));
+        final int childsSize = ruleTree.childCount(id);
+        final PageIndex pageIndex = site.index(page);
+        List<RuleResponse> ruleResponses = Collections.emptyList();
+        synchronized (pageIndex) {
+            try {
+                List<RuleResponse> rulesFound = Collections.emptyList();
+                for (ExtractionPass pass : passes(site, page, ExtractionPass.REGEX, ExtractionPass.JSOUP_ANCHORS, ExtractionPass.JSOUP_ALL_TAGS)) {
+                    ruleResponses = ruleService.executeChildRule(pageIndex.luceneSearch(pass), site.rootRule, ruleName, rulesFound);
+                    rulesFound = ruleService.rulesFound(ruleResponses);
+                    if (rulesFound.size() == childsSize) {
+                        break;
+                    }
+                }
+                return ruleResponses;
+            } catch (RuleDeadlineExceededException _ex) {
+                log.warn("Deadline exceeded for childs of rule {} on page {}", ruleName.get(), page.getUrl());
+                return ruleService.partialChildRule(site.rootRule, ruleName, ruleResponses);
+            }
+        }
+    }
+
+    /**
+     * Valuta le regole figlie della regola sulla pagina indicata dal suo link e, in parallelo,
+     * i discendenti di ogni regola figlia trovata.
+     */
+    private CompletableFuture<Void> expand(Site site, RuleTreeResponse node, int id, SitePage from) {
+        final CompiledRuleTree ruleTree = site.snapshot.getRuleTree();
+        final Optional<SitePage> target = ruleTree.isLeaf(id) ? Optional.empty() : site.target(from, node.getResult());
+        if (target.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final SitePage page = target.get();
+        log.debug("Evaluating childs of rule {} on page {}", ruleTree.name(id), page.getUrl());
+        return CompletableFuture.supplyAsync(() -> {
+                    try (EvaluationContext.Scope scope = site.context.attach()) {
+                        return ruleExecutor.execute(page.getContent().length(), () -> {
+                            try {
+                                site.index(page).content();
+                            } catch (RuleNotFoundException _ex) {
+                                log.warn("Page {} rejected, childs of rule {} not evaluated", page.getUrl(), ruleTree.name(id));
+                                return IntStream.range(0, ruleTree.childCount(id))
+                                        .mapToObj(index -> ruleTree.notFound(ruleTree.child(id, index)))
+                                        .toList();
+                            }
+                            return evaluateChilds(site, page, id);
+                        });
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, ruleExecutor.siteExecutor())
+                .thenCompose(ruleResponses -> CompletableFuture.allOf(ruleResponses.stream()
+                        .map(ruleResponse -> {
+                            final int child = ruleTree.resolve(site.rootRule, Optional.of(ruleResponse.getRuleName()));
+                            final RuleTreeResponse childNode = new RuleTreeResponse(ruleResponse);
+                            node.addChild(ruleResponse.getRuleName(), childNode);
+                            return expand(site, childNode, child, page);
+                        })
+                        .toArray(CompletableFuture[]::new)));
+    }
+
+    private List<ExtractionPass> passes(Site site, SitePage page, ExtractionPass... passes) throws IOException {
+        final boolean regularExpression = RuleService.utf8Length(site.index(page).content()) <
+                site.snapshot.getConfiguration().getMaxLengthContentRegularExpression();
+        return Stream.of(passes)
+                .filter(pass -> regularExpression || pass != ExtractionPass.REGEX)
+                .toList();
+    }
+
+    /**
+     * Chiave di confronto tra il link trovato da una regola e l'indirizzo delle pagine: host senza www,
+     * percorso senza slash finale e query, ignorando schema, porta e frammento.
+     */
+    static Optional<String> pageKey(String base, String href) {
+        try {
+            final URI uri = (base == null ? new URI(href.trim()) : new URI(base.trim()).resolve(href.trim())).normalize();
+            final String host = Optional.ofNullable(uri.getHost())
+                    .map(h -> h.toLowerCase(Locale.ROOT))
+                    .map(h -> h.startsWith("www.") ? h.substring(4) : h)
+                    .orElse("");
+            final String path = Optional.ofNullable(uri.getPath())
+                    .filter(p -> !p.isEmpty())
+                    .map(p -> p.length() > 1 && p.endsWith("/") ? p.substring(0, p.length() - 1) : p)
+                    .orElse("/");
+            return Optional.of(host + path + Optional.ofNullable(uri.getQuery()).map(q -> "?" + q).orElse(""));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            log.debug("Cannot resolve link {} on page {}", href, base);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stato di una singola valutazione di sito: le pagine indicizzate per chiave, gli indici costruiti
+     * e il contesto della richiesta da propagare ai thread delle pagine.
+     */
+    private final class Site {
+        private final Map<String, SitePage> pages = new HashMap<>();
+        private final Map<SitePage, PageIndex> indexes = new IdentityHashMap<>();
+        private final EvaluationContext context;
+        private final RuleSnapshot snapshot;
+        private final int rootId;
+        private final Optional<String> rootRule;
+        private final Optional<MemoryAdmissionController.Reservation> reservation;
+        private final AtomicLong decodedBytes = new AtomicLong();
+
+        private Site(List<SitePage> pages, EvaluationContext context, RuleSnapshot snapshot, int rootId,
+                     Optional<MemoryAdmissionController.Reservation> reservation) {
+            pages.forEach(page -> pageKey(null, page.getUrl()).ifPresent(key -> this.pages.putIfAbsent(key, page)));
+            this.context = context;
+            this.snapshot = snapshot;
+            this.rootId = rootId;
+            this.rootRule = Optional.of(snapshot.getRuleTree().name(rootId));
+            this.reservation = reservation;
+        }
+
+        private synchronized PageIndex index(SitePage page) {
+            return indexes.computeIfAbsent(page, key -> new PageIndex(this, key));
+        }
+
+        private Optional<SitePage> target(SitePage from, RuleResponse ruleResponse) {
+            if (ruleResponse.getStatus() == HttpStatus.NOT_FOUND || ruleResponse.getStatus() == HttpStatus.REQUEST_TIMEOUT) {
+                return Optional.empty();
+            }
+            return Stream.concat(
+                            Stream.ofNullable(ruleResponse.getUrl()),
+                            Stream.ofNullable(ruleResponse.getMultiple()).flatMap(List::stream).map(RuleResponse::getUrl).filter(Objects::nonNull))
+                    .map(href -> pageKey(from.getUrl(), href))
+                    .flatMap(Optional::stream)
+                    .map(pages::get)
+                    .filter(Objects::nonNull)
+                    .findFirst();
+        }
+
+        private synchronized void close() throws IOException {
+            for (PageIndex pageIndex : indexes.values()) {
+                pageIndex.close();
+            }
+        }
+    }
+
+    /**
+     * Indice incrementale di una pagina: ogni passaggio di estrazione viene eseguito al più una volta
+     * e i suoi anchor aggiunti all'indice condiviso da tutte le regole valutate sulla pagina.
+     */
+    private final class PageIndex {
+        private final Site site;
+        private final SitePage page;
+        private final EnumSet<ExtractionPass> passes = EnumSet.noneOf(ExtractionPass.class);
+        private CharSequence content;
+        private LuceneSearch luceneSearch;
+
+        private PageIndex(Site site, SitePage page) {
+            this.site = site;
+            this.page = page;
+        }
+
+        /**
+         * Il contenuto decodificato della pagina, decodificato alla prima richiesta.
+         *
+         * @throws RuleNotFoundException se la pagina supera {@code max_length_page_byte}
+         */
+        private synchronized CharSequence content() throws IOException {
+            if (content == null) {
+                content = ruleService.decode(page.getContent());
+                final long total = site.decodedBytes.addAndGet(RuleService.utf8Length(content));
+                site.reservation.ifPresent(r -> r.adjustToDecoded(total));
+            }
+            return content;
+        }
+
+        private synchronized LuceneSearch luceneSearch(ExtractionPass pass) throws IOException {
+            if (passes.add(pass)) {
+                final List<Anchor> anchors = switch (pass) {
+                    case REGEX -> regularExpressionAnchorService.find(content(), Boolean.FALSE);
+                    case JSOUP_ANCHORS -> jsoupAnchorService.find(content(), Boolean.FALSE);
+                    case JSOUP_ALL_TAGS -> jsoupAnchorService.find(content(), Boolean.TRUE);
+                };
+                if (luceneSearch == null) {
+                    luceneSearch = ruleService.createIncrementalLuceneSearch(anchors);
+                } else {
+                    ruleService.addAnchors(luceneSearch, anchors, pass);
+                }
+            }
+            return luceneSearch;
+        }
+
+        private synchronized void close() throws IOException {
+            if (luceneSearch != null) {
+                luceneSearch.close();
+            }
+        }
+    }
+}
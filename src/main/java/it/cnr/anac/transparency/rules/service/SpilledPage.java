@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Pagina decodificata riversata su un file temporaneo in UTF-16 e mappata in memoria: i caratteri vengono letti
+ * dalla page cache senza occupare lo heap. Il file viene eliminato subito dopo la mappatura, lo spazio su disco
+ * viene liberato quando la mappatura non è più raggiungibile.
+ * {@link #toString()} crea una copia dell'intera pagina sullo heap e va evitato nelle fasi di estrazione.
+ */
+public final class SpilledPage implements CharSequence {
+    static final String FILE_PREFIX = "rule-page-";
+    private static final String FILE_SUFFIX = ".utf16";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CharBuffer chars;
+    private final long utf8Length;
+    private final Path directory;
+
+    private SpilledPage(CharBuffer chars, long utf8Length, Path directory) {
+        this.chars = chars;
+        this.utf8Length = utf8Length;
+        this.directory = directory;
+    }
+
+    /**
+     * Scrive i caratteri letti da reader in un file temporaneo nella directory indicata e lo mappa in memoria.
+     *
+     * @param collapseWhitespace sostituisce le sequenze di spazi con un solo spazio, come {@code replaceAll("\\s+", " ")}
+     */
+    static SpilledPage write(Reader reader, Path directory, boolean collapseWhitespace) throws IOException {
+        Files.createDirectories(directory);
+        final Path file = Files.createTempFile(directory, FILE_PREFIX, FILE_SUFFIX);
+        try {
+            long utf8Length = 0;
+            boolean whitespace = false;
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_16BE)) {
+                final char[] buffer = new char[BUFFER_SIZE];
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    int length = 0;
+                    for (int i = 0; i < read; i++) {
+                        char c = buffer[i];
+                        if (collapseWhitespace && isWhitespace(c)) {
+                            if (whitespace) {
+                                continue;
+                            }
+                            whitespace = true;
+                            c = ' ';
+                        } else {
+                            whitespace = false;
+                        }
+                        buffer[length++] = c;
+                        utf8Length += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+                    }
+                    writer.write(buffer, 0, length);
+                }
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException(String.format("Page of %d bytes is too large to be mapped", channel.size()));
+                }
+                return new SpilledPage(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asCharBuffer(),
+                        utf8Length, directory);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    /**
+     * La stessa pagina con le sequenze di spazi sostituite da un solo spazio, in un nuovo file mappato.
+     */
+    public SpilledPage collapseWhitespace() throws IOException {
+        return write(reader(), directory, true);
+    }
+
+    /**
+     * Un reader indipendente sui caratteri della pagina, per i parser che leggono a blocchi.
+     */
+    public Reader reader() {
+        final CharBuffer source = chars.duplicate();
+        return new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (!source.hasRemaining()) {
+                    return -1;
+                }
+                final int read = Math.min(length, source.remaining());
+                source.get(buffer, offset, read);
+                return read;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * La dimensione in byte della pagina codificata in UTF-8.
+     */
+    public long getUtf8Length() {
+        return utf8Length;
+    }
+
+    @Override
+    public int length() {
+        return chars.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return chars.get(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return chars.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return chars.toString();
+    }
+}
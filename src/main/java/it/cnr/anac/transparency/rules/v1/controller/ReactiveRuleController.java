@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.v1.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import it.cnr.anac.transparency.rules.configuration.ExecutionProperties;
+import it.cnr.anac.transparency.rules.configuration.ReactiveConfiguration;
+import it.cnr.anac.transparency.rules.configuration.ReactiveProperties;
+import it.cnr.anac.transparency.rules.domain.EvaluationOptions;
+import it.cnr.anac.transparency.rules.domain.RuleResponse;
+import it.cnr.anac.transparency.rules.exception.RuleDeadlineExceededException;
+import it.cnr.anac.transparency.rules.exception.RuleException;
+import it.cnr.anac.transparency.rules.exception.RuleNotFoundException;
+import it.cnr.anac.transparency.rules.exception.RuleOverloadException;
+import it.cnr.anac.transparency.rules.monitoring.RuleMetrics;
+import it.cnr.anac.transparency.rules.service.EvaluationContext;
+import it.cnr.anac.transparency.rules.service.MemoryAdmissionController;
+import it.cnr.anac.transparency.rules.service.ReactivePageDecoder;
+import it.cnr.anac.transparency.rules.service.RuleExecutor;
+import it.cnr.anac.transparency.rules.service.RuleService;
+import it.cnr.anac.transparency.rules.service.RuleSnapshot;
+import it.cnr.anac.transparency.rules.service.RuleSnapshotManager;
+import it.cnr.anac.transparency.rules.service.SchedulingLanes;
+import it.cnr.anac.transparency.rules.v1.dto.RuleMapper;
+import it.cnr.anac.transparency.rules.v1.dto.RuleResponseDto;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Tag(name = "Reactive Rule Controller", description = "Metodi di applicazione delle regole sulla trasparenza " +
+        "con lettura del contenuto non bloccante per i thread del server")
+@Slf4j
+@RestController
+@RequestMapping("/v1/reactive/rules")
+public class ReactiveRuleController {
+    private static final String BODY_READER = ReactiveRuleController.class.getName() + ".BODY_READER";
+
+    private final RuleMapper ruleMapper;
+    private final RuleService ruleService;
+    private final RuleSnapshotManager ruleSnapshotManager;
+    private final RuleMetrics ruleMetrics;
+    private final ReactivePageDecoder reactivePageDecoder;
+    private final MemoryAdmissionController memoryAdmissionController;
+    private final SchedulingLanes schedulingLanes;
+    private final RuleExecutor ruleExecutor;
+    private final ReactiveProperties reactiveProperties;
+    private final ExecutionProperties executionProperties;
+    private final Scheduler ruleScheduler;
+
+    public ReactiveRuleController(RuleMapper ruleMapper, RuleService ruleService, RuleSnapshotManager ruleSnapshotManager, RuleMetrics ruleMetrics,
+                                  ReactivePageDecoder reactivePageDecoder,
+                                  MemoryAdmissionController memoryAdmissionController, SchedulingLanes schedulingLanes,
+                                  RuleExecutor ruleExecutor,
+                                  ReactiveProperties reactiveProperties, ExecutionProperties executionProperties,
+                                  @Qualifier(ReactiveConfiguration.RULE_SCHEDULER) Scheduler ruleScheduler) {
+        this.ruleMapper = ruleMapper;
+        this.ruleService = ruleService;
+        this.ruleSnapshotManager = ruleSnapshotManager;
+        this.ruleMetrics = ruleMetrics;
+        this.reactivePageDecoder = reactivePageDecoder;
+        this.memoryAdmissionController = memoryAdmissionController;
+        this.schedulingLanes = schedulingLanes;
+        this.ruleExecutor = ruleExecutor;
+        this.reactiveProperties = reactiveProperties;
+        this.executionProperties = executionProperties;
+        this.ruleScheduler = ruleScheduler;
+    }
+
+    @Operation(
+            summary = "Applicazione di una singola regola allo stream in base64 passato in input.",
+            description = "Variante reattiva di POST /v1/rules: il contenuto viene letto a blocchi e decodificato " +
+                    "in modo incrementale, la valutazione avviene su uno scheduler dedicato nella corsia adeguata alla dimensione della pagina.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Il termine della regola è stato trovato e " +
+                    "viene restituito un oggetto json con le informazioni sullo score"),
+            @ApiResponse(responseCode = "400", description = "Il termine della regola non è stato trovato o la regola non esiste."),
+            @ApiResponse(responseCode = "429", description = "Il servizio è sovraccarico, riprovare dopo i secondi indicati in Retry-After.")
+    })
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "Pagina html in base64", required = true)
+    @PostMapping
+    public Mono<ResponseEntity<Object>> post(
+            HttpServletRequest request,
+            @RequestParam(name = "rootRule", required = false) Optional<String> rootRule,
+            @RequestParam(name = "ruleName") Optional<String> ruleName,
+            @RequestHeader(name = EvaluationContext.DEADLINE_HEADER, required = false) Optional<Long> deadline
+    ) {
+        final EvaluationContext context = EvaluationContext.create(ruleExecutor.deadline(deadline));
+        final RuleSnapshot snapshot = ruleSnapshotManager.pin(context);
+        return evaluate(request, context, contentDecoded -> {
+                    try {
+                        return ResponseEntity.ok()
+                                .header(RuleSnapshotManager.VERSION_HEADER, snapshot.getVersionLabel())
+                                .<Object>body(ruleMapper.convert(outcome(ruleService.executeRule(contentDecoded, rootRule, ruleName))));
+                    } catch (RuleException e) {
+                        return ResponseEntity.status(e.getHttpStatus()).<Object>body(e.getMessage());
+                    } catch (IOException e) {
+                        throw Exceptions.propagate(e);
+                    }
+                })
+                .onErrorResume(throwable -> Mono.just(this.<Object>onError(throwable, ruleName)));
+    }
+
+    @Operation(
+            summary = "Vengono applicate tutte le regole figlie di una determinata regola, allo stream in base64 passato in input.",
+            description = "Variante reattiva di POST /v1/rules/child: il contenuto viene letto a blocchi e decodificato " +
+                    "in modo incrementale, la valutazione avviene su uno scheduler dedicato nella corsia adeguata alla dimensione della pagina.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "La regola padre esiste " +
+                    "viene restituito una lista di oggetti json con le informazioni sullo score"),
+            @ApiResponse(responseCode = "400", description = "La regola padre non esiste."),
+            @ApiResponse(responseCode = "429", description = "Il servizio è sovraccarico, riprovare dopo i secondi indicati in Retry-After.")
+    })
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "Pagina html in base64", required = true)
+    @PostMapping("/child")
+    public Mono<ResponseEntity<List<RuleResponseDto>>> postChild(
+            HttpServletRequest request,
+            @RequestParam(name = "rootRule", required = false) Optional<String> rootRule,
+            @RequestParam(name = "ruleName") Optional<String> ruleName,
+            @RequestParam(name = "allRuleMustBePresent", required = false, defaultValue = "false") Boolean allRuleMustBePresent,
+            @RequestParam(name = "atLeastHalf", required = false, defaultValue = "false") Boolean atLeastHalf,
+            @RequestParam(name = "forceJsoup", required = false, defaultValue = "false") Boolean forceJsoup,
+            @RequestParam(name = "evaluateAnchorsFirst", required = false, defaultValue = "false") Boolean evaluateAnchorsFirst,
+            @RequestHeader(name = EvaluationContext.DEADLINE_HEADER, required = false) Optional<Long> deadline,
+            @RequestParam(name = "url", required = false) Optional<String> url,
+            @RequestParam(name = "hedged", required = false, defaultValue = "false") Boolean hedged) {
+        final EvaluationContext context = EvaluationContext.create(ruleExecutor.deadline(deadline));
+        final RuleSnapshot snapshot = ruleSnapshotManager.pin(context);
+        final EvaluationOptions options = EvaluationOptions.builder()
+                .allRuleMustBePresent(allRuleMustBePresent)
+                .atLeastHalf(atLeastHalf)
+                .forceJsoup(forceJsoup)
+                .evaluateAnchorsFirst(evaluateAnchorsFirst)
+                .url(url)
+                .hedged(hedged)
+                .build();
+        return evaluate(request, context, contentDecoded -> {
+                    try {
+                        return ruleService.executeChildRuleWithFallback(contentDecoded, rootRule, ruleName, options);
+                    } catch (IOException e) {
+                        throw Exceptions.propagate(e);
+                    }
+                })
+                .map(ruleResponses -> {
+                    ruleMetrics.outcomes(ruleResponses);
+                    if (!ruleService.isSatisfied(ruleResponses, rootRule, ruleName, options)) {
+                        return ResponseEntity.notFound().<List<RuleResponseDto>>build();
+                    }
+                    return ResponseEntity.status(context.getStatus())
+                            .header(EvaluationContext.PARTIAL_HEADER, String.valueOf(context.isPartial()))
+                            .header(RuleSnapshotManager.VERSION_HEADER, snapshot.getVersionLabel())
+                            .body(
+                                    ruleResponses
+                                            .stream()
+                                            .map(ruleMapper::convert)
+                                            .collect(Collectors.toList())
+                            );
+                })
+                .onErrorResume(throwable -> Mono.just(this.<List<RuleResponseDto>>onError(throwable, ruleName)));
+    }
+
+    /**
+     * Decodifica il body, estendendo la prenotazione di memoria durante la lettura e aggiornandola
+     * dopo la decodifica, e valuta il contenuto sullo scheduler dedicato
+     * dopo aver ottenuto l'accesso alla corsia corrispondente alla dimensione della pagina.
+     * L'attesa della corsia avviene anch'essa sullo scheduler, mai sul thread che legge il body.
+     */
+    private <T> Mono<T> evaluate(HttpServletRequest request, EvaluationContext context, Function<CharSequence, T> evaluation) {
+        final Optional<MemoryAdmissionController.Reservation> reservation = memoryAdmissionController.current();
+        return reactivePageDecoder.decode(body(request)
+                        .doOnNext(dataBuffer -> reservation.ifPresent(r -> r.onRead(dataBuffer.readableByteCount()))), context)
+                .doOnNext(contentDecoded -> reservation.ifPresent(r -> r.adjustToDecoded(contentDecoded)))
+                .flatMap(contentDecoded -> Mono.using(
+                        () -> {
+                            final SchedulingLanes.Permit permit = schedulingLanes.acquire(contentDecoded.length());
+                            context.setLanePermit(permit);
+                            return permit;
+                        },
+                        permit -> Mono.fromCallable(() -> {
+                            try (EvaluationContext.Scope scope = context.attach()) {
+                                return evaluation.apply(contentDecoded);
+                            }
+                        }),
+                        SchedulingLanes.Permit::close
+                ).subscribeOn(ruleScheduler));
+    }
+
+    /**
+     * Il body viene letto con l'I/O asincrono delle servlet: il {@code ReadListener} viene registrato quando
+     * Spring MVC avvia l'elaborazione asincrona della richiesta e i blocchi vengono letti solo quando sono
+     * disponibili e richiesti dal decoder, per cui un client lento non occupa alcun thread in attesa dei dati.
+     */
+    private Flux<DataBuffer> body(HttpServletRequest request) {
+        final Sinks.One<ServerHttpRequest> asyncRequest = Sinks.one();
+        WebAsyncUtils.getAsyncManager(request).registerDeferredResultInterceptor(BODY_READER, new DeferredResultProcessingInterceptor() {
+            @Override
+            public <T> void preProcess(NativeWebRequest webRequest, DeferredResult<T> deferredResult) {
+                try {
+                    asyncRequest.tryEmitValue(new ServletServerHttpRequest(request, request.getAsyncContext(), "",
+                            DefaultDataBufferFactory.sharedInstance, reactiveProperties.getBufferSize()));
+                } catch (IOException | URISyntaxException e) {
+                    asyncRequest.tryEmitError(e);
+                }
+            }
+        });
+        return asyncRequest.asMono().flatMapMany(ServerHttpRequest::getBody);
+    }
+
+    private RuleResponse outcome(RuleResponse ruleResponse) {
+        ruleMetrics.outcome(ruleResponse);
+        return ruleResponse;
+    }
+
+    private <T> ResponseEntity<T> onError(Throwable throwable, Optional<String> ruleName) {
+        final Throwable cause = Exceptions.unwrap(throwable);
+        if (cause instanceof RuleNotFoundException) {
+            ruleMetrics.notFound();
+            return ResponseEntity.notFound().build();
+        }
+        if (cause instanceof RuleDeadlineExceededException) {
+            log.warn("Deadline exceeded for rule {}", ruleName);
+            return ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT).header(EvaluationContext.PARTIAL_HEADER, Boolean.TRUE.toString()).build();
+        }
+        if (cause instanceof RuleOverloadException ruleOverloadException) {
+            return RuleExceptionHandler.tooManyRequests(ruleOverloadException);
+        }
+        if (cause instanceof RejectedExecutionException) {
+            log.warn("Rule scheduler is full, request for rule {} rejected", ruleName);
+            return RuleExceptionHandler.tooManyRequests(new RuleOverloadException(executionProperties.getRetryAfter()));
+        }
+        log.error("Cannot execute rule {}", ruleName, cause);
+        return ResponseEntity.internalServerError().build();
+    }
+}
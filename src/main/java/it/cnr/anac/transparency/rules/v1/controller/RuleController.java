@@ -21,14 +21,29 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import it.cnr.anac.transparency.rules.configuration.RuleConfiguration;
+import it.cnr.anac.transparency.rules.domain.EvaluationOptions;
 import it.cnr.anac.transparency.rules.domain.RuleResponse;
+import it.cnr.anac.transparency.rules.domain.RuleTreeResponse;
+import it.cnr.anac.transparency.rules.domain.SitePage;
+import it.cnr.anac.transparency.rules.exception.RuleDeadlineExceededException;
 import it.cnr.anac.transparency.rules.exception.RuleException;
 import it.cnr.anac.transparency.rules.exception.RuleNotFoundException;
+import it.cnr.anac.transparency.rules.monitoring.RuleMetrics;
+import it.cnr.anac.transparency.rules.monitoring.SlowPageCapture;
+import it.cnr.anac.transparency.rules.service.EvaluationContext;
+import it.cnr.anac.transparency.rules.service.EvaluationDiagnostics;
+import it.cnr.anac.transparency.rules.service.MemoryAdmissionController;
+import it.cnr.anac.transparency.rules.service.RuleExecutor;
 import it.cnr.anac.transparency.rules.service.RuleService;
+import it.cnr.anac.transparency.rules.service.RuleSnapshot;
+import it.cnr.anac.transparency.rules.service.RuleSnapshotManager;
+import it.cnr.anac.transparency.rules.service.SiteEvaluationService;
+import it.cnr.anac.transparency.rules.v1.dto.ExplainResponseDto;
 import it.cnr.anac.transparency.rules.v1.dto.RuleDto;
 import it.cnr.anac.transparency.rules.v1.dto.RuleMapper;
 import it.cnr.anac.transparency.rules.v1.dto.RuleResponseDto;
+import it.cnr.anac.transparency.rules.v1.dto.RuleTreeResponseDto;
+import it.cnr.anac.transparency.rules.v1.dto.SiteRequestDto;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -36,10 +51,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Tag(name = "Rule Controller", description = "Metodi di consultazione e applicazione delle regole sulla trasparenza")
 @RequiredArgsConstructor
@@ -47,9 +60,14 @@ import java.util.stream.Stream;
 @RestController
 @RequestMapping("/v1/rules")
 public class RuleController {
-    private final RuleConfiguration ruleConfiguration;
+    private final RuleSnapshotManager ruleSnapshotManager;
     private final RuleMapper ruleMapper;
     private final RuleService ruleService;
+    private final SiteEvaluationService siteEvaluationService;
+    private final RuleExecutor ruleExecutor;
+    private final MemoryAdmissionController memoryAdmissionController;
+    private final RuleMetrics ruleMetrics;
+    private final SlowPageCapture slowPageCapture;
     @Operation(
             summary = "Visualizzazione dell'albero delle regole.",
             description = "Il servizio recupera dalla configurazione l'albero delle regole e lo presenta come json")
@@ -58,15 +76,18 @@ public class RuleController {
     })
     @GetMapping
     public ResponseEntity<Map<String, RuleDto>> get() {
-        return ResponseEntity.ok().body(
-                ruleConfiguration.getRules()
-                        .entrySet()
-                        .stream()
-                        .collect(Collectors.toMap(
-                                Map.Entry::getKey,
-                                e -> ruleMapper.convert(e.getValue())
-                        ))
-        );
+        final RuleSnapshot snapshot = ruleSnapshotManager.latest();
+        return ResponseEntity.ok()
+                .header(RuleSnapshotManager.VERSION_HEADER, snapshot.getVersionLabel())
+                .body(
+                        snapshot.getConfiguration().getRules()
+                                .entrySet()
+                                .stream()
+                                .collect(Collectors.toMap(
+                                        Map.Entry::getKey,
+                                        e -> ruleMapper.convert(e.getValue())
+                                ))
+                );
     }
     @Operation(
             summary = "Applicazione di una singola regola allo stream in base64 passato in input.",
@@ -75,27 +96,69 @@ public class RuleController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Il termine della regola è stato trovato e " +
                     "viene restituito un oggetto json con le informazioni sullo score"),
-            @ApiResponse(responseCode = "400", description = "Il termine della regola non è stato trovato o la regola non esiste.")
+            @ApiResponse(responseCode = "400", description = "Il termine della regola non è stato trovato o la regola non esiste."),
+            @ApiResponse(responseCode = "408", description = "La scadenza della richiesta è stata superata."),
+            @ApiResponse(responseCode = "429", description = "Il servizio è sovraccarico, riprovare dopo i secondi indicati in Retry-After.")
     })
     @PostMapping
     public ResponseEntity post(
             @RequestBody String content,
             @RequestParam(name = "rootRule", required = false) Optional<String> rootRule,
-            @RequestParam(name = "ruleName") Optional<String> ruleName
+            @RequestParam(name = "ruleName") Optional<String> ruleName,
+            @RequestHeader(name = EvaluationContext.DEADLINE_HEADER, required = false) Optional<Long> deadline
+    ) {
+        return evaluateRule(content, rootRule, ruleName, deadline, null);
+    }
+
+    @Operation(
+            summary = "Applicazione di una singola regola in modalità explain.",
+            description = "Come il metodo senza il parametro explain, la risposta contiene anche la diagnostica della" +
+                    " valutazione: tempi e memoria allocata per fase, anchor per estrattore e per origine, anchor scartati" +
+                    " perché troppo lunghi, documenti indicizzati e, per ogni regola, tempo di ricerca e numero di candidati.")
+    @PostMapping(params = "explain=true")
+    public ResponseEntity<ExplainResponseDto<Object>> postExplain(
+            @RequestBody String content,
+            @RequestParam(name = "rootRule", required = false) Optional<String> rootRule,
+            @RequestParam(name = "ruleName") Optional<String> ruleName,
+            @RequestHeader(name = EvaluationContext.DEADLINE_HEADER, required = false) Optional<Long> deadline
     ) {
-        try {
-            final RuleResponse ruleResponse = ruleService.executeRule(
-                    ruleService.base64Decode(content),
+        final EvaluationDiagnostics diagnostics = new EvaluationDiagnostics();
+        return explain(evaluateRule(content, rootRule, ruleName, deadline, diagnostics), diagnostics);
+    }
+
+    private ResponseEntity<?> evaluateRule(String content, Optional<String> rootRule, Optional<String> ruleName,
+                                           Optional<Long> deadline, EvaluationDiagnostics explain) {
+        final EvaluationDiagnostics diagnostics = slowPageCapture.diagnostics(explain);
+        final EvaluationContext context = EvaluationContext.create(ruleExecutor.deadline(deadline), diagnostics);
+        final RuleSnapshot snapshot = ruleSnapshotManager.pin(context);
+        try (EvaluationContext.Scope scope = context.attach();
+             SlowPageCapture.Capture capture = slowPageCapture.start(context, diagnostics, "/v1/rules",
+                     captureParameters(rootRule, ruleName, null))) {
+            final Optional<MemoryAdmissionController.Reservation> reservation = memoryAdmissionController.current();
+            final CharSequence contentDecoded = decode(content, reservation);
+            capture.page(contentDecoded);
+            final RuleResponse ruleResponse = ruleExecutor.execute(contentDecoded.length(), () -> ruleService.executeRule(
+                    contentDecoded,
                     rootRule,
                     ruleName
-            );
+            ));
+            ruleMetrics.outcome(ruleResponse);
             RuleResponseDto convert = ruleMapper.convert(ruleResponse);
-            return ResponseEntity.ok().body(convert);
+            return ResponseEntity.ok()
+                    .header(RuleSnapshotManager.VERSION_HEADER, snapshot.getVersionLabel())
+                    .body(convert);
         } catch (RuleException e) {
             return ResponseEntity.status(e.getHttpStatus()).body(e.getMessage());
         } catch (RuleNotFoundException e) {
+            ruleMetrics.notFound();
             return ResponseEntity.notFound().build();
-        } catch (Exception e) {
+        } catch (RuleDeadlineExceededException e) {
+            log.warn("Deadline exceeded for rule {}", ruleName);
+            return ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT)
+                    .header(EvaluationContext.PARTIAL_HEADER, Boolean.TRUE.toString())
+                    .header(RuleSnapshotManager.VERSION_HEADER, snapshot.getVersionLabel())
+                    .build();
+        } catch (IOException e) {
             log.error("Cannot execute rule {}", ruleName, e);
             return ResponseEntity.internalServerError().build();
         }
@@ -108,7 +171,10 @@ public class RuleController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "La regola padre esiste " +
                     "viene restituito una lista di oggetti json con le informazioni sullo score"),
-            @ApiResponse(responseCode = "400", description = "La regola padre non esiste.")
+            @ApiResponse(responseCode = "206", description = "La scadenza della richiesta è stata superata, " +
+                    "le regole non valutate hanno stato 408"),
+            @ApiResponse(responseCode = "400", description = "La regola padre non esiste."),
+            @ApiResponse(responseCode = "429", description = "Il servizio è sovraccarico, riprovare dopo i secondi indicati in Retry-After.")
     })
     @PostMapping("/child")
     public ResponseEntity<List<RuleResponseDto>> postChild(
@@ -118,54 +184,238 @@ public class RuleController {
             @RequestParam(name = "allRuleMustBePresent", required = false, defaultValue = "false") Boolean allRuleMustBePresent,
             @RequestParam(name = "atLeastHalf", required = false, defaultValue = "false") Boolean atLeastHalf,
             @RequestParam(name = "forceJsoup", required = false, defaultValue = "false") Boolean forceJsoup,
-            @RequestParam(name = "evaluateAnchorsFirst", required = false, defaultValue = "false") Boolean evaluateAnchorsFirst) {
-        try {
-            final String contentDecoded = ruleService.base64Decode(content);
-            List<RuleResponse> ruleResponses = Collections.emptyList();
-            List<RuleResponse> rulesFound = Collections.emptyList();
-            if (!forceJsoup && contentDecoded.getBytes(StandardCharsets.UTF_8).length < ruleConfiguration.getMaxLengthContentRegularExpression()) {
-                ruleResponses = ruleService.executeChildRule(contentDecoded, rootRule, ruleName);
-                rulesFound = ruleResponses
-                        .stream()
-                        .filter(ruleResponse -> !ruleResponse.getStatus().equals(HttpStatus.NOT_FOUND)).collect(Collectors.toList());
-            }
-            if (rulesFound.size() != ruleService.childRules(rootRule, ruleName).size()) {
-                if(evaluateAnchorsFirst) {
-                    ruleResponses = ruleService.executeChildRuleAlternative(contentDecoded, rootRule, ruleName, rulesFound, Boolean.FALSE);
-                    rulesFound = ruleResponses
-                            .stream()
-                            .filter(ruleResponse -> !ruleResponse.getStatus().equals(HttpStatus.NOT_FOUND)).collect(Collectors.toList());
-                }
-                if (rulesFound.size() != ruleService.childRules(rootRule, ruleName).size()) {
-                    ruleResponses = ruleService.executeChildRuleAlternative(contentDecoded, rootRule, ruleName, rulesFound, Boolean.TRUE);
-                }
-            }
-            final List<RuleResponse> ruleResponseOK = ruleResponses.stream().filter(
-                    ruleResponse -> Stream.of(HttpStatus.OK, HttpStatus.ACCEPTED, HttpStatus.MULTI_STATUS)
-                            .anyMatch(httpStatus -> httpStatus == ruleResponse.getStatus())).toList();
-            if (allRuleMustBePresent && ruleResponseOK.size() < ruleService.childRules(rootRule, ruleName).size()) {
-                log.info("Found {} rules but total are:{}", ruleResponseOK.size(), ruleService.childRules(rootRule, ruleName).size());
+            @RequestParam(name = "evaluateAnchorsFirst", required = false, defaultValue = "false") Boolean evaluateAnchorsFirst,
+            @RequestHeader(name = EvaluationContext.DEADLINE_HEADER, required = false) Optional<Long> deadline,
+            @RequestParam(name = "url", required = false) Optional<String> url,
+            @RequestParam(name = "hedged", required = false, defaultValue = "false") Boolean hedged) {
+        return evaluateChildRule(content, rootRule, ruleName, deadline,
+                options(allRuleMustBePresent, atLeastHalf, forceJsoup, evaluateAnchorsFirst, url, hedged), null);
+    }
+
+    /**
+     * Applica le regole figlie senza scadenza, senza url della pagina e senza valutazione in parallelo dei passaggi.
+     */
+    public ResponseEntity<List<RuleResponseDto>> postChild(String content, Optional<String> rootRule, Optional<String> ruleName,
+                                                           Boolean allRuleMustBePresent, Boolean atLeastHalf,
+                                                           Boolean forceJsoup, Boolean evaluateAnchorsFirst) {
+        return postChild(content, rootRule, ruleName, allRuleMustBePresent, atLeastHalf, forceJsoup, evaluateAnchorsFirst,
+                Optional.empty(), Optional.empty(), Boolean.FALSE);
+    }
+
+    @Operation(
+            summary = "Applicazione delle regole figlie in modalità explain.",
+            description = "Come il metodo senza il parametro explain, la risposta contiene anche la diagnostica della" +
+                    " valutazione, comprensiva di tutti i passaggi di estrazione eseguiti.")
+    @PostMapping(value = "/child", params = "explain=true")
+    public ResponseEntity<ExplainResponseDto<Object>> postChildExplain(
+            @RequestBody String content,
+            @RequestParam(name = "rootRule", required = false) Optional<String> rootRule,
+            @RequestParam(name = "ruleName") Optional<String> ruleName,
+            @RequestParam(name = "allRuleMustBePresent", required = false, defaultValue = "false") Boolean allRuleMustBePresent,
+            @RequestParam(name = "atLeastHalf", required = false, defaultValue = "false") Boolean atLeastHalf,
+            @RequestParam(name = "forceJsoup", required = false, defaultValue = "false") Boolean forceJsoup,
+            @RequestParam(name = "evaluateAnchorsFirst", required = false, defaultValue = "false") Boolean evaluateAnchorsFirst,
+            @RequestHeader(name = EvaluationContext.DEADLINE_HEADER, required = false) Optional<Long> deadline,
+            @RequestParam(name = "url", required = false) Optional<String> url,
+            @RequestParam(name = "hedged", required = false, defaultValue = "false") Boolean hedged) {
+        final EvaluationDiagnostics diagnostics = new EvaluationDiagnostics();
+        return explain(evaluateChildRule(content, rootRule, ruleName, deadline,
+                options(allRuleMustBePresent, atLeastHalf, forceJsoup, evaluateAnchorsFirst, url, hedged), diagnostics), diagnostics);
+    }
+
+    private ResponseEntity<List<RuleResponseDto>> evaluateChildRule(String content, Optional<String> rootRule, Optional<String> ruleName,
+                                                                    Optional<Long> deadline, EvaluationOptions options,
+                                                                    EvaluationDiagnostics explain) {
+        final EvaluationDiagnostics diagnostics = slowPageCapture.diagnostics(explain);
+        final EvaluationContext context = EvaluationContext.create(ruleExecutor.deadline(deadline), diagnostics);
+        final RuleSnapshot snapshot = ruleSnapshotManager.pin(context);
+        try (EvaluationContext.Scope scope = context.attach();
+             SlowPageCapture.Capture capture = slowPageCapture.start(context, diagnostics, "/v1/rules/child",
+                     captureParameters(rootRule, ruleName, options))) {
+            final Optional<MemoryAdmissionController.Reservation> reservation = memoryAdmissionController.current();
+            final CharSequence contentDecoded = decode(content, reservation);
+            capture.page(contentDecoded);
+            final List<RuleResponse> ruleResponses = ruleExecutor.execute(contentDecoded.length(), () -> ruleService.executeChildRuleWithFallback(
+                    contentDecoded, rootRule, ruleName, options));
+            ruleMetrics.outcomes(ruleResponses);
+            if (!ruleService.isSatisfied(ruleResponses, rootRule, ruleName, options)) {
                 return ResponseEntity.notFound().build();
             }
-            if (atLeastHalf && ruleResponseOK.size() < Math.divideExact(ruleService.childRules(rootRule, ruleName).size(), 2)) {
-                log.info("Found {} rules but total are:{}", ruleResponseOK.size(), ruleService.childRules(rootRule, ruleName).size());
+            return ResponseEntity.status(context.getStatus())
+                    .header(EvaluationContext.PARTIAL_HEADER, String.valueOf(context.isPartial()))
+                    .header(RuleSnapshotManager.VERSION_HEADER, snapshot.getVersionLabel())
+                    .body(
+                            ruleResponses
+                                    .stream()
+                                    .map(ruleMapper::convert)
+                                    .collect(Collectors.toList())
+                    );
+        } catch (RuleNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IOException e) {
+            log.error("Cannot execute rule {}", ruleName, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    @Operation(
+            summary = "Applicazione di più regole, o di un sottoalbero di regole, allo stream in base64 passato in input.",
+            description = "Il servizio accetta in input una stringa in base64 contenente la pagina html e l'elenco dei nomi" +
+                    " logici delle regole da applicare (ruleNames), in alternativa la regola (ruleName) da cui partire e il numero" +
+                    " di livelli di regole figlie da valutare (depth). Gli anchor della pagina vengono estratti e indicizzati una" +
+                    " sola volta per tutte le regole, la risposta riproduce la gerarchia delle regole.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Almeno una regola è stata trovata, " +
+                    "viene restituito l'albero degli esiti con le informazioni sullo score"),
+            @ApiResponse(responseCode = "206", description = "La scadenza della richiesta è stata superata, " +
+                    "le regole non valutate hanno stato 408"),
+            @ApiResponse(responseCode = "404", description = "Nessuna regola è stata trovata o una delle regole indicate non esiste."),
+            @ApiResponse(responseCode = "408", description = "La scadenza della richiesta è stata superata durante l'estrazione."),
+            @ApiResponse(responseCode = "429", description = "Il servizio è sovraccarico, riprovare dopo i secondi indicati in Retry-After.")
+    })
+    @PostMapping("/tree")
+    public ResponseEntity<Map<String, RuleTreeResponseDto>> postTree(
+            @RequestBody String content,
+            @RequestParam(name = "rootRule", required = false) Optional<String> rootRule,
+            @RequestParam(name = "ruleName", required = false) Optional<String> ruleName,
+            @RequestParam(name = "ruleNames", required = false) Optional<List<String>> ruleNames,
+            @RequestParam(name = "depth", required = false, defaultValue = "1") Integer depth,
+            @RequestParam(name = "forceJsoup", required = false, defaultValue = "false") Boolean forceJsoup,
+            @RequestHeader(name = EvaluationContext.DEADLINE_HEADER, required = false) Optional<Long> deadline) {
+        final EvaluationContext context = EvaluationContext.create(ruleExecutor.deadline(deadline));
+        final RuleSnapshot snapshot = ruleSnapshotManager.pin(context);
+        try (EvaluationContext.Scope scope = context.attach()) {
+            final Optional<MemoryAdmissionController.Reservation> reservation = memoryAdmissionController.current();
+            final CharSequence contentDecoded = decode(content, reservation);
+            final Map<String, RuleTreeResponse> ruleTreeResponses = ruleExecutor.execute(contentDecoded.length(), () -> ruleService.executeRuleTree(
+                    contentDecoded, rootRule, ruleName, ruleNames.orElse(Collections.emptyList()), depth, forceJsoup));
+            if (ruleTreeResponses.values().stream().allMatch(this::notFound)) {
                 return ResponseEntity.notFound().build();
             }
-            if (ruleResponses.stream().allMatch(ruleResponse -> ruleResponse.getStatus().equals(HttpStatus.NOT_FOUND))) {
+            final Map<String, RuleTreeResponseDto> body = new LinkedHashMap<>();
+            ruleTreeResponses.forEach((key, value) -> body.put(key, ruleMapper.convert(value)));
+            return ResponseEntity.status(context.getStatus())
+                    .header(EvaluationContext.PARTIAL_HEADER, String.valueOf(context.isPartial()))
+                    .header(RuleSnapshotManager.VERSION_HEADER, snapshot.getVersionLabel())
+                    .body(body);
+        } catch (RuleNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (RuleDeadlineExceededException e) {
+            log.warn("Deadline exceeded for rules {}", ruleNames.orElse(Collections.emptyList()));
+            return ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT)
+                    .header(EvaluationContext.PARTIAL_HEADER, Boolean.TRUE.toString())
+                    .header(RuleSnapshotManager.VERSION_HEADER, snapshot.getVersionLabel())
+                    .build();
+        } catch (IOException e) {
+            log.error("Cannot execute rules {}", ruleNames.orElse(Collections.emptyList()), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    @Operation(
+            summary = "Applicazione dell'albero delle regole a un insieme di pagine dello stesso sito.",
+            description = "Il servizio accetta in input l'elenco delle pagine del sito (url e pagina html in base64): la regola" +
+                    " radice viene valutata sulla prima pagina, le regole figlie di ogni regola trovata sulla pagina indicata" +
+                    " dal link trovato, se presente nell'elenco, fino alle foglie. Ogni pagina viene estratta e indicizzata una" +
+                    " sola volta e le pagine vengono valutate in parallelo.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Viene restituito l'albero degli esiti delle regole valutate"),
+            @ApiResponse(responseCode = "206", description = "La scadenza della richiesta è stata superata, " +
+                    "le regole non valutate hanno stato 408"),
+            @ApiResponse(responseCode = "404", description = "Nessuna regola è stata trovata o la regola radice non esiste."),
+            @ApiResponse(responseCode = "408", description = "La scadenza della richiesta è stata superata durante la valutazione della regola radice."),
+            @ApiResponse(responseCode = "429", description = "Il servizio è sovraccarico, riprovare dopo i secondi indicati in Retry-After.")
+    })
+    @PostMapping("/site")
+    public ResponseEntity<Map<String, RuleTreeResponseDto>> postSite(
+            @RequestBody SiteRequestDto site,
+            @RequestHeader(name = EvaluationContext.DEADLINE_HEADER, required = false) Optional<Long> deadline) {
+        final EvaluationContext context = EvaluationContext.create(ruleExecutor.deadline(deadline));
+        final RuleSnapshot snapshot = ruleSnapshotManager.pin(context);
+        try (EvaluationContext.Scope scope = context.attach()) {
+            final List<SitePage> pages = Optional.ofNullable(site.getPages())
+                    .orElse(Collections.emptyList())
+                    .stream()
+                    .map(page -> new SitePage(page.getUrl(), page.getContent()))
+                    .toList();
+            final Map<String, RuleTreeResponse> ruleTreeResponses = siteEvaluationService.evaluate(pages, Optional.ofNullable(site.getRootRule()),
+                    memoryAdmissionController.current());
+            if (ruleTreeResponses.values().stream().allMatch(this::notFound)) {
                 return ResponseEntity.notFound().build();
             }
-            return ResponseEntity.ok().body(
-                    ruleResponses
-                            .stream()
-                            .map(ruleMapper::convert)
-                            .collect(Collectors.toList())
-
-            );
+            final Map<String, RuleTreeResponseDto> body = new LinkedHashMap<>();
+            ruleTreeResponses.forEach((key, value) -> body.put(key, ruleMapper.convert(value)));
+            return ResponseEntity.status(context.getStatus())
+                    .header(EvaluationContext.PARTIAL_HEADER, String.valueOf(context.isPartial()))
+                    .header(RuleSnapshotManager.VERSION_HEADER, snapshot.getVersionLabel())
+                    .body(body);
         } catch (RuleNotFoundException e) {
             return ResponseEntity.notFound().build();
+        } catch (RuleDeadlineExceededException e) {
+            log.warn("Deadline exceeded for site of {} pages", Optional.ofNullable(site.getPages()).map(List::size).orElse(0));
+            return ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT)
+                    .header(EvaluationContext.PARTIAL_HEADER, Boolean.TRUE.toString())
+                    .header(RuleSnapshotManager.VERSION_HEADER, snapshot.getVersionLabel())
+                    .build();
         } catch (IOException e) {
-            log.error("Cannot execute rule {}", ruleName, e);
+            log.error("Cannot execute rules on site", e);
             return ResponseEntity.internalServerError().build();
         }
     }
+
+    private EvaluationOptions options(Boolean allRuleMustBePresent, Boolean atLeastHalf, Boolean forceJsoup,
+                                      Boolean evaluateAnchorsFirst, Optional<String> url, Boolean hedged) {
+        return EvaluationOptions.builder()
+                .allRuleMustBePresent(allRuleMustBePresent)
+                .atLeastHalf(atLeastHalf)
+                .forceJsoup(forceJsoup)
+                .evaluateAnchorsFirst(evaluateAnchorsFirst)
+                .url(url)
+                .hedged(hedged)
+                .build();
+    }
+
+    /**
+     * I parametri della richiesta salvati con le pagine catturate, con gli stessi nomi dei parametri http.
+     */
+    private Map<String, String> captureParameters(Optional<String> rootRule, Optional<String> ruleName, EvaluationOptions options) {
+        if (!slowPageCapture.isEnabled()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, String> parameters = new LinkedHashMap<>();
+        rootRule.ifPresent(value -> parameters.put("rootRule", value));
+        ruleName.ifPresent(value -> parameters.put("ruleName", value));
+        if (options != null) {
+            parameters.put("allRuleMustBePresent", String.valueOf(options.isAllRuleMustBePresent()));
+            parameters.put("atLeastHalf", String.valueOf(options.isAtLeastHalf()));
+            parameters.put("forceJsoup", String.valueOf(options.isForceJsoup()));
+            parameters.put("evaluateAnchorsFirst", String.valueOf(options.isEvaluateAnchorsFirst()));
+            parameters.put("hedged", String.valueOf(options.isHedged()));
+            options.getUrl().ifPresent(value -> parameters.put("url", value));
+        }
+        return parameters;
+    }
+
+    /**
+     * La risposta in modalità explain: stato e header della valutazione, il corpo originale come risultato
+     * e la diagnostica raccolta, presente anche quando la regola non è stata trovata.
+     */
+    private ResponseEntity<ExplainResponseDto<Object>> explain(ResponseEntity<?> response, EvaluationDiagnostics diagnostics) {
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .body(new ExplainResponseDto<>(response.getBody(), ruleMapper.convert(diagnostics)));
+    }
+
+    private boolean notFound(RuleTreeResponse ruleTreeResponse) {
+        return ruleTreeResponse.getResult().getStatus().equals(HttpStatus.NOT_FOUND) &&
+                Optional.ofNullable(ruleTreeResponse.getChilds())
+                        .map(childs -> childs.values().stream().allMatch(this::notFound))
+                        .orElse(Boolean.TRUE);
+    }
+
+    private CharSequence decode(String content, Optional<MemoryAdmissionController.Reservation> reservation) throws IOException {
+        final CharSequence contentDecoded = ruleService.decode(content);
+        reservation.ifPresent(r -> r.adjustToDecoded(contentDecoded));
+        return contentDecoded;
+    }
 }
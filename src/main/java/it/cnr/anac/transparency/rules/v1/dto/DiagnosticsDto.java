@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.v1.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.ToString;
+
+import java.util.List;
+import java.util.Map;
+
+@ToString
+@Data
+public class DiagnosticsDto {
+    private long elapsedMicros;
+    private Map<String, StageDto> stages;
+    private Map<String, Integer> anchorsByExtractor;
+    private Map<String, Integer> anchorsByWhere;
+    private int droppedAnchors;
+    private int indexDocuments;
+    private List<SearchDto> searches;
+
+    @ToString
+    @Data
+    public static class StageDto {
+        private long count;
+        private long elapsedMicros;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private Long allocatedBytes;
+    }
+
+    @ToString
+    @Data
+    public static class SearchDto {
+        private String ruleName;
+        private String term;
+        private long elapsedMicros;
+        private int candidates;
+    }
+}
@@ -19,15 +19,49 @@ package it.cnr.anac.transparency.rules.v1.dto;
 
 import it.cnr.anac.transparency.rules.domain.Rule;
 import it.cnr.anac.transparency.rules.domain.RuleResponse;
+import it.cnr.anac.transparency.rules.domain.RuleTreeResponse;
+import it.cnr.anac.transparency.rules.service.EvaluationDiagnostics;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Named;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 @Mapper(componentModel = "spring")
 public abstract class RuleMapper {
     public abstract RuleDto convert(Rule rule);
     @Mapping(target = "status", source = "ruleResponse", qualifiedByName = "toStatus")
     public abstract RuleResponseDto convert(RuleResponse ruleResponse);
+    public abstract RuleTreeResponseDto convert(RuleTreeResponse ruleTreeResponse);
+
+    public DiagnosticsDto convert(EvaluationDiagnostics diagnostics) {
+        final DiagnosticsDto diagnosticsDto = new DiagnosticsDto();
+        diagnosticsDto.setElapsedMicros(TimeUnit.NANOSECONDS.toMicros(diagnostics.getElapsedNanos()));
+        final Map<String, DiagnosticsDto.StageDto> stages = new LinkedHashMap<>();
+        diagnostics.getStages().forEach((name, stage) -> {
+            final DiagnosticsDto.StageDto stageDto = new DiagnosticsDto.StageDto();
+            stageDto.setCount(stage.count());
+            stageDto.setElapsedMicros(TimeUnit.NANOSECONDS.toMicros(stage.elapsedNanos()));
+            stageDto.setAllocatedBytes(stage.allocatedBytes() < 0 ? null : stage.allocatedBytes());
+            stages.put(name, stageDto);
+        });
+        diagnosticsDto.setStages(stages);
+        diagnosticsDto.setAnchorsByExtractor(diagnostics.getAnchorsByExtractor());
+        diagnosticsDto.setAnchorsByWhere(diagnostics.getAnchorsByWhere());
+        diagnosticsDto.setDroppedAnchors(diagnostics.getDroppedAnchors());
+        diagnosticsDto.setIndexDocuments(diagnostics.getIndexDocuments());
+        diagnosticsDto.setSearches(diagnostics.getSearches().stream().map(search -> {
+            final DiagnosticsDto.SearchDto searchDto = new DiagnosticsDto.SearchDto();
+            searchDto.setRuleName(search.ruleName());
+            searchDto.setTerm(search.term());
+            searchDto.setElapsedMicros(TimeUnit.NANOSECONDS.toMicros(search.elapsedNanos()));
+            searchDto.setCandidates(search.candidates());
+            return searchDto;
+        }).toList());
+        return diagnosticsDto;
+    }
 
     @Named("toStatus")
     public int toStatus(RuleResponse ruleResponse) {
@@ -17,32 +17,137 @@
 
 package it.cnr.anac.transparency.rules;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.cnr.anac.transparency.rules.actuator.JfrEndpoint;
+import it.cnr.anac.transparency.rules.configuration.AdaptiveProperties;
+import it.cnr.anac.transparency.rules.configuration.AdmissionInterceptor;
+import it.cnr.anac.transparency.rules.configuration.AdmissionProperties;
+import it.cnr.anac.transparency.rules.configuration.CaptureProperties;
+import it.cnr.anac.transparency.rules.configuration.EncodingConfiguration;
+import it.cnr.anac.transparency.rules.configuration.GrpcProperties;
+import it.cnr.anac.transparency.rules.configuration.ExecutionProperties;
+import it.cnr.anac.transparency.rules.configuration.LanesProperties;
 import it.cnr.anac.transparency.rules.configuration.RuleConfiguration;
+import it.cnr.anac.transparency.rules.configuration.RuleRuntimeHints;
+import it.cnr.anac.transparency.rules.configuration.ShadowProperties;
+import it.cnr.anac.transparency.rules.configuration.SpillProperties;
+import it.cnr.anac.transparency.rules.domain.Anchor;
+import it.cnr.anac.transparency.rules.domain.CompiledRuleTree;
 import it.cnr.anac.transparency.rules.domain.RuleResponse;
 import it.cnr.anac.transparency.rules.domain.Rule;
+import it.cnr.anac.transparency.rules.domain.Term;
+import it.cnr.anac.transparency.rules.exception.RuleCancelledException;
+import it.cnr.anac.transparency.rules.exception.RuleOverloadException;
+import it.cnr.anac.transparency.rules.grpc.GrpcAuthenticationInterceptor;
+import it.cnr.anac.transparency.rules.grpc.GrpcServerLifecycle;
+import it.cnr.anac.transparency.rules.grpc.RuleGrpcService;
+import it.cnr.anac.transparency.rules.load.SyntheticPageGenerator;
+import it.cnr.anac.transparency.rules.monitoring.PipelineStage;
+import it.cnr.anac.transparency.rules.monitoring.RuleEvents;
+import it.cnr.anac.transparency.rules.monitoring.RuleMetrics;
+import it.cnr.anac.transparency.rules.monitoring.SlowPageCapture;
+import it.cnr.anac.transparency.rules.grpc.v1.*;
 import it.cnr.anac.transparency.rules.exception.RuleException;
 import it.cnr.anac.transparency.rules.exception.RuleNotFoundException;
 import it.cnr.anac.transparency.rules.search.LuceneResult;
+import it.cnr.anac.transparency.rules.search.LuceneSearch;
+import it.cnr.anac.transparency.rules.domain.EvaluationOptions;
+import it.cnr.anac.transparency.rules.domain.ExtractionPass;
+import it.cnr.anac.transparency.rules.service.EvaluationContext;
+import it.cnr.anac.transparency.rules.service.EvaluationDiagnostics;
+import it.cnr.anac.transparency.rules.service.ExtractorStatistics;
+import it.cnr.anac.transparency.rules.service.JsoupAnchorService;
+import it.cnr.anac.transparency.rules.service.MemoryAdmissionController;
+import it.cnr.anac.transparency.rules.service.PageSpillService;
+import it.cnr.anac.transparency.rules.service.ReactivePageDecoder;
+import it.cnr.anac.transparency.rules.service.RegularExpressionAnchorService;
+import it.cnr.anac.transparency.rules.service.RuleExecutor;
+import it.cnr.anac.transparency.rules.service.SchedulingLanes;
+import it.cnr.anac.transparency.rules.service.ShadowExecutionService;
+import it.cnr.anac.transparency.rules.service.SpilledPage;
 import it.cnr.anac.transparency.rules.service.RuleService;
+import it.cnr.anac.transparency.rules.service.RuleSnapshot;
+import it.cnr.anac.transparency.rules.service.RuleSnapshotManager;
 import it.cnr.anac.transparency.rules.v1.controller.RuleController;
+import it.cnr.anac.transparency.rules.v1.controller.RuleExceptionHandler;
+import it.cnr.anac.transparency.rules.v1.dto.DiagnosticsDto;
+import it.cnr.anac.transparency.rules.v1.dto.ExplainResponseDto;
 import it.cnr.anac.transparency.rules.v1.dto.RuleResponseDto;
+import it.cnr.anac.transparency.rules.v1.dto.RuleTreeResponseDto;
+import it.cnr.anac.transparency.rules.v1.dto.SitePageDto;
+import it.cnr.anac.transparency.rules.v1.dto.SiteRequestDto;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttributeImpl;
+import org.apache.lucene.queryparser.classic.ParseException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
 
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @SpringBootTest
 @Slf4j
@@ -54,8 +159,35 @@ class RuleApplicationTests {
 	RuleConfiguration ruleConfiguration;
 	@Autowired
 	RuleService ruleService;
+
+	@Autowired
+	JsoupAnchorService jsoupAnchorService;
+	@Autowired
+	ObjectProvider<RuleService> ruleServiceProvider;
 	@Autowired
 	RuleController ruleController;
+	@Autowired
+	ReactivePageDecoder reactivePageDecoder;
+	@Autowired
+	RegularExpressionAnchorService regularExpressionAnchorService;
+	@Autowired
+	ApplicationContext applicationContext;
+	@Autowired
+	SchedulingLanes schedulingLanes;
+	@Autowired
+	ExtractorStatistics extractorStatistics;
+	@Autowired
+	EncodingConfiguration encodingConfiguration;
+	@Autowired
+	RuleGrpcService ruleGrpcService;
+	@Autowired
+	ObjectMapper objectMapper;
+	@Autowired
+	RuleSnapshotManager ruleSnapshotManager;
+	@Autowired
+	MeterRegistry meterRegistry;
+	@Autowired
+	JfrEndpoint jfrEndpoint;
 
 	boolean isValidURL(String url) throws MalformedURLException, URISyntaxException {
 		try {
@@ -91,6 +223,47 @@ class RuleApplicationTests {
 		);
 	}
 
+	@Test
+	void compiledRuleTree() {
+		final CompiledRuleTree ruleTree = ruleConfiguration.getCompiledRuleTree();
+		ruleConfiguration.getFlattenRules().forEach((root, rules) -> rules.forEach((name, rule) -> {
+			final int id = ruleTree.resolve(Optional.of(root), Optional.of(name));
+			Assertions.assertSame(rule, ruleTree.rule(id));
+			Assertions.assertEquals(name, ruleTree.name(id));
+			Assertions.assertEquals(Optional.ofNullable(rule.getChilds()).map(Map::isEmpty).orElse(Boolean.TRUE), ruleTree.isLeaf(id));
+			Assertions.assertEquals(rule.getTerm().stream().map(Term::getKey).collect(Collectors.joining(",")), ruleTree.joinedTerms(id));
+			Assertions.assertEquals(HttpStatus.NOT_FOUND, ruleTree.notFound(id).getStatus());
+			Assertions.assertNotSame(ruleTree.notFound(id), ruleTree.notFound(id));
+		}));
+		final int root = ruleTree.getDefaultRootId();
+		Assertions.assertEquals(22, ruleTree.childCount(root));
+		Assertions.assertEquals(root, ruleTree.parent(ruleTree.child(root, 0)));
+		Assertions.assertEquals(CompiledRuleTree.NO_RULE, ruleTree.parent(root));
+		Assertions.assertThrows(RuleNotFoundException.class, () -> ruleTree.resolve(Optional.empty(), Optional.of("not-existing-rule")));
+	}
+
+	@Test
+	void ruleSnapshotReload() throws IOException, RuleException {
+		final EvaluationContext context = EvaluationContext.create(Optional.empty());
+		final RuleSnapshot pinned = ruleSnapshotManager.pin(context);
+		final double extractions = stageCount(PipelineStage.EXTRACTION);
+		final RuleSnapshot reloaded = ruleSnapshotManager.reload();
+		// il warm up della nuova versione non compare nelle metriche
+		Assertions.assertEquals(extractions, stageCount(PipelineStage.EXTRACTION));
+		Assertions.assertNotSame(pinned, reloaded);
+		Assertions.assertTrue(reloaded.getVersion() > pinned.getVersion());
+		Assertions.assertEquals(pinned.getChecksum(), reloaded.getChecksum());
+		Assertions.assertSame(reloaded, ruleSnapshotManager.latest());
+		Assertions.assertFalse(reloaded.getQueries().isEmpty());
+		try (EvaluationContext.Scope scope = context.attach()) {
+			Assertions.assertSame(pinned, ruleSnapshotManager.current());
+			Assertions.assertSame(pinned, ruleSnapshotManager.pin(context.fork()));
+			final String content = new String(this.getClass().getResourceAsStream("/amministrazione3.html").readAllBytes(), StandardCharsets.UTF_8);
+			Assertions.assertEquals("/amministrazione-trasparente", ruleService.executeRule(content, Optional.empty(), Optional.empty()).getUrl());
+		}
+		Assertions.assertSame(reloaded, ruleSnapshotManager.current());
+	}
+
 	@Test
 	void blank() throws IOException, URISyntaxException {
 		Assertions.assertThrows(RuleNotFoundException.class, () -> {
@@ -257,6 +430,303 @@ class RuleApplicationTests {
 		Assertions.assertEquals(2, ruleResponses.getBody().stream().filter(ruleResponseDto -> ruleResponseDto.getStatus() == 200).count());
 	}
 
+	@Test
+	void ruleTree() throws IOException {
+		final String content = Base64.getEncoder().encodeToString(
+				this.getClass().getResourceAsStream("/amministrazione_child6.html").readAllBytes());
+		final List<String> childNames = new ArrayList<>(ruleService.childRules(Optional.empty(), Optional.of("servizi-erogati")).keySet());
+
+		final ResponseEntity<Map<String, RuleTreeResponseDto>> subtree = ruleController.postTree(content, Optional.empty(),
+				Optional.of("servizi-erogati"), Optional.empty(), 1, Boolean.FALSE, Optional.empty());
+		Assertions.assertEquals(HttpStatus.OK, subtree.getStatusCode());
+		final RuleTreeResponseDto servizi = subtree.getBody().get("servizi-erogati");
+		Assertions.assertEquals(Set.copyOf(childNames), servizi.getChilds().keySet());
+		servizi.getChilds().forEach((name, child) -> Assertions.assertEquals(name, child.getResult().getRuleName()));
+
+		final ResponseEntity<Map<String, RuleTreeResponseDto>> selected = ruleController.postTree(content, Optional.empty(),
+				Optional.empty(), Optional.of(List.of(childNames.getFirst(), "servizi-erogati")), 1, Boolean.FALSE, Optional.empty());
+		Assertions.assertEquals(Set.of("servizi-erogati"), selected.getBody().keySet());
+		Assertions.assertEquals(Set.of(childNames.getFirst()), selected.getBody().get("servizi-erogati").getChilds().keySet());
+
+		Assertions.assertEquals(HttpStatus.NOT_FOUND, ruleController.postTree(content, Optional.empty(), Optional.empty(),
+				Optional.of(List.of("not-existing-rule")), 1, Boolean.FALSE, Optional.empty()).getStatusCode());
+	}
+
+	@Test
+	void site() throws IOException {
+		final SitePageDto home = new SitePageDto();
+		home.setUrl("https://www.example.it/");
+		home.setContent(Base64.getEncoder().encodeToString(this.getClass().getResourceAsStream("/amministrazione3.html").readAllBytes()));
+		final SitePageDto amministrazioneTrasparente = new SitePageDto();
+		amministrazioneTrasparente.setUrl("https://example.it/amministrazione-trasparente/");
+		amministrazioneTrasparente.setContent(Base64.getEncoder().encodeToString(this.getClass().getResourceAsStream("/amministrazione_child6.html").readAllBytes()));
+		final SiteRequestDto site = new SiteRequestDto();
+		site.setPages(List.of(home, amministrazioneTrasparente));
+
+		final ResponseEntity<Map<String, RuleTreeResponseDto>> response = ruleController.postSite(site, Optional.empty());
+		Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+		final RuleTreeResponseDto root = response.getBody().get(ruleConfiguration.getDefaultRule());
+		Assertions.assertEquals("/amministrazione-trasparente", root.getResult().getUrl());
+		Assertions.assertEquals(22, root.getChilds().size());
+	}
+
+	@Test
+	void metrics() throws IOException {
+		final double extractions = stageCount(PipelineStage.EXTRACTION);
+		final double searches = stageCount(PipelineStage.SEARCH);
+		final double outcomes = meterRegistry.find(RuleMetrics.OUTCOMES).counters().stream().mapToDouble(Counter::count).sum();
+		final ResponseEntity<List<RuleResponseDto>> ruleResponses = ruleController.postChild(Base64.getEncoder().encodeToString(
+				this.getClass().getResourceAsStream("/amministrazione_child6.html").readAllBytes()),
+				Optional.empty(), Optional.empty(), Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE);
+		Assertions.assertTrue(stageCount(PipelineStage.EXTRACTION) > extractions);
+		Assertions.assertTrue(stageCount(PipelineStage.SEARCH) > searches);
+		Assertions.assertEquals(outcomes + ruleResponses.getBody().size(),
+				meterRegistry.find(RuleMetrics.OUTCOMES).counters().stream().mapToDouble(Counter::count).sum());
+		Assertions.assertTrue(meterRegistry.get(RuleMetrics.PAGE_SIZE).summary().count() > 0);
+	}
+
+	@Test
+	void explain() throws IOException {
+		final String content = Base64.getEncoder().encodeToString(
+				this.getClass().getResourceAsStream("/amministrazione_child6.html").readAllBytes());
+		final ResponseEntity<ExplainResponseDto<Object>> explain = ruleController.postChildExplain(content,
+				Optional.empty(), Optional.empty(), Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Optional.empty(), Optional.empty(), Boolean.FALSE);
+		final ResponseEntity<List<RuleResponseDto>> ruleResponses = ruleController.postChild(content,
+				Optional.empty(), Optional.empty(), Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE);
+		Assertions.assertEquals(ruleResponses.getStatusCode(), explain.getStatusCode());
+		Assertions.assertEquals(ruleResponses.getBody().size(), ((List<?>) explain.getBody().getResult()).size());
+		final DiagnosticsDto diagnostics = explain.getBody().getDiagnostics();
+		Assertions.assertTrue(diagnostics.getStages().keySet().stream().anyMatch(stage -> stage.startsWith("extraction:")));
+		Assertions.assertTrue(diagnostics.getStages().containsKey("search"));
+		Assertions.assertFalse(diagnostics.getAnchorsByExtractor().isEmpty());
+		Assertions.assertEquals(diagnostics.getAnchorsByExtractor().values().stream().mapToInt(Integer::intValue).sum(),
+				diagnostics.getAnchorsByWhere().values().stream().mapToInt(Integer::intValue).sum());
+		Assertions.assertTrue(diagnostics.getIndexDocuments() > 0);
+		Assertions.assertEquals(diagnostics.getStages().get("search").getCount(), diagnostics.getSearches().size());
+		Assertions.assertNull(EvaluationContext.diagnostics());
+	}
+
+	@Test
+	void jfrRecording() throws Exception {
+		final String content = Base64.getEncoder().encodeToString(
+				this.getClass().getResourceAsStream("/amministrazione_child6.html").readAllBytes());
+		Assertions.assertEquals(WebEndpointResponse.STATUS_NOT_FOUND, jfrEndpoint.dump().getStatus());
+		Assertions.assertEquals(WebEndpointResponse.STATUS_OK, jfrEndpoint.start(Duration.ofSeconds(2), Boolean.TRUE).getStatus());
+		Assertions.assertEquals(WebEndpointResponse.STATUS_TOO_MANY_REQUESTS, jfrEndpoint.start(Duration.ofSeconds(2), Boolean.FALSE).getStatus());
+		WebEndpointResponse<Resource> response = jfrEndpoint.dump();
+		while (response.getStatus() == HttpStatus.CONFLICT.value()) {
+			ruleController.postChild(content, Optional.empty(), Optional.empty(), Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE);
+			response = jfrEndpoint.dump();
+		}
+		Assertions.assertEquals(WebEndpointResponse.STATUS_OK, response.getStatus());
+		final Path file = Files.createTempFile("rule-service-test-", ".jfr");
+		try {
+			Files.write(file, response.getBody().getContentAsByteArray());
+			final Set<String> events = RecordingFile.readAllEvents(file)
+					.stream()
+					.map(RecordedEvent::getEventType)
+					.map(eventType -> eventType.getName())
+					.collect(Collectors.toSet());
+			Assertions.assertTrue(events.containsAll(RuleEvents.names()), events::toString);
+			Assertions.assertTrue(Arrays.stream(JfrEndpoint.SENSITIVE_EVENTS).noneMatch(events::contains), events::toString);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	void syntheticPage() {
+		final SyntheticPageGenerator generator = new SyntheticPageGenerator(ruleConfiguration.getRules());
+		final SyntheticPageGenerator.Options options = SyntheticPageGenerator.Options.builder()
+				.ruleName("organizzazione")
+				.depth(1)
+				.anchors(500)
+				.size(100_000)
+				.hiddenRatio(0)
+				.attributeRatio(0)
+				.build();
+		final String page = generator.generate(options);
+		Assertions.assertEquals(page, generator.generate(options));
+		Assertions.assertTrue(page.length() >= 100_000);
+		Assertions.assertTrue(generator.ruleNames(null).contains("organizzazione"));
+		final ResponseEntity<List<RuleResponseDto>> ruleResponses = ruleController.postChild(
+				Base64.getEncoder().encodeToString(page.getBytes(StandardCharsets.UTF_8)),
+				Optional.empty(), Optional.of("organizzazione"), Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE);
+		Assertions.assertEquals(HttpStatus.OK, ruleResponses.getStatusCode());
+		Assertions.assertEquals(ruleConfiguration.getRules().get("amministrazione-trasparente").getChilds().get("organizzazione").getChilds().size(),
+				ruleResponses.getBody().stream().filter(ruleResponseDto -> ruleResponseDto.getStatus() != 404).count());
+	}
+
+	@Test
+	void slowPageCapture() throws Exception {
+		final Path directory = Files.createTempDirectory("rule-service-captures-");
+		final CaptureProperties captureProperties = new CaptureProperties();
+		captureProperties.setEnabled(true);
+		captureProperties.setDirectory(directory);
+		captureProperties.setLatencyThreshold(Duration.ZERO);
+		captureProperties.setMaxFiles(2);
+		final SlowPageCapture slowPageCapture = new SlowPageCapture(captureProperties);
+		try {
+			Assertions.assertNull(new SlowPageCapture(new CaptureProperties()).diagnostics(null));
+			final String page = new String(this.getClass().getResourceAsStream("/amministrazione_child6.html").readAllBytes(), StandardCharsets.UTF_8);
+			for (int i = 0; i < 3; i++) {
+				final EvaluationDiagnostics diagnostics = slowPageCapture.diagnostics(null);
+				final EvaluationContext context = EvaluationContext.create(Optional.empty(), diagnostics);
+				try (EvaluationContext.Scope scope = context.attach();
+					 SlowPageCapture.Capture capture = slowPageCapture.start(context, diagnostics, "/v1/rules/child", Map.of("ruleName", "organizzazione"))) {
+					capture.page(page);
+					ruleService.executeChildRuleWithFallback(page, Optional.empty(), Optional.of("organizzazione"), EvaluationOptions.builder().build());
+				}
+			}
+			slowPageCapture.shutdown();
+			final List<Path> captures = SlowPageCapture.list(directory);
+			Assertions.assertEquals(2, captures.size());
+			final SlowPageCapture.CapturedPage capturedPage = SlowPageCapture.read(captures.getLast());
+			Assertions.assertEquals("/v1/rules/child", capturedPage.endpoint());
+			Assertions.assertEquals("organizzazione", capturedPage.parameters().get("ruleName"));
+			Assertions.assertEquals(page, capturedPage.page());
+			Assertions.assertTrue(capturedPage.stages().keySet().stream().anyMatch(stage -> stage.startsWith("extraction")));
+		} finally {
+			slowPageCapture.shutdown();
+			for (Path file : SlowPageCapture.list(directory)) {
+				Files.deleteIfExists(file);
+			}
+			Files.deleteIfExists(directory);
+		}
+	}
+
+	@Test
+	void shadowExecution() throws Exception {
+		final ShadowProperties shadowProperties = new ShadowProperties();
+		shadowProperties.setEnabled(true);
+		shadowProperties.setSampleRate(1);
+		shadowProperties.getEngine().setForceJsoup(Boolean.TRUE);
+		final ShadowExecutionService shadowExecutionService = new ShadowExecutionService(shadowProperties, new AdaptiveProperties(), ruleServiceProvider, new SimpleMeterRegistry());
+		try {
+			Assertions.assertFalse(new ShadowExecutionService(new ShadowProperties(), new AdaptiveProperties(), ruleServiceProvider, new SimpleMeterRegistry()).isEnabled());
+			try (EvaluationContext.Scope scope = EvaluationContext.shadow(Optional.empty(), null).attach()) {
+				Assertions.assertTrue(EvaluationContext.isShadow());
+			}
+			Assertions.assertFalse(EvaluationContext.isShadow());
+			final String page = new String(this.getClass().getResourceAsStream("/amministrazione_child6.html").readAllBytes(), StandardCharsets.UTF_8);
+			final EvaluationOptions options = EvaluationOptions.builder().build();
+			final List<RuleResponse> primary = ruleService.executeChildRuleWithFallback(page, Optional.empty(), Optional.empty(), options);
+			final double extractions = stageCount(PipelineStage.EXTRACTION);
+			shadowExecutionService.offer(page, Optional.empty(), Optional.empty(), options, primary, 0);
+			final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+			while (shadowExecutionService.getMatches() + shadowExecutionService.getMismatches() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			Assertions.assertEquals(1, shadowExecutionService.getMatches() + shadowExecutionService.getMismatches());
+			Assertions.assertEquals(shadowExecutionService.getMismatches(), shadowExecutionService.getSamples().size());
+			Assertions.assertEquals(extractions, stageCount(PipelineStage.EXTRACTION));
+		} finally {
+			shadowExecutionService.shutdown();
+		}
+	}
+
+	@Test
+	void spilledPage() throws IOException {
+		final Path directory = Files.createTempDirectory("rule-service-spill-");
+		final SpillProperties spillProperties = new SpillProperties();
+		spillProperties.setEnabled(true);
+		spillProperties.setThreshold(DataSize.ofKilobytes(1));
+		spillProperties.setDirectory(directory);
+		final PageSpillService pageSpillService = new PageSpillService(spillProperties);
+		try {
+			final String content = new String(this.getClass().getResourceAsStream("/amministrazione_child6.html").readAllBytes(), StandardCharsets.UTF_8);
+			Assertions.assertTrue(pageSpillService.exceeds(content.length()));
+			final SpilledPage page = pageSpillService.spill(new StringReader(content));
+			Assertions.assertEquals(content, page.toString());
+			Assertions.assertEquals(content.getBytes(StandardCharsets.UTF_8).length, page.getUtf8Length());
+			Assertions.assertEquals(content.replaceAll("\\s+", " "), page.collapseWhitespace().toString());
+			Assertions.assertEquals(content, pageSpillService.spillBase64(Base64.getMimeEncoder().encodeToString(content.getBytes(StandardCharsets.UTF_8))).toString());
+			Assertions.assertEquals(outcomes(ruleService.executeChildRule(content, Optional.empty(), Optional.empty())),
+					outcomes(ruleService.executeChildRule(page, Optional.empty(), Optional.empty())));
+			Assertions.assertEquals(outcomes(ruleService.executeChildRuleAlternative(content, Optional.empty(), Optional.empty(), Collections.emptyList(), Boolean.FALSE)),
+					outcomes(ruleService.executeChildRuleAlternative(page, Optional.empty(), Optional.empty(), Collections.emptyList(), Boolean.FALSE)));
+			final PageSpillService.SpillBuffer buffer = pageSpillService.buffer();
+			buffer.write(content.getBytes(StandardCharsets.UTF_8));
+			Assertions.assertTrue(buffer.isSpilled());
+			try (InputStream inputStream = buffer.inputStream()) {
+				Assertions.assertEquals(content, new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+			}
+			buffer.delete();
+			try (Stream<Path> files = Files.list(directory)) {
+				Assertions.assertEquals(0, files.count());
+			}
+		} finally {
+			try (Stream<Path> files = Files.list(directory)) {
+				for (Path file : files.toList()) {
+					Files.deleteIfExists(file);
+				}
+			}
+			Files.deleteIfExists(directory);
+		}
+	}
+
+	@Test
+	void parallelExtraction() throws IOException {
+		final ExecutionProperties executionProperties = new ExecutionProperties();
+		executionProperties.getParallelExtraction().setEnabled(true);
+		executionProperties.getParallelExtraction().setThreshold(DataSize.ofBytes(0));
+		executionProperties.getParallelExtraction().setChunkSize(DataSize.ofKilobytes(2));
+		executionProperties.getParallelExtraction().setParallelism(4);
+		final RuleExecutor parallelExecutor = new RuleExecutor(executionProperties, schedulingLanes);
+		try {
+			final RegularExpressionAnchorService parallelService = new RegularExpressionAnchorService();
+			applicationContext.getAutowireCapableBeanFactory().autowireBean(parallelService);
+			ReflectionTestUtils.setField(parallelService, "ruleExecutor", parallelExecutor);
+			ReflectionTestUtils.setField(parallelService, "executionProperties", executionProperties);
+			// un anchor non chiuso attraversa i limiti dei blocchi successivi
+			final StringBuilder straddling = new StringBuilder("<html><body>");
+			for (int i = 0; i < 500; i++) {
+				straddling.append("<a href=\"/page").append(i).append("\">Pagina\n").append(i).append("</a> ");
+				if (i == 100) {
+					straddling.append("<a href=\"/open\">anchor non chiuso ").append("x".repeat(5000)).append(' ');
+				}
+			}
+			final List<String> pages = new ArrayList<>(List.of(straddling.append("</body></html>").toString()));
+			for (String resource : List.of("/amministrazione_child1.html", "/amministrazione_child6.html", "/amministrazione.html")) {
+				pages.add(new String(this.getClass().getResourceAsStream(resource).readAllBytes(), StandardCharsets.UTF_8));
+			}
+			for (String page : pages) {
+				final List<String> expected = anchors(regularExpressionAnchorService.find(page, Boolean.FALSE));
+				Assertions.assertFalse(expected.isEmpty());
+				Assertions.assertEquals(expected, anchors(parallelService.find(page, Boolean.FALSE)));
+			}
+			// i blocchi ereditano l'annullamento della valutazione
+			final EvaluationContext context = EvaluationContext.create(Optional.empty());
+			context.cancel();
+			try (EvaluationContext.Scope scope = context.fork().attach()) {
+				Assertions.assertThrows(RuleCancelledException.class, () -> parallelService.find(pages.get(0), Boolean.FALSE));
+			}
+		} finally {
+			parallelExecutor.shutdown();
+		}
+	}
+
+	private List<String> anchors(List<Anchor> anchors) {
+		return anchors.stream()
+				.map(anchor -> anchor.getHref() + ":" + anchor.getContent() + ":" + anchor.getWhere())
+				.toList();
+	}
+
+	private List<String> outcomes(List<RuleResponse> ruleResponses) {
+		return ruleResponses.stream()
+				.map(ruleResponse -> ruleResponse.getRuleName() + ":" + ruleResponse.getStatus() + ":" + ruleResponse.getUrl())
+				.toList();
+	}
+
+	private double stageCount(PipelineStage stage) {
+		return meterRegistry.get(RuleMetrics.STAGE_TIMER)
+				.tag("stage", stage.name().toLowerCase(Locale.ROOT))
+				.timers()
+				.stream()
+				.mapToDouble(Timer::count)
+				.sum();
+	}
+
 	@Test
 	void localChildOrganizzazione() throws IOException, URISyntaxException {
 		final ResponseEntity<List<RuleResponseDto>> ruleResponses = ruleController.postChild(Base64.getEncoder().encodeToString(new BufferedReader(
@@ -329,6 +799,459 @@ class RuleApplicationTests {
 		Assertions.assertEquals("/80002300707/section/disposizioni-generali", ruleResponses.getBody().stream().filter(ruleResponseDto -> ruleResponseDto.getRuleName().equalsIgnoreCase("disposizioni-generali")).map(RuleResponseDto::getUrl).findAny().orElse(""));
 	}
 
+	@Test
+	void reactiveDecode() throws IOException {
+		final String content = new String(this.getClass().getResourceAsStream("/amministrazione_child1.html").readAllBytes(), StandardCharsets.UTF_8);
+		final byte[] encoded = Base64.getMimeEncoder().encode(content.getBytes(StandardCharsets.UTF_8));
+		Assertions.assertEquals(content, reactivePageDecoder.decode(DataBufferUtils.readInputStream(
+				() -> new ByteArrayInputStream(encoded), DefaultDataBufferFactory.sharedInstance, 1000)).block());
+		Assertions.assertEquals(content, reactivePageDecoder.decode(DataBufferUtils.readInputStream(
+				() -> new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), DefaultDataBufferFactory.sharedInstance, 1000)).block());
+		final byte[] literal = ("b'" + Base64.getEncoder().encodeToString(content.getBytes(StandardCharsets.UTF_8)) + "'")
+				.getBytes(StandardCharsets.UTF_8);
+		Assertions.assertEquals(content, reactivePageDecoder.decode(DataBufferUtils.readInputStream(
+				() -> new ByteArrayInputStream(literal), DefaultDataBufferFactory.sharedInstance, 1000)).block());
+		// il body viene richiesto un buffer alla volta, non con domanda illimitata
+		final AtomicLong maxRequested = new AtomicLong();
+		Assertions.assertEquals(content, reactivePageDecoder.decode(DataBufferUtils.readInputStream(
+				() -> new ByteArrayInputStream(encoded), DefaultDataBufferFactory.sharedInstance, 1000)
+				.doOnRequest(n -> maxRequested.accumulateAndGet(n, Math::max))).block());
+		Assertions.assertEquals(1, maxRequested.get());
+	}
+
+	@Test
+	void overload() throws Exception {
+		final ExecutionProperties executionProperties = new ExecutionProperties();
+		executionProperties.setEnabled(true);
+		executionProperties.setPoolSize(1);
+		executionProperties.setQueueCapacity(1);
+		executionProperties.setRetryAfter(Duration.ofSeconds(7));
+		final RuleExecutor overloaded = new RuleExecutor(executionProperties, schedulingLanes);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ExecutorService clients = Executors.newFixedThreadPool(2);
+		try {
+			// un task in esecuzione e uno in coda riempiono pool e coda
+			for (int i = 0; i < 2; i++) {
+				clients.submit(() -> overloaded.execute(() -> release.await(1, TimeUnit.MINUTES)));
+			}
+			final ThreadPoolExecutor pool = (ThreadPoolExecutor) overloaded.getExecutorService().orElseThrow();
+			while (pool.getActiveCount() < 1 || pool.getQueue().remainingCapacity() > 0) {
+				Thread.sleep(10);
+			}
+			final RuleOverloadException exception = Assertions.assertThrows(RuleOverloadException.class,
+					() -> overloaded.execute(() -> Boolean.TRUE));
+			Assertions.assertEquals(Duration.ofSeconds(7), exception.getRetryAfter());
+
+			final RuleController controller = applicationContext.getAutowireCapableBeanFactory().createBean(RuleController.class);
+			ReflectionTestUtils.setField(controller, "ruleExecutor", overloaded);
+			final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller)
+					.setControllerAdvice(new RuleExceptionHandler())
+					.build();
+			final String content = Base64.getEncoder().encodeToString(
+					this.getClass().getResourceAsStream("/amministrazione.html").readAllBytes());
+			for (String path : List.of("/v1/rules", "/v1/rules/child")) {
+				mockMvc.perform(MockMvcRequestBuilders.post(path).contentType(MediaType.TEXT_PLAIN).content(content))
+						.andExpect(MockMvcResultMatchers.status().isTooManyRequests())
+						.andExpect(MockMvcResultMatchers.header().string(HttpHeaders.RETRY_AFTER, "7"));
+			}
+		} finally {
+			release.countDown();
+			clients.shutdown();
+			overloaded.shutdown();
+		}
+	}
+
+	@Test
+	void admission() {
+		final AdmissionProperties admissionProperties = new AdmissionProperties();
+		admissionProperties.setEnabled(true);
+		admissionProperties.setBudget(DataSize.ofMegabytes(8));
+		admissionProperties.setMaxWait(Duration.ofMillis(50));
+		admissionProperties.setRetryAfter(Duration.ofSeconds(3));
+		admissionProperties.setChunkedContentLength(DataSize.ofKilobytes(64));
+		final MemoryAdmissionController admissionController = new MemoryAdmissionController(admissionProperties);
+		final long budget = admissionController.getBudgetBytes();
+
+		// prenotazione e rilascio: 8 volte il Content-Length con expansion_factor 6
+		final MemoryAdmissionController.Reservation reservation = admissionController.reserve(256 * 1024);
+		Assertions.assertEquals(2 * 1024 * 1024, reservation.getBytes());
+		Assertions.assertEquals(budget - reservation.getBytes(), admissionController.getAvailableBytes());
+		reservation.adjustToDecoded("a".repeat(64 * 1024));
+		Assertions.assertEquals((256 * 2 + 64 * 6) * 1024, reservation.getBytes());
+		reservation.close();
+		Assertions.assertEquals(budget, admissionController.getAvailableBytes());
+		Assertions.assertTrue(admissionController.getReservations().isEmpty());
+		reservation.adjustToDecoded("a".repeat(1024 * 1024));
+		Assertions.assertEquals(budget, admissionController.getAvailableBytes());
+
+		// budget esaurito: dopo max_wait la richiesta viene rifiutata con 429 e Retry-After
+		final MemoryAdmissionController.Reservation large = admissionController.reserve(budget / 8 - 64 * 1024);
+		final AdmissionInterceptor interceptor = new AdmissionInterceptor(admissionController);
+		final MockHttpServletRequest rejected = new MockHttpServletRequest("POST", "/v1/rules");
+		rejected.setContent(new byte[256 * 1024]);
+		final MockHttpServletResponse tooManyRequests = new MockHttpServletResponse();
+		Assertions.assertFalse(interceptor.preHandle(rejected, tooManyRequests, null));
+		Assertions.assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), tooManyRequests.getStatus());
+		Assertions.assertEquals("3", tooManyRequests.getHeader(HttpHeaders.RETRY_AFTER));
+		large.close();
+
+		// richiesta chunked: prenotazione iniziale ridotta, estesa durante la lettura del body
+		final MockHttpServletRequest chunked = new MockHttpServletRequest("POST", "/v1/rules");
+		Assertions.assertTrue(interceptor.preHandle(chunked, new MockHttpServletResponse(), null));
+		final MemoryAdmissionController.Reservation chunkedReservation = (MemoryAdmissionController.Reservation)
+				chunked.getAttribute(MemoryAdmissionController.RESERVATION_ATTRIBUTE);
+		Assertions.assertEquals(64 * 1024, chunkedReservation.getContentLength());
+		Assertions.assertEquals(512 * 1024, chunkedReservation.getBytes());
+		chunkedReservation.onRead(48 * 1024);
+		Assertions.assertEquals(64 * 1024, chunkedReservation.getContentLength());
+		chunkedReservation.onRead(48 * 1024);
+		Assertions.assertEquals(128 * 1024, chunkedReservation.getContentLength());
+		Assertions.assertEquals(1024 * 1024, chunkedReservation.getBytes());
+		final MemoryAdmissionController.Reservation other = admissionController.reserve(budget / 8 - 256 * 1024);
+		Assertions.assertThrows(RuleOverloadException.class, () -> chunkedReservation.onRead(512 * 1024));
+		interceptor.afterCompletion(chunked, new MockHttpServletResponse(), null, null);
+		other.close();
+		Assertions.assertEquals(budget, admissionController.getAvailableBytes());
+	}
+
+	@Test
+	void lanes() {
+		final LanesProperties lanesProperties = new LanesProperties();
+		lanesProperties.setEnabled(true);
+		final SchedulingLanes schedulingLanes = new SchedulingLanes(lanesProperties);
+		Assertions.assertEquals(SchedulingLanes.Lane.FAST, schedulingLanes.classify(200_000, OptionalInt.empty()));
+		Assertions.assertEquals(SchedulingLanes.Lane.SLOW, schedulingLanes.classify(20_000_000, OptionalInt.empty()));
+		Assertions.assertEquals(SchedulingLanes.Lane.SLOW, schedulingLanes.classify(200_000, OptionalInt.of(100_000)));
+		final int available = schedulingLanes.available(SchedulingLanes.Lane.SLOW);
+		try (SchedulingLanes.Permit permit = schedulingLanes.acquire(20_000_000)) {
+			Assertions.assertEquals(available - 1, schedulingLanes.available(SchedulingLanes.Lane.SLOW));
+		}
+		Assertions.assertEquals(available, schedulingLanes.available(SchedulingLanes.Lane.SLOW));
+
+		// riclassificazione dopo l'estrazione, anche da un contesto figlio
+		final int fast = schedulingLanes.available(SchedulingLanes.Lane.FAST);
+		final EvaluationContext context = EvaluationContext.create(Optional.empty());
+		try (SchedulingLanes.Permit permit = schedulingLanes.acquire(200_000)) {
+			context.setLanePermit(permit);
+			Assertions.assertEquals(fast - 1, schedulingLanes.available(SchedulingLanes.Lane.FAST));
+			try (EvaluationContext.Scope scope = context.fork().attach()) {
+				schedulingLanes.reclassify(100);
+				Assertions.assertEquals(SchedulingLanes.Lane.FAST, permit.getLane());
+				schedulingLanes.reclassify(100_000);
+			}
+			Assertions.assertEquals(SchedulingLanes.Lane.SLOW, permit.getLane());
+			Assertions.assertEquals(fast, schedulingLanes.available(SchedulingLanes.Lane.FAST));
+			Assertions.assertEquals(available - 1, schedulingLanes.available(SchedulingLanes.Lane.SLOW));
+		}
+		Assertions.assertEquals(fast, schedulingLanes.available(SchedulingLanes.Lane.FAST));
+		Assertions.assertEquals(available, schedulingLanes.available(SchedulingLanes.Lane.SLOW));
+
+		// con la corsia lenta piena la riclassificazione non attende e rifiuta la valutazione
+		final List<SchedulingLanes.Permit> slow = new ArrayList<>();
+		for (int i = 0; i < available; i++) {
+			slow.add(schedulingLanes.acquire(20_000_000));
+		}
+		final EvaluationContext saturated = EvaluationContext.create(Optional.empty());
+		try (SchedulingLanes.Permit permit = schedulingLanes.acquire(200_000);
+			 EvaluationContext.Scope scope = saturated.attach()) {
+			saturated.setLanePermit(permit);
+			Assertions.assertThrows(RuleOverloadException.class, () -> schedulingLanes.reclassify(100_000));
+			Assertions.assertEquals(SchedulingLanes.Lane.FAST, permit.getLane());
+		} finally {
+			slow.forEach(SchedulingLanes.Permit::close);
+		}
+		Assertions.assertEquals(fast, schedulingLanes.available(SchedulingLanes.Lane.FAST));
+		Assertions.assertEquals(available, schedulingLanes.available(SchedulingLanes.Lane.SLOW));
+	}
+
+	@Test
+	void deadline() throws IOException, InterruptedException {
+		final String content = new String(this.getClass().getResourceAsStream("/amministrazione_child1.html").readAllBytes(), StandardCharsets.UTF_8);
+		final EvaluationContext context = EvaluationContext.create(Optional.of(Duration.ofMillis(1)));
+		Thread.sleep(5);
+		try (EvaluationContext.Scope scope = context.attach()) {
+			final List<RuleResponse> ruleResponses = ruleService.executeChildRuleWithFallback(content, Optional.empty(), Optional.empty(), EvaluationOptions.builder().build());
+			Assertions.assertEquals(22, ruleResponses.size());
+			Assertions.assertTrue(ruleResponses.stream().allMatch(ruleResponse -> ruleResponse.getStatus() == HttpStatus.REQUEST_TIMEOUT));
+		}
+		Assertions.assertTrue(context.isPartial());
+		Assertions.assertEquals(HttpStatus.PARTIAL_CONTENT, context.getStatus());
+	}
+
+	@Test
+	void extractorStatistics() {
+		Assertions.assertFalse(extractorStatistics.isEnabled());
+		final AdaptiveProperties adaptiveProperties = new AdaptiveProperties();
+		adaptiveProperties.setEnabled(true);
+		final ExtractorStatistics extractorStatistics = new ExtractorStatistics(adaptiveProperties);
+		Assertions.assertEquals(Optional.of("host:comune.example.it@amministrazione-trasparente"),
+				extractorStatistics.key(Optional.of("https://www.comune.example.it/trasparenza"), "", "amministrazione-trasparente"));
+		Assertions.assertEquals(Optional.of("generator:wordpress@amministrazione-trasparente.personale"),
+				extractorStatistics.key(Optional.empty(), "<html><head><meta name=\"generator\" content=\"WordPress 6.4.2\"></head></html>",
+						"amministrazione-trasparente.personale"));
+		Assertions.assertEquals(Optional.empty(), extractorStatistics.key(Optional.empty(), "<html></html>", "amministrazione-trasparente"));
+
+		final Optional<String> key = Optional.of("host:test.extractor.it@amministrazione-trasparente");
+		for (int i = 0; i < 100; i++) {
+			extractorStatistics.record(key, ExtractionPass.REGEX, false);
+			extractorStatistics.record(key, ExtractionPass.JSOUP_ANCHORS, true);
+		}
+		Assertions.assertTrue(IntStream.range(0, 100)
+				.mapToObj(i -> extractorStatistics.startPass(key, true))
+				.allMatch(pass -> pass == ExtractionPass.JSOUP_ANCHORS));
+		Assertions.assertEquals(ExtractionPass.REGEX,
+				extractorStatistics.startPass(Optional.of("host:test.extractor.it@amministrazione-trasparente.personale"), true));
+		try (EvaluationContext.Scope scope = EvaluationContext.explore(Optional.empty(), null).attach()) {
+			Assertions.assertEquals(ExtractionPass.REGEX, extractorStatistics.startPass(key, true));
+			Assertions.assertFalse(extractorStatistics.explore(key, ExtractionPass.JSOUP_ANCHORS));
+			extractorStatistics.record(key, ExtractionPass.REGEX, true);
+		}
+		Assertions.assertEquals(101, extractorStatistics.getStatistics().get(key.get()).passes().get(ExtractionPass.REGEX).attempts());
+		Assertions.assertTrue(extractorStatistics.reset(key.get()));
+		Assertions.assertEquals(ExtractionPass.REGEX, extractorStatistics.startPass(key, true));
+	}
+
+	@Test
+	void incrementalIndex() throws IOException, ParseException {
+		try (LuceneSearch luceneSearch = ruleService.createIncrementalLuceneSearch(
+				List.of(Anchor.newInstance("/trasparenza", "Amministrazione Trasparente", "text")))) {
+			Assertions.assertTrue(luceneSearch.search("bandi").isEmpty());
+			Assertions.assertEquals(1, luceneSearch.addAnchors(List.of(
+					Anchor.newInstance("/trasparenza", "Amministrazione Trasparente", "text"),
+					Anchor.newInstance("/bandi", "Bandi di gara e contratti", "text"))));
+			Assertions.assertEquals("/bandi", luceneSearch.search("bandi").get(0).getUrl());
+			Assertions.assertEquals("/trasparenza", luceneSearch.search("trasparente").get(0).getUrl());
+		}
+	}
+
+	@Test
+	void parallelIndexing() throws IOException, ParseException {
+		final RuleSnapshot snapshot = ruleSnapshotManager.current();
+		final List<Anchor> anchors = new ArrayList<>();
+		for (String resource : List.of("/amministrazione_child1.html", "/amministrazione_child6.html", "/amministrazione_child7.html")) {
+			anchors.addAll(regularExpressionAnchorService.find(
+					new String(this.getClass().getResourceAsStream(resource).readAllBytes(), StandardCharsets.UTF_8), Boolean.FALSE));
+		}
+		final CompiledRuleTree ruleTree = snapshot.getRuleTree();
+		final int root = ruleTree.getDefaultRootId();
+		final List<String> keywords = IntStream.range(0, ruleTree.childCount(root))
+				.mapToObj(index -> ruleTree.rule(ruleTree.child(root, index)))
+				.flatMap(rule -> rule.getTerm().stream())
+				.map(Term::getKey)
+				.toList();
+		final ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try (LuceneSearch sequential = new LuceneSearch(anchors, snapshot.getAnalyzer(), snapshot.getConfiguration().getMaxLengthContent());
+			 LuceneSearch parallel = new LuceneSearch(anchors, snapshot.getAnalyzer(), snapshot.getConfiguration().getMaxLengthContent(),
+					 false, executorService, 4)) {
+			Assertions.assertEquals(4, parallel.getPartitions());
+			Assertions.assertEquals(sequential.getDocuments(), parallel.getDocuments());
+			Assertions.assertEquals(sequential.getDroppedAnchors(), parallel.getDroppedAnchors());
+			for (String keyword : keywords) {
+				Assertions.assertEquals(results(sequential.search(keyword)), results(parallel.search(keyword)), keyword);
+			}
+			final EvaluationContext context = EvaluationContext.create(Optional.empty());
+			context.cancel();
+			try (EvaluationContext.Scope scope = context.attach()) {
+				Assertions.assertThrows(RuleCancelledException.class, () -> new LuceneSearch(anchors, snapshot.getAnalyzer(),
+						snapshot.getConfiguration().getMaxLengthContent(), false, executorService, 4));
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	private List<String> results(List<LuceneResult> luceneResults) {
+		return luceneResults.stream()
+				.map(luceneResult -> luceneResult.getUrl() + ":" + luceneResult.getContent() + ":" + luceneResult.getWhere() + ":" + luceneResult.getScore())
+				.toList();
+	}
+
+	@Test
+	void runtimeHints() {
+		final RuntimeHints hints = new RuntimeHints();
+		new RuleRuntimeHints().registerHints(hints, getClass().getClassLoader());
+		Assertions.assertTrue(RuntimeHintsPredicates.resource()
+				.forResource("org/apache/lucene/analysis/snowball/italian_stop.txt").test(hints));
+		Assertions.assertTrue(RuntimeHintsPredicates.resource()
+				.forResource("META-INF/services/org.apache.lucene.codecs.Codec").test(hints));
+		Assertions.assertTrue(RuntimeHintsPredicates.reflection().onType(KeywordAttributeImpl.class)
+				.withMemberCategory(MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS).test(hints));
+		Assertions.assertTrue(RuntimeHintsPredicates.reflection().onType(PageChunk.Builder.class)
+				.withMemberCategory(MemberCategory.INVOKE_PUBLIC_METHODS).test(hints));
+		Assertions.assertTrue(RuntimeHintsPredicates.reflection().onType(Rule.class).test(hints));
+		Assertions.assertTrue(RuntimeHintsPredicates.reflection().onType(SlowPageCapture.CapturedPage.class).test(hints));
+	}
+
+	@Test
+	void hedged() throws IOException {
+		final String content = new String(this.getClass().getResourceAsStream("/amministrazione_child1.html").readAllBytes(), StandardCharsets.UTF_8);
+		final EvaluationOptions options = EvaluationOptions.builder().hedged(true).build();
+		final List<RuleResponse> ruleResponses = ruleService.executeChildRuleWithFallback(content, Optional.empty(), Optional.empty(), options);
+		Assertions.assertEquals(22, ruleResponses.size());
+		Assertions.assertTrue(ruleService.isSatisfied(ruleResponses, Optional.empty(), Optional.empty(), options));
+
+		final EvaluationContext context = EvaluationContext.create(Optional.empty());
+		final EvaluationContext branch = context.fork();
+		branch.cancel();
+		try (EvaluationContext.Scope scope = branch.attach()) {
+			Assertions.assertThrows(RuleCancelledException.class, EvaluationContext::checkDeadline);
+			Assertions.assertThrows(RuleCancelledException.class, () -> jsoupAnchorService.find(content, false));
+		}
+		try (EvaluationContext.Scope scope = branch.fork().attach()) {
+			Assertions.assertThrows(RuleCancelledException.class, EvaluationContext::checkDeadline);
+		}
+		Assertions.assertFalse(context.isPartial());
+
+		final LanesProperties lanesProperties = new LanesProperties();
+		lanesProperties.setEnabled(true);
+		lanesProperties.setFastConcurrency(2);
+		final SchedulingLanes schedulingLanes = new SchedulingLanes(lanesProperties);
+		try (SchedulingLanes.Permit permit = schedulingLanes.acquire(content.length());
+			 EvaluationContext.Scope scope = context.attach()) {
+			context.setLanePermit(permit);
+			final Optional<SchedulingLanes.Permit> branchPermit = schedulingLanes.tryAcquireBranch();
+			Assertions.assertTrue(branchPermit.isPresent());
+			Assertions.assertEquals(0, schedulingLanes.available(SchedulingLanes.Lane.FAST));
+			Assertions.assertTrue(schedulingLanes.tryAcquireBranch().isEmpty());
+			final RuleExecutor hedgeExecutor = new RuleExecutor(new ExecutionProperties(), schedulingLanes);
+			try {
+				Assertions.assertTrue(hedgeExecutor.hedgeCompletionService(2).isEmpty());
+				branchPermit.get().close();
+				Assertions.assertEquals(1, schedulingLanes.available(SchedulingLanes.Lane.FAST));
+				Assertions.assertTrue(hedgeExecutor.hedgeCompletionService(2).isEmpty());
+				Assertions.assertEquals(1, schedulingLanes.available(SchedulingLanes.Lane.FAST));
+			} finally {
+				hedgeExecutor.shutdown();
+			}
+		}
+	}
+
+	@Test
+	void responseEncodings() throws IOException, URISyntaxException {
+		final List<RuleResponseDto> ruleResponseDtos = internalChild(this.getClass().getResourceAsStream("/amministrazione_child1.html"), 0);
+		final Map<String, ObjectMapper> objectMappers = new LinkedHashMap<>();
+		objectMappers.put("json", objectMapper);
+		objectMappers.put("cbor", encodingConfiguration.getCborHttpMessageConverter().getObjectMapper());
+		objectMappers.put("smile", encodingConfiguration.getSmileHttpMessageConverter().getObjectMapper());
+		final Map<String, Integer> sizes = new LinkedHashMap<>();
+		for (Map.Entry<String, ObjectMapper> entry : objectMappers.entrySet()) {
+			final ObjectMapper mapper = entry.getValue();
+			final byte[] bytes = mapper.writeValueAsBytes(ruleResponseDtos);
+			final List<RuleResponseDto> decoded = mapper.readValue(bytes, new TypeReference<List<RuleResponseDto>>() {});
+			Assertions.assertEquals(ruleResponseDtos, decoded);
+			sizes.put(entry.getKey(), bytes.length);
+			log.info("Encoding {}: {} bytes per response", entry.getKey(), bytes.length);
+		}
+		Assertions.assertTrue(sizes.get("cbor") < sizes.get("json"));
+		Assertions.assertTrue(sizes.get("smile") < sizes.get("json"));
+	}
+
+	@Test
+	void grpc() throws IOException, InterruptedException {
+		final String serverName = InProcessServerBuilder.generateName();
+		final Server server = InProcessServerBuilder.forName(serverName).addService(ruleGrpcService).build().start();
+		final ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+		try {
+			final byte[] child = this.getClass().getResourceAsStream("/amministrazione_child1.html").readAllBytes();
+			final byte[] root = this.getClass().getResourceAsStream("/amministrazione3.html").readAllBytes();
+
+			final ChildRuleResults childRuleResults = RuleEvaluationGrpc.newBlockingStub(channel)
+					.evaluateChilds(EvaluateRequest.newBuilder().setContent(ByteString.copyFrom(child)).build());
+			Assertions.assertEquals(HttpStatus.OK.value(), childRuleResults.getStatus());
+			Assertions.assertEquals(22, childRuleResults.getResultsCount());
+
+			final List<PageResult> pageResults = Collections.synchronizedList(new ArrayList<>());
+			final CountDownLatch completed = new CountDownLatch(1);
+			final StreamObserver<PageChunk> pages = RuleEvaluationGrpc.newStub(channel).evaluateStream(new StreamObserver<>() {
+				@Override
+				public void onNext(PageResult pageResult) {
+					pageResults.add(pageResult);
+				}
+
+				@Override
+				public void onError(Throwable t) {
+					completed.countDown();
+				}
+
+				@Override
+				public void onCompleted() {
+					completed.countDown();
+				}
+			});
+			final int chunkSize = 16 * 1024;
+			for (int offset = 0; offset < child.length; offset += chunkSize) {
+				pages.onNext(PageChunk.newBuilder()
+						.setPageId("child")
+						.setData(ByteString.copyFrom(child, offset, Math.min(chunkSize, child.length - offset)))
+						.setLast(offset + chunkSize >= child.length)
+						.build());
+			}
+			pages.onNext(PageChunk.newBuilder()
+					.setPageId("root")
+					.setOperation(Operation.RULE)
+					.setData(ByteString.copyFrom(root))
+					.setLast(true)
+					.build());
+			pages.onCompleted();
+			Assertions.assertTrue(completed.await(1, TimeUnit.MINUTES));
+			Assertions.assertEquals(2, pageResults.size());
+			final Map<String, PageResult> resultsById = pageResults.stream()
+					.collect(Collectors.toMap(PageResult::getPageId, pageResult -> pageResult));
+			Assertions.assertEquals(22, resultsById.get("child").getResultsCount());
+			Assertions.assertEquals("/amministrazione-trasparente", resultsById.get("root").getResults(0).getUrl());
+		} finally {
+			channel.shutdownNow();
+			server.shutdownNow();
+		}
+	}
+
+	@Test
+	void grpcAuthentication() throws IOException {
+		final GrpcProperties grpcProperties = new GrpcProperties();
+		grpcProperties.setEnabled(true);
+		grpcProperties.setPort(0);
+		Assertions.assertThrows(IllegalStateException.class,
+				() -> new GrpcServerLifecycle(grpcProperties, List.of(ruleGrpcService), List.of(), true).start());
+
+		final JwtDecoder jwtDecoder = token -> {
+			if (token.equals("invalid")) {
+				throw new BadJwtException("invalid token");
+			}
+			return Jwt.withTokenValue(token).header("alg", "none").subject(token).build();
+		};
+		final GrpcAuthenticationInterceptor interceptor = new GrpcAuthenticationInterceptor(jwtDecoder,
+				jwt -> new JwtAuthenticationToken(jwt, jwt.getSubject().equals("admin") ?
+						List.of(new SimpleGrantedAuthority("ROLE_ADMIN")) : List.of()),
+				new String[]{"ADMIN", "SUPERUSER"});
+		final String serverName = InProcessServerBuilder.generateName();
+		final Server server = InProcessServerBuilder.forName(serverName)
+				.addService(ServerInterceptors.intercept(ruleGrpcService, interceptor))
+				.build()
+				.start();
+		final ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+		try {
+			final EvaluateRequest request = EvaluateRequest.newBuilder()
+					.setContent(ByteString.copyFrom(this.getClass().getResourceAsStream("/amministrazione_child1.html").readAllBytes()))
+					.build();
+			Assertions.assertEquals(Status.Code.UNAUTHENTICATED, Assertions.assertThrows(StatusRuntimeException.class,
+					() -> RuleEvaluationGrpc.newBlockingStub(channel).evaluateChilds(request)).getStatus().getCode());
+			Assertions.assertEquals(Status.Code.UNAUTHENTICATED, Assertions.assertThrows(StatusRuntimeException.class,
+					() -> bearer(RuleEvaluationGrpc.newBlockingStub(channel), "invalid").evaluateChilds(request)).getStatus().getCode());
+			Assertions.assertEquals(Status.Code.PERMISSION_DENIED, Assertions.assertThrows(StatusRuntimeException.class,
+					() -> bearer(RuleEvaluationGrpc.newBlockingStub(channel), "user").evaluateChilds(request)).getStatus().getCode());
+			Assertions.assertEquals(22, bearer(RuleEvaluationGrpc.newBlockingStub(channel), "admin").evaluateChilds(request).getResultsCount());
+		} finally {
+			channel.shutdownNow();
+			server.shutdownNow();
+		}
+	}
+
+	private static RuleEvaluationGrpc.RuleEvaluationBlockingStub bearer(RuleEvaluationGrpc.RuleEvaluationBlockingStub stub, String token) {
+		final Metadata metadata = new Metadata();
+		metadata.put(Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER), "Bearer " + token);
+		return stub.withInterceptors(MetadataUtils.newAttachHeadersInterceptor(metadata));
+	}
+
 	@Test
 	void amministrazione1() throws IOException, URISyntaxException, RuleException {
 		Document doc = Jsoup.parse(new URL(AMMINISTRAZIONE1_URL), TIMEOUT_MILLIS);
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.load;
+
+import it.cnr.anac.transparency.rules.configuration.RuleConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Test di carico: avvia il servizio completo su porta casuale, genera pagine sintetiche dall'albero delle
+ * regole e le invia a {@code /v1/rules/child} con concorrenza crescente. Per ogni livello di concorrenza,
+ * dopo un periodo di riscaldamento, riporta throughput e latenze p50/p99/p999 nel log e in
+ * {@code build/reports/load/load-test.csv}. È escluso dal task test e si esegue con {@code ./gradlew loadTest};
+ * i parametri si impostano con le proprietà di sistema {@code load.*}.
+ */
+@Slf4j
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "grpc.enabled=false",
+        "logging.level.root=WARN",
+        "logging.level.it.cnr.anac.transparency.rules.load=INFO"
+})
+class LoadTest {
+    @LocalServerPort
+    int port;
+    @Autowired
+    RuleConfiguration ruleConfiguration;
+
+    record Page(String ruleName, String content) {}
+
+    record Result(int concurrency, long requests, double throughput, double p50, double p99, double p999, double max,
+                  long rejected, long errors) {}
+
+    @Test
+    void load() throws Exception {
+        final List<Integer> concurrencies = Arrays.stream(property("load.concurrency", "1,2,4,8,16,32").split(","))
+                .map(String::trim)
+                .map(Integer::valueOf)
+                .toList();
+        final Duration warmup = DurationStyle.detectAndParse(property("load.warmup", "5s"));
+        final Duration duration = DurationStyle.detectAndParse(property("load.duration", "20s"));
+        final List<Page> pages = pages();
+        log.info("Generated {} pages, average size {} chars", pages.size(),
+                pages.stream().mapToInt(page -> page.content().length()).average().orElse(0));
+
+        final HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        final List<Result> results = new ArrayList<>();
+        for (int concurrency : concurrencies) {
+            final Result result = run(client, pages, concurrency, warmup, duration);
+            log.info("concurrency={} requests={} throughput={}/s p50={}ms p99={}ms p999={}ms max={}ms rejected={} errors={}",
+                    result.concurrency(), result.requests(), format(result.throughput()), format(result.p50()),
+                    format(result.p99()), format(result.p999()), format(result.max()), result.rejected(), result.errors());
+            results.add(result);
+        }
+        report(results);
+        Assertions.assertTrue(results.stream().allMatch(result -> result.errors() == 0), results::toString);
+    }
+
+    private List<Page> pages() {
+        final SyntheticPageGenerator generator = new SyntheticPageGenerator(ruleConfiguration.getRules());
+        final String rootRule = property("load.root_rule", ruleConfiguration.getDefaultRule());
+        final List<String> ruleNames = new ArrayList<>();
+        ruleNames.add(null);
+        ruleNames.addAll(generator.ruleNames(rootRule));
+        final int count = Integer.parseInt(property("load.pages", "50"));
+        final long seed = Long.parseLong(property("load.seed", "42"));
+        final List<Page> pages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final String ruleName = ruleNames.get(i % ruleNames.size());
+            final String content = generator.generate(SyntheticPageGenerator.Options.builder()
+                    .rootRule(rootRule)
+                    .ruleName(ruleName)
+                    .depth(Integer.parseInt(property("load.depth", "2")))
+                    .anchors(Integer.parseInt(property("load.anchors", "300")))
+                    .size(Integer.parseInt(property("load.size", "65536")))
+                    .hiddenRatio(Double.parseDouble(property("load.hidden_ratio", "0.1")))
+                    .attributeRatio(Double.parseDouble(property("load.attribute_ratio", "0.2")))
+                    .noiseRatio(Double.parseDouble(property("load.noise_ratio", "0.3")))
+                    .seed(seed + i)
+                    .build());
+            pages.add(new Page(ruleName, Base64.getEncoder().encodeToString(content.getBytes(StandardCharsets.UTF_8))));
+        }
+        return pages;
+    }
+
+    private Result run(HttpClient client, List<Page> pages, int concurrency, Duration warmup, Duration duration) throws Exception {
+        final long start = System.nanoTime();
+        final long measureFrom = start + warmup.toNanos();
+        final long end = measureFrom + duration.toNanos();
+        final List<Future<Worker>> futures = new ArrayList<>();
+        try (ExecutorService executorService = Executors.newFixedThreadPool(concurrency)) {
+            for (int i = 0; i < concurrency; i++) {
+                futures.add(executorService.submit(() -> new Worker().run(client, pages, measureFrom, end)));
+            }
+        }
+        long count = 0;
+        long rejected = 0;
+        long errors = 0;
+        for (Future<Worker> future : futures) {
+            final Worker worker = future.get();
+            count += worker.count;
+            rejected += worker.rejected;
+            errors += worker.errors;
+        }
+        final long[] latencies = new long[(int) count];
+        int offset = 0;
+        for (Future<Worker> future : futures) {
+            final Worker worker = future.get();
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+            offset += worker.count;
+        }
+        Arrays.sort(latencies);
+        return new Result(concurrency, count, count / (duration.toNanos() / 1e9),
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6, rejected, errors);
+    }
+
+    /**
+     * Un client a ciclo chiuso: invia la richiesta successiva appena riceve la risposta precedente.
+     */
+    private class Worker {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long rejected;
+        private long errors;
+
+        private Worker run(HttpClient client, List<Page> pages, long measureFrom, long end) throws InterruptedException {
+            long now;
+            while ((now = System.nanoTime()) < end) {
+                final Page page = pages.get(ThreadLocalRandom.current().nextInt(pages.size()));
+                final HttpRequest request = HttpRequest.newBuilder(uri(page))
+                        .header("Content-Type", "text/plain")
+                        .POST(HttpRequest.BodyPublishers.ofString(page.content()))
+                        .build();
+                int status;
+                try {
+                    status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                } catch (IOException e) {
+                    status = -1;
+                }
+                final long elapsed = System.nanoTime() - now;
+                if (now < measureFrom) {
+                    continue;
+                }
+                if (status == 429) {
+                    rejected++;
+                } else if (status < 0 || status >= 500) {
+                    errors++;
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = elapsed;
+            }
+            return this;
+        }
+    }
+
+    private URI uri(Page page) {
+        return URI.create("http://localhost:" + port + "/v1/rules/child" +
+                Optional.ofNullable(page.ruleName()).map(ruleName -> "?ruleName=" + ruleName).orElse(""));
+    }
+
+    private void report(List<Result> results) throws IOException {
+        final Path file = Path.of(property("load.report", "build/reports/load/load-test.csv"));
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        final StringBuilder csv = new StringBuilder("concurrency,requests,throughput,p50_ms,p99_ms,p999_ms,max_ms,rejected,errors\n");
+        results.forEach(result -> csv.append(result.concurrency()).append(',')
+                .append(result.requests()).append(',')
+                .append(format(result.throughput())).append(',')
+                .append(format(result.p50())).append(',')
+                .append(format(result.p99())).append(',')
+                .append(format(result.p999())).append(',')
+                .append(format(result.max())).append(',')
+                .append(result.rejected()).append(',')
+                .append(result.errors()).append('\n'));
+        Files.writeString(file, csv);
+        log.info("Load test report written to {}", file.toAbsolutePath());
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty(name, defaultValue);
+    }
+}
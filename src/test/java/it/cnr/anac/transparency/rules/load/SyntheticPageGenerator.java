@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2025 Consiglio Nazionale delle Ricerche
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ * 	it under the terms of the GNU Affero General Public License as
+ * 	published by the Free Software Foundation, either version 3 of the
+ * 	License, or (at your option) any later version.
+ *
+ * 	This program is distributed in the hope that it will be useful,
+ * 	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * 	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * 	GNU Affero General Public License for more details.
+ *
+ * 	You should have received a copy of the GNU Affero General Public License
+ * 	along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.anac.transparency.rules.load;
+
+import it.cnr.anac.transparency.rules.domain.Rule;
+import it.cnr.anac.transparency.rules.domain.Term;
+import lombok.Builder;
+import lombok.Getter;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Entities;
+
+import java.util.*;
+
+/**
+ * Generatore di pagine "Amministrazione Trasparente" sintetiche costruite a partire dall'albero delle regole.
+ * La pagina di una regola contiene i link alle regole figlie fino alla profondità indicata, annidati in
+ * menu, e viene completata con link e contenuto di riempimento fino al numero di anchor e alla dimensione
+ * richiesti. Una parte dei link alle regole è nascosta o riporta il termine solo negli attributi
+ * (title, aria-label, alt), come avviene nei siti reali. A parità di seed la pagina generata è la stessa.
+ */
+public class SyntheticPageGenerator {
+    private static final String[] WORDS = {
+            "comune", "servizi", "uffici", "modulistica", "notizie", "eventi", "albo", "pretorio", "cittadini",
+            "imprese", "sportello", "contatti", "orari", "sede", "delibere", "determine", "regolamenti", "avvisi",
+            "scadenze", "tributi", "anagrafe", "territorio", "ambiente", "cultura", "scuola", "sociale", "sport",
+            "turismo", "mobilità", "lavori", "pubblici", "progetti", "bilancio", "consiglio", "giunta", "sindaco"
+    };
+    private static final String[] HIDDEN = {
+            " style=\"display:none\"", " class=\"sr-only\"", " hidden", " class=\"d-none\"", " style=\"visibility:hidden\""
+    };
+    private static final String[] GENERIC_TEXT = {"Vai", "Consulta", "Apri", "Leggi"};
+    private static final Document.OutputSettings ENTITIES = new Document.OutputSettings()
+            .escapeMode(Entities.EscapeMode.extended)
+            .charset("ascii");
+
+    private final Map<String, Rule> rules;
+
+    @Getter
+    @Builder
+    public static class Options {
+        /**
+         * Regola radice dell'albero, se assente la prima regola configurata
+         */
+        private final String rootRule;
+        /**
+         * Regola di cui generare la pagina, se assente la pagina principale del sito con il link alla regola radice
+         */
+        private final String ruleName;
+        /**
+         * Numero di livelli di regole figlie presenti nella pagina
+         */
+        @Builder.Default
+        private final int depth = 2;
+        /**
+         * Numero minimo di anchor della pagina
+         */
+        @Builder.Default
+        private final int anchors = 200;
+        /**
+         * Dimensione minima della pagina in caratteri
+         */
+        @Builder.Default
+        private final int size = 64 * 1024;
+        /**
+         * Frazione dei link alle regole nascosti tramite attributo hidden, stile o classe
+         */
+        @Builder.Default
+        private final double hiddenRatio = 0.1;
+        /**
+         * Frazione dei link alle regole con il termine solo negli attributi title, aria-label o alt
+         */
+        @Builder.Default
+        private final double attributeRatio = 0.2;
+        /**
+         * Frazione del contenuto di riempimento costituita da rumore: script, stili, commenti, tabelle ed entità
+         */
+        @Builder.Default
+        private final double noiseRatio = 0.3;
+        @Builder.Default
+        private final long seed = 42;
+    }
+
+    public SyntheticPageGenerator(Map<String, Rule> rules) {
+        if (rules == null || rules.isEmpty()) {
+            throw new IllegalArgumentException("Rules are empty");
+        }
+        this.rules = rules;
+    }
+
+    /**
+     * I nomi delle regole con regole figlie, per le quali ha senso generare una pagina.
+     */
+    public List<String> ruleNames(String rootRule) {
+        final List<String> names = new ArrayList<>();
+        final String root = rootRule(rootRule);
+        collect(root, rules.get(root), names);
+        return names;
+    }
+
+    public String generate(Options options) {
+        final Random random = new Random(options.getSeed());
+        final String root = rootRule(options.getRootRule());
+        final Map<String, Rule> childs;
+        final String title;
+        if (options.getRuleName() == null) {
+            childs = Map.of(root, rules.get(root));
+            title = "Comune di " + capitalize(word(random));
+        } else {
+            final Rule rule = find(rules.get(root), options.getRuleName())
+                    .orElseThrow(() -> new IllegalArgumentException("Rule not found: " + options.getRuleName()));
+            childs = Optional.ofNullable(rule.getChilds()).orElse(Collections.emptyMap());
+            title = term(rule, random);
+        }
+        final StringBuilder html = new StringBuilder(options.getSize() + 4096);
+        final int[] anchors = {0};
+        html.append("<!DOCTYPE html>\n<html lang=\"it\">\n<head>\n<meta charset=\"utf-8\">\n<title>")
+                .append(Entities.escape(title))
+                .append("</title>\n");
+        if (random.nextDouble() < options.getNoiseRatio()) {
+            noise(html, random);
+        }
+        html.append("</head>\n<body>\n<header>\n<nav class=\"navbar\">\n");
+        for (int i = 0; i < 8; i++) {
+            filler(html, random, anchors);
+        }
+        html.append("</nav>\n</header>\n<main id=\"main\">\n<h1>").append(Entities.escape(title)).append("</h1>\n");
+        menu(html, childs, options, random, anchors, 1);
+        html.append("<section class=\"contenuti\">\n");
+        while (anchors[0] < options.getAnchors() || html.length() < options.getSize()) {
+            if (random.nextDouble() < options.getNoiseRatio()) {
+                noise(html, random);
+            } else if (anchors[0] < options.getAnchors()) {
+                html.append("<p>");
+                filler(html, random, anchors);
+                html.append("</p>\n");
+            } else {
+                paragraph(html, random);
+            }
+        }
+        html.append("</section>\n</main>\n<footer>\n");
+        for (int i = 0; i < 4; i++) {
+            filler(html, random, anchors);
+        }
+        html.append("</footer>\n</body>\n</html>\n");
+        return html.toString();
+    }
+
+    private void menu(StringBuilder html, Map<String, Rule> childs, Options options, Random random, int[] anchors, int level) {
+        if (childs == null || childs.isEmpty() || level > options.getDepth()) {
+            return;
+        }
+        html.append("<ul class=\"menu level-").append(level).append("\">\n");
+        childs.forEach((name, rule) -> {
+            html.append("<li>");
+            ruleAnchor(html, "/amministrazione-trasparente/" + name, term(rule, random), options, random);
+            anchors[0]++;
+            menu(html, rule.getChilds(), options, random, anchors, level + 1);
+            html.append("</li>\n");
+        });
+        html.append("</ul>\n");
+    }
+
+    private void ruleAnchor(StringBuilder html, String href, String term, Options options, Random random) {
+        final String text = random.nextDouble() < options.getNoiseRatio() ? Entities.escape(term, ENTITIES) : Entities.escape(term);
+        html.append("<a href=\"").append(href).append('"');
+        if (random.nextDouble() < options.getHiddenRatio()) {
+            html.append(HIDDEN[random.nextInt(HIDDEN.length)]);
+        }
+        if (random.nextDouble() < options.getAttributeRatio()) {
+            switch (random.nextInt(3)) {
+                case 0 -> html.append(" title=\"").append(text).append("\">").append(GENERIC_TEXT[random.nextInt(GENERIC_TEXT.length)]);
+                case 1 -> html.append(" aria-label=\"").append(text).append("\">").append(GENERIC_TEXT[random.nextInt(GENERIC_TEXT.length)]);
+                default -> html.append("><img src=\"/img/icona.png\" alt=\"").append(text).append("\">");
+            }
+        } else {
+            html.append('>').append(text);
+        }
+        html.append("</a>");
+    }
+
+    private void filler(StringBuilder html, Random random, int[] anchors) {
+        final String text = capitalize(word(random)) + " " + word(random);
+        html.append("<a href=\"/").append(word(random)).append('/').append(random.nextInt(10000)).append("\">")
+                .append(text)
+                .append("</a>\n");
+        anchors[0]++;
+    }
+
+    private void paragraph(StringBuilder html, Random random) {
+        html.append("<p>");
+        final int words = 20 + random.nextInt(60);
+        for (int i = 0; i < words; i++) {
+            html.append(i == 0 ? capitalize(word(random)) : word(random)).append(' ');
+        }
+        html.append(".</p>\n");
+    }
+
+    private void noise(StringBuilder html, Random random) {
+        switch (random.nextInt(5)) {
+            case 0 -> html.append("<script>var dataLayer = window.dataLayer || []; dataLayer.push({'page': '")
+                    .append(word(random)).append("', 'id': ").append(random.nextInt(100000)).append("});</script>\n");
+            case 1 -> html.append("<style>.").append(word(random)).append(" { margin: ").append(random.nextInt(40))
+                    .append("px; color: #").append(Integer.toHexString(random.nextInt(0xffffff))).append("; }</style>\n");
+            case 2 -> html.append("<!-- ").append(word(random)).append(' ').append(word(random)).append(" -->\n");
+            case 3 -> {
+                html.append("<table class=\"table\"><tr>");
+                for (int i = 0; i < 4; i++) {
+                    html.append("<td>").append(word(random)).append("&nbsp;").append(random.nextInt(1000)).append("</td>");
+                }
+                html.append("</tr></table>\n");
+            }
+            default -> html.append("<div class=\"").append(word(random)).append("\" data-id=\"").append(random.nextInt(1000))
+                    .append("\"><span>").append(word(random)).append(" &amp; ").append(word(random)).append("</span></div>\n");
+        }
+    }
+
+    private String rootRule(String rootRule) {
+        if (rootRule != null) {
+            if (!rules.containsKey(rootRule)) {
+                throw new IllegalArgumentException("Rule not found: " + rootRule);
+            }
+            return rootRule;
+        }
+        return rules.keySet().iterator().next();
+    }
+
+    private void collect(String name, Rule rule, List<String> names) {
+        if (rule.getChilds() != null && !rule.getChilds().isEmpty()) {
+            names.add(name);
+            rule.getChilds().forEach((childName, child) -> collect(childName, child, names));
+        }
+    }
+
+    private Optional<Rule> find(Rule rule, String ruleName) {
+        if (rule.getChilds() == null) {
+            return Optional.empty();
+        }
+        if (rule.getChilds().containsKey(ruleName)) {
+            return Optional.of(rule.getChilds().get(ruleName));
+        }
+        return rule.getChilds().values().stream()
+                .map(child -> find(child, ruleName))
+                .flatMap(Optional::stream)
+                .findFirst();
+    }
+
+    private String term(Rule rule, Random random) {
+        final List<Term> terms = rule.getTerm();
+        return terms.get(random.nextInt(terms.size())).getKey();
+    }
+
+    private String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}